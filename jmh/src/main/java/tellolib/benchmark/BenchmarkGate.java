@@ -0,0 +1,174 @@
+package tellolib.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares a JMH run against a baseline run, both written with -rf csv, and
+ * fails if any benchmark got slower. A benchmark has regressed when its score
+ * is worse than the baseline by more than the allowed percentage and by more
+ * than the two runs' error margins together, so noise within the error bars
+ * does not fail the gate. Benchmarks missing from either run are reported and
+ * otherwise ignored. Changes are printed as percentages, positive when worse.
+ * <p>
+ * Usage: BenchmarkGate baseline.csv results.csv [allowed percent, default 10]
+ * <p>
+ * Exits with 0 if no benchmark regressed, 1 if any did, 2 on bad input.
+ */
+public class BenchmarkGate
+{
+	public static void main(String[] args)
+	{
+		if (args.length < 2)
+		{
+			System.err.println("usage: BenchmarkGate baseline.csv results.csv [allowed percent]");
+			System.exit(2);
+		}
+
+		try
+		{
+			Map<String, Result>	baseline = read(args[0]), results = read(args[1]);
+			double				allowed = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+			int					regressions = 0;
+
+			for (Map.Entry<String, Result> entry : results.entrySet())
+			{
+				Result before = baseline.get(entry.getKey()), after = entry.getValue();
+
+				if (before == null)
+				{
+					System.out.println(String.format("%-60s new %12.3f %s", entry.getKey(), after.score, after.unit));
+					continue;
+				}
+
+				if (!before.unit.equals(after.unit))
+				{
+					System.out.println(String.format("%-60s units differ: %s, %s", entry.getKey(), before.unit,
+													 after.unit));
+					continue;
+				}
+
+				// Throughput modes get worse going down, time modes going up.
+
+				double	worse = after.higherIsBetter() ? before.score - after.score : after.score - before.score;
+				double	change = 100 * worse / before.score;
+				boolean	regressed = change > allowed && worse > before.error + after.error;
+
+				if (regressed) regressions++;
+
+				System.out.println(String.format("%-60s %12.3f %12.3f %s %+7.1f%% %s", entry.getKey(), before.score,
+												 after.score, after.unit, change, regressed ? "REGRESSED" : "ok"));
+			}
+
+			for (String name : baseline.keySet())
+				if (!results.containsKey(name)) System.out.println(String.format("%-60s missing", name));
+
+			System.out.println(regressions + " regressions, allowed " + allowed + "%");
+
+			System.exit(regressions == 0 ? 0 : 1);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			System.err.println("BenchmarkGate: " + e);
+			System.exit(2);
+		}
+	}
+
+	// A benchmark score read from a results file.
+	private static class Result
+	{
+		String	mode, unit;
+		double	score, error;
+
+		boolean higherIsBetter()
+		{
+			return mode.equals("thrpt");
+		}
+	}
+
+	// Read a JMH csv results file into results keyed by benchmark name and
+	// parameter values.
+	private static Map<String, Result> read(String file) throws IOException
+	{
+		List<String>		lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+		Map<String, Result>	results = new LinkedHashMap<>();
+
+		if (lines.isEmpty()) throw new IOException(file + " is empty");
+
+		List<String> header = split(lines.get(0));
+
+		int name = header.indexOf("Benchmark"), mode = header.indexOf("Mode"), score = header.indexOf("Score"),
+			unit = header.indexOf("Unit"), error = -1;
+
+		for (int i = 0; i < header.size(); i++) if (header.get(i).startsWith("Score Error")) error = i;
+
+		if (name < 0 || mode < 0 || score < 0 || unit < 0 || error < 0)
+			throw new IOException(file + " is not a JMH csv results file");
+
+		for (String line : lines.subList(1, lines.size()))
+		{
+			if (line.trim().isEmpty()) continue;
+
+			List<String>	fields = split(line);
+			StringBuilder	key = new StringBuilder(fields.get(name));
+
+			for (int i = 0; i < header.size(); i++)
+			{
+				if (header.get(i).startsWith("Param: ") && !fields.get(i).isEmpty())
+					key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+			}
+
+			Result result = new Result();
+
+			result.mode = fields.get(mode);
+			result.unit = fields.get(unit);
+			result.score = number(fields.get(score));
+			result.error = number(fields.get(error));
+
+			results.put(key.toString(), result);
+		}
+
+		return results;
+	}
+
+	// Split a csv line, fields optionally in double quotes.
+	private static List<String> split(String line)
+	{
+		List<String>	fields = new ArrayList<>();
+		StringBuilder	field = new StringBuilder();
+		boolean			quoted = false;
+
+		for (int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+
+			if (c == '"')
+				quoted = !quoted;
+			else if (c == ',' && !quoted)
+			{
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else
+				field.append(c);
+		}
+
+		fields.add(field.toString());
+
+		return fields;
+	}
+
+	// Single shot runs have no error, written as NaN.
+	private static double number(String value)
+	{
+		double number = Double.parseDouble(value.trim());
+
+		return Double.isNaN(number) ? 0 : number;
+	}
+}
@@ -0,0 +1,242 @@
+package tellolib.camera;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.aruco.Aruco;
+import org.opencv.aruco.Dictionary;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Camera frame hand off and the detectors on camera frames. Frames are read
+ * from the recording named by the tello.benchmark.frames system property, a
+ * video file or a directory of images. Without it frames are made with a
+ * fixed seed: a smooth noise background with Aruco markers at varying places,
+ * the same on every run. These contain no faces, so face detection then
+ * measures a full classifier scan with nothing found.
+ * <p>
+ * Needs the OpenCV native library on java.library.path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class VisionBenchmark
+{
+	private static final int	FRAME_COUNT = 30;
+	private static final int	FRAME_WIDTH = 960, FRAME_HEIGHT = 720;
+	private static final String	CLASSIFIER = "../src/resources/haarcascade_frontalface_alt.xml";
+
+	private final List<Mat>		frames = new ArrayList<>();
+	private int					next;
+
+	private TelloCamera			camera;
+	private FramePool			pool;
+	private ArucoMarkers		arucoMarkers;
+	private FaceDetection		faceDetection;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+		String recording = System.getProperty("tello.benchmark.frames");
+
+		if (recording != null)
+			readFrames(new File(recording));
+		else
+			makeFrames();
+
+		if (frames.isEmpty()) throw new IllegalStateException("no frames read from " + recording);
+
+		// A camera that is not capturing with a frame pool holding a published
+		// frame, as the capture thread leaves it.
+
+		camera = new TelloCamera(11111);
+		pool = new FramePool();
+
+		Field field = TelloCamera.class.getDeclaredField("framePool");
+		field.setAccessible(true);
+		field.set(camera, pool);
+
+		Frame frame = pool.acquire();
+
+		frames.get(0).copyTo(frame.image);
+		frame.sequence = 1;
+		frame.timestamp = System.nanoTime();
+
+		pool.publish(frame);
+		frame.release();
+
+		// The face classifier is found relative to the working directory, the
+		// jmh module when run as the README shows.
+
+		if (System.getProperty("tello.faceClassifier") == null && new File(CLASSIFIER).exists())
+			System.setProperty("tello.faceClassifier", CLASSIFIER);
+
+		arucoMarkers = new ArucoMarkers();
+		faceDetection = new FaceDetection();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		pool.close();
+		arucoMarkers.release();
+
+		for (Mat frame : frames) frame.release();
+	}
+
+	@Benchmark
+	public void getImage(Blackhole blackhole)
+	{
+		Mat image = camera.getImage();
+
+		blackhole.consume(image.dataAddr());
+
+		image.release();
+	}
+
+	@Benchmark
+	public long borrowFrame()
+	{
+		try (Frame frame = camera.borrowFrame())
+		{
+			return frame.getImage().dataAddr();
+		}
+	}
+
+	@Benchmark
+	public boolean detectMarkers()
+	{
+		return arucoMarkers.detectMarkers(nextFrame());
+	}
+
+	@Benchmark
+	public boolean detectFaces()
+	{
+		return faceDetection.detectFaces(nextFrame());
+	}
+
+	private Mat nextFrame()
+	{
+		Mat frame = frames.get(next);
+
+		next = (next + 1) % frames.size();
+
+		return frame;
+	}
+
+	// Read up to FRAME_COUNT frames from a video file or the images in a
+	// directory, in name order.
+	private void readFrames(File recording)
+	{
+		if (recording.isDirectory())
+		{
+			File[] files = recording.listFiles();
+
+			Arrays.sort(files);
+
+			for (File file : files)
+			{
+				if (frames.size() == FRAME_COUNT) break;
+
+				Mat image = Imgcodecs.imread(file.getPath());
+
+				if (image.empty())
+					image.release();
+				else
+					frames.add(image);
+			}
+		}
+		else
+		{
+			VideoCapture video = new VideoCapture(recording.getPath());
+
+			while (frames.size() < FRAME_COUNT)
+			{
+				Mat image = new Mat();
+
+				if (!video.read(image) || image.empty())
+				{
+					image.release();
+					break;
+				}
+
+				frames.add(image);
+			}
+
+			video.release();
+		}
+	}
+
+	// Make FRAME_COUNT frames with three markers each, moving from frame to
+	// frame as a drone moving past them would see them.
+	private void makeFrames()
+	{
+		Dictionary	dictionary = Aruco.getPredefinedDictionary(Aruco.DICT_ARUCO_ORIGINAL);
+		Mat			gray = new Mat(FRAME_HEIGHT, FRAME_WIDTH, CvType.CV_8UC1);
+		Mat			marker = new Mat();
+
+		Core.setRNGSeed(42);
+
+		for (int i = 0; i < FRAME_COUNT; i++)
+		{
+			Core.randu(gray, 64, 192);
+			Imgproc.GaussianBlur(gray, gray, new Size(15, 15), 0);
+
+			for (int m = 0; m < 3; m++)
+			{
+				int side = 100 + m * 40;
+				int x = 40 + m * 300 + i * 4, y = 80 + m * 150 + (i % 10) * 6;
+
+				// Marker on a white border, its quiet zone.
+
+				Imgproc.rectangle(gray, new Point(x - 20, y - 20), new Point(x + side + 20, y + side + 20),
+								  new Scalar(255), -1);
+
+				Mat region = gray.submat(y, y + side, x, x + side);
+
+				Aruco.drawMarker(dictionary, m + 1, side, marker);
+				marker.copyTo(region);
+				region.release();
+			}
+
+			Mat frame = new Mat();
+
+			Imgproc.cvtColor(gray, frame, Imgproc.COLOR_GRAY2BGR);
+
+			frames.add(frame);
+		}
+
+		gray.release();
+		marker.release();
+	}
+}
@@ -0,0 +1,89 @@
+package tellolib.command;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Command composition from the boxed parameters to the bytes sent: composing
+ * Strings as TelloControl does for commands waiting for a reply, against
+ * CommandEncoder as used for rc commands.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class CommandEncodeBenchmark
+{
+  // Varied so the parameters are not constant folded, and kept within the
+  // Integer cache as the distances and rc values used in flight are.
+  private int counter;
+
+  private final CommandEncoder encoder = new CommandEncoder();
+
+  @Benchmark
+  public byte[] basicCommand()
+  {
+    TelloCommandInterface command = new BasicTelloCommand(TelloCommandValues.CURRENT_BATTERY);
+
+    return command.composeCommand().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  @Benchmark
+  public byte[] forwardCommand()
+  {
+    Integer distance = 20 + (counter++ & 63);
+
+    TelloCommandInterface command = new ComplexTelloCommand(TelloCommandValues.FORWARD, distance.toString());
+
+    return command.composeCommand().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  @Benchmark
+  public byte[] rcCommand()
+  {
+    int value = counter++ & 127;
+
+    Integer lr = value - 64, fb = 64 - value, ud = value & 15, yaw = -(value & 31);
+
+    TelloCommandInterface command = new ComplexTelloCommand(TelloCommandValues.RC,
+        lr.toString() + " " + fb.toString() + " " + ud.toString() + " " + yaw.toString());
+
+    return command.composeCommand().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  @Benchmark
+  public int encoderBasicCommand()
+  {
+    return encoder.command(TelloCommandValues.CURRENT_BATTERY).getLength();
+  }
+
+  @Benchmark
+  public int encoderForwardCommand()
+  {
+    Integer distance = 20 + (counter++ & 63);
+
+    return encoder.command(TelloCommandValues.FORWARD).add(distance).getLength();
+  }
+
+  @Benchmark
+  public int encoderRcCommand()
+  {
+    int value = counter++ & 127;
+
+    Integer lr = value - 64, fb = 64 - value, ud = value & 15, yaw = -(value & 31);
+
+    return encoder.command(TelloCommandValues.RC).add(lr).add(fb).add(ud).add(yaw).getLength();
+  }
+}
@@ -0,0 +1,85 @@
+package tellolib.communication;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tellolib.command.BasicTelloCommand;
+import tellolib.command.TelloCommandInterface;
+import tellolib.command.TelloCommandValues;
+import tellolib.drone.TelloDrone;
+import tellolib.simulator.TelloSimulator;
+
+/**
+ * Command round trip, send to reply, against the simulator on loopback with
+ * no added latency, so the time measured is the library and the OS network
+ * stack. The simulator runs in the benchmark JVM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class RoundTripBenchmark
+{
+  // Away from the Tello ports so a drone or other program on the box is not
+  // disturbed.
+  private static final int SIMULATOR_PORT = 18889;
+  private static final int LOCAL_PORT = 18890;
+  private static final int STATUS_PORT = 18891;
+
+  @Param({"blocking", "channel"})
+  public String communication;
+
+  private final TelloCommandInterface battery = new BasicTelloCommand(TelloCommandValues.CURRENT_BATTERY);
+
+  private TelloSimulator simulator;
+  private TelloCommunicationInterface telloCommunication;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception
+  {
+    simulator = new TelloSimulator(SIMULATOR_PORT);
+    simulator.setLatency(0, 0);
+    simulator.setStatus(STATUS_PORT, 0);
+    simulator.start();
+
+    if (communication.equals("blocking"))
+    {
+      TelloDrone.setNetwork("127.0.0.1", SIMULATOR_PORT, LOCAL_PORT, STATUS_PORT, STATUS_PORT + 1);
+
+      telloCommunication = TelloCommunication.getInstance();
+    }
+    else
+      telloCommunication = new TelloChannelCommunication("127.0.0.1", SIMULATOR_PORT, LOCAL_PORT, STATUS_PORT);
+
+    telloCommunication.connect();
+    telloCommunication.executeCommand(new BasicTelloCommand(TelloCommandValues.COMMAND_MODE));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    telloCommunication.disconnect();
+    simulator.stop();
+  }
+
+  @Benchmark
+  public String readCommand() throws Exception
+  {
+    return telloCommunication.executeReadCommand(battery);
+  }
+}
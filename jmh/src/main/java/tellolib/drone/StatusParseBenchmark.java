@@ -0,0 +1,108 @@
+package tellolib.drone;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Status packet decoding: the String splitting the status monitor used to do
+ * against TelloStatusParser decoding the packet bytes and publishing a
+ * snapshot to the drone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class StatusParseBenchmark
+{
+  // A packet as sent by a Tello EDU in flight, mission pads off.
+  private static final String PACKET = "mid:-1;x:0;y:0;z:0;mpry:0,0,0;pitch:-2;roll:1;yaw:-87;vgx:12;vgy:-3;"
+      + "vgz:0;templ:83;temph:85;tof:112;h:100;bat:87;baro:193.43;time:42;agx:-21.00;agy:8.00;agz:-998.00;\r\n";
+
+  private final byte[] packet = PACKET.getBytes(StandardCharsets.US_ASCII);
+  private final TelloStatusParser parser = new TelloStatusParser();
+  private final TelloDrone drone = new TelloDrone();
+
+  @Benchmark
+  public void splitParse(Blackhole blackhole)
+  {
+    // As the status monitor did before TelloStatusParser: a String per
+    // packet, split into pairs, values parsed from the pieces.
+
+    String data = new String(packet, 0, packet.length, StandardCharsets.UTF_8);
+
+    int battery = 0, time = 0, temp = 0, tof = 0, height = 0, missionPadId = 0;
+    double barometer = 0;
+    int[] attpry = new int[3], mpxyz = new int[3], mppry = new int[3];
+    double[] accelxyz = new double[3], veloxyz = new double[3];
+
+    for (String pair : data.split(";"))
+    {
+      String[] entry = pair.split(":");
+
+      switch (entry[0])
+      {
+        case "bat": battery = Integer.parseInt(entry[1].trim()); break;
+        case "time": time = Integer.parseInt(entry[1].trim()); break;
+        case "temph": temp = Integer.parseInt(entry[1].trim()); break;
+        case "tof": tof = Integer.parseInt(entry[1].trim()); break;
+        case "h": height = Integer.parseInt(entry[1].trim()); break;
+        case "baro": barometer = Double.parseDouble(entry[1].trim()); break;
+        case "pitch": attpry[0] = Integer.parseInt(entry[1].trim()); break;
+        case "roll": attpry[1] = Integer.parseInt(entry[1].trim()); break;
+        case "yaw": attpry[2] = Integer.parseInt(entry[1].trim()); break;
+        case "agx": accelxyz[0] = Double.parseDouble(entry[1].trim()); break;
+        case "agy": accelxyz[1] = Double.parseDouble(entry[1].trim()); break;
+        case "agz": accelxyz[2] = Double.parseDouble(entry[1].trim()); break;
+        case "vgx": veloxyz[0] = Double.parseDouble(entry[1].trim()); break;
+        case "vgy": veloxyz[1] = Double.parseDouble(entry[1].trim()); break;
+        case "vgz": veloxyz[2] = Double.parseDouble(entry[1].trim()); break;
+        case "mid": missionPadId = Integer.parseInt(entry[1].trim()); break;
+        case "x": mpxyz[0] = Integer.parseInt(entry[1].trim()); break;
+        case "y": mpxyz[1] = Integer.parseInt(entry[1].trim()); break;
+        case "z": mpxyz[2] = Integer.parseInt(entry[1].trim()); break;
+
+        case "mpry":
+          String[] entry2 = entry[1].split(",");
+          mppry[0] = Integer.parseInt(entry2[0].trim());
+          mppry[1] = Integer.parseInt(entry2[1].trim());
+          mppry[2] = Integer.parseInt(entry2[2].trim());
+          break;
+      }
+    }
+
+    blackhole.consume(battery + time + temp + tof + height + missionPadId);
+    blackhole.consume(barometer);
+    blackhole.consume(attpry);
+    blackhole.consume(mpxyz);
+    blackhole.consume(mppry);
+    blackhole.consume(accelxyz);
+    blackhole.consume(veloxyz);
+  }
+
+  @Benchmark
+  public boolean parserParse()
+  {
+    return parser.parse(packet, 0, packet.length);
+  }
+
+  @Benchmark
+  public TelemetrySnapshot parserParseAndApply()
+  {
+    if (parser.parse(packet, 0, packet.length)) parser.apply(drone);
+
+    return drone.getTelemetry();
+  }
+}
@@ -0,0 +1,86 @@
+package tello;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import tellolib.camera.CalibrationCapture;
+import tellolib.camera.CameraCalibration;
+import tellolib.camera.TelloCamera;
+import tellolib.communication.TelloConnection;
+import tellolib.control.TelloControl;
+import tellolib.control.TelloControlInterface;
+
+/**
+ * Calibrates the drone's camera. With the drone on the ground and streaming,
+ * hold a printed 9x6 (inner corners) chessboard with 25 mm squares in front
+ * of the camera and move it to a new angle and distance after each view is
+ * taken (logged). The calibration is saved to calibration.properties in the
+ * working directory, where CameraCalibration.getDefault() loads it.
+ */
+public class CalibrationTool
+{
+	private final Logger logger = Logger.getGlobal(); 
+
+	public void executeCalibration()
+	{
+		logger.info("start");
+		
+	    TelloControlInterface telloControl = TelloControl.getInstance();
+	    
+	    TelloCamera camera = TelloCamera.getInstance();
+	    
+	    CalibrationCapture capture = CalibrationCapture.chessboard(9, 6, 0.025);
+	    
+	    telloControl.setLogLevel(Level.FINE);
+
+	    try 
+	    {
+		    telloControl.connect();
+		    telloControl.enterCommandMode();
+		    telloControl.startKeepAlive();
+		    telloControl.streamOn();
+		    
+		    camera.startVideoCapture(true);
+		    
+		    int views = capture.capture(20, 2000, 180000);
+		    
+		    logger.info("views captured=" + views);
+		    
+		    CameraCalibration calibration = capture.calibrate();
+		    
+		    if (calibration != null)
+		    {
+		    	calibration.save(System.getProperty("user.dir") + "\\calibration.properties");
+		    	
+		    	CameraCalibration.setDefault(calibration);
+		    	
+		    	logger.info("calibration saved: " + calibration);
+		    } else
+		    	logger.warning("too few views to calibrate");
+	    }
+	    catch (InterruptedException e) { logger.warning("calibration interrupted"); }
+	    catch (IOException e) { logger.warning("calibration save failed: " + e.getMessage()); }
+	    catch (Exception e) {
+	    	e.printStackTrace();
+	    } finally 
+	    {
+	    	capture.release();
+	    	
+	    	if (telloControl.getConnection() == TelloConnection.CONNECTED)
+	    	{
+	    		try
+	    		{
+	    			telloControl.streamOff();
+	    		}
+	    		catch(Exception e) { logger.warning(e.getMessage()); }
+	    	}
+	    	
+	    	camera.stopVideoCapture();
+	    	
+	    	telloControl.disconnect();
+	    }
+	    
+    	logger.info("end");
+	}
+}
@@ -8,6 +8,7 @@ import java.util.logging.Logger;
 import tellolib.communication.TelloConnection;
 import tellolib.control.TelloControl;
 import tellolib.control.TelloControlInterface;
+import tellolib.drone.TelemetrySnapshot;
 import tellolib.drone.TelloDrone;
 
 public class CommandTest
@@ -56,11 +57,15 @@ public class CommandTest
 		    int[] attitude;
 		    double [] acceleration, velocity;
 		    
+			// Query all the readings in one burst, then take them from the drone.
+			
+			telloControl.pollReadings();
+			
 			battery = drone.getBattery();
 			
 			speed = drone.getSpeed();
 			
-			time = telloControl.getTime();
+			time = drone.getTime();
 			
 			baro = drone.getBarometer();
 			
@@ -70,15 +75,20 @@ public class CommandTest
 			
 			temp = drone.getTemp();
 			
-			sn = telloControl.getSN();
+			sn = drone.getSN();
+			
+			sdk = drone.getSDK();
+			
+			// Take the motion values from one snapshot so they all come from
+			// the same status update.
 			
-			sdk = telloControl.getSDK();
+			TelemetrySnapshot telemetry = drone.getTelemetry();
 			
-			attitude = drone.getAttitude();
+			attitude = telemetry.getAttitude();
 			
-			acceleration = drone.getAcceleration();
+			acceleration = telemetry.getAcceleration();
 			
-			velocity = drone.getVelocity();
+			velocity = telemetry.getVelocity();
 			    
 		    logger.info("battery level=" + battery + ";speed=" + speed + ";time=" + time);
 		    logger.info("baro=" + baro + ";height=" + height + ";tof=" + tof + ";temp=" + temp);
@@ -1,6 +1,7 @@
 package tello;
 
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -12,13 +13,16 @@ import com.studiohartman.jamepad.ControllerState;
 
 import tellolib.camera.ArucoMarkers;
 import tellolib.camera.FaceDetection;
+import tellolib.camera.MarkerResults;
 import tellolib.camera.MissionDetectionCamera;
 import tellolib.camera.TelloCamera;
 import tellolib.command.TelloFlip;
 import tellolib.communication.TelloConnection;
 import tellolib.control.TelloControl;
 import tellolib.control.TelloControlInterface;
+import tellolib.drone.TelemetryField;
 import tellolib.drone.TelloDrone;
+import tellolib.metrics.FrameTiming;
 
 public class ControllerTest
 {
@@ -27,6 +31,13 @@ public class ControllerTest
 	private boolean				flying;
 	private int					initialTargetArea =  0;
 	
+	// Side of the printed Aruco markers and the distance to keep from a
+	// followed marker, in meters. Used when a camera calibration exists.
+	
+	private static final float	MARKER_LENGTH = 0.1f;
+	private static final double	TARGET_DISTANCE = 1.0;
+	private CompletableFuture<Void>	targetMove;
+	
     private TelloControlInterface 	telloControl;
     private TelloCamera				camera;
     private ArucoMarkers			markers;
@@ -65,6 +76,13 @@ public class ControllerTest
 		    
 		    telloControl.startKeepAlive();
 		    
+		    // Stick values are sent by the rc channel at 30 Hz independent
+		    // of this loop's timing.
+		    
+		    telloControl.startRCChannel(30);
+		    
+		    telloControl.getMetrics().startLogging(60);
+		    
 		    camera.startVideoCapture(true);
 		    
 		    telloControl.setMissionMode(true, MissionDetectionCamera.downward);
@@ -72,6 +90,10 @@ public class ControllerTest
 		    while(true) 
 		    {
 		    	ControllerState currState = controllers.getState(0);
+		    	
+		    	// Commands are tied to a frame only by the tracking below.
+		    	
+		    	FrameTiming.set(null);
 		    	  
 		    	if (!currState.isConnected) 
 		    	{
@@ -125,7 +147,7 @@ public class ControllerTest
 		    		camera.addTarget(null);
 		    		camera.setContours(null);
 		    		
-		    		if (markers == null) markers = ArucoMarkers.getInstance();
+		    		getMarkers();
 	    			
 	    			boolean found = markers.detectMarkers();
 		    		
@@ -143,9 +165,11 @@ public class ControllerTest
 		    			
 		    			camera.setContours(markers.getMarkerContours());
 		    			
+		    			Size imageSize = camera.getImageSize();
+		    			
 		    			logger.info(String.format("screen %dh x %dw  target %dh x %dw", 
-		    					camera.getImage().height(),
-		    					camera.getImage().width(),
+		    					(int) imageSize.height,
+		    					(int) imageSize.width,
 		    					targets.get(0).height, targets.get(0).width));
 		    		}
 		    	}
@@ -178,6 +202,10 @@ public class ControllerTest
 		    	{
 		    		trackArucoMarker = !trackArucoMarker;
 		    		
+		    		// Search around the marker once found rather than the whole frame.
+		    		
+		    		getMarkers().setTracking(trackArucoMarker);
+		    		
 		    		if  (!trackArucoMarker)
 		    		{
 		    			initialTargetArea = 0;
@@ -190,6 +218,8 @@ public class ControllerTest
 	    			camera.addTarget(null);
 	    			
 	    			boolean found = markers.detectMarkers();
+	    			
+	    			trackingFrame(markers.getResults().getTiming());
 		    		
 		    		//logger.info("markers found=" + found);
 		    		
@@ -199,7 +229,11 @@ public class ControllerTest
 		    			
 		    			Rect target = targets.get(0);
 		    			
-		    			followTarget(target);
+		    			// Measured distance to the marker if its pose is known.
+		    			
+		    			MarkerResults results = markers.getResults();
+		    			
+		    			followTarget(target, results.hasPose() ? results.getTranslation(0, 2) : Double.NaN);
 		    		}
 		    	}
 		    	
@@ -207,6 +241,17 @@ public class ControllerTest
 		    	{
 		    		trackFace = !trackFace;
 		    		
+		    		FaceDetection.getInstance().setTracking(trackFace);
+		    		
+		    		if (!trackFace)
+		    		{
+		    			FaceDetection faces = FaceDetection.getInstance();
+		    			
+		    			logger.info(String.format("face detection mean=%.0fus p99=%dus, tracking mean=%.0fus p99=%dus",
+		    					faces.getDetectionTime().getMean(), faces.getDetectionTime().getPercentile(99),
+		    					faces.getTrackingTime().getMean(), faces.getTrackingTime().getPercentile(99)));
+		    		}
+		    		
 		    		if  (!trackArucoMarker)
 		    		{
 		    			initialTargetArea = 0;
@@ -219,6 +264,8 @@ public class ControllerTest
 	    			camera.addTarget(null);
 	    			
 	    			boolean found = FaceDetection.getInstance().detectFaces();
+	    			
+	    			trackingFrame(FaceDetection.getInstance().getResults().getTiming());
 		    		
 		    		logger.info("faces found=" + found);
 		    		
@@ -228,7 +275,7 @@ public class ControllerTest
 	    				
 	    				camera.addTarget(faces[0]);
 		    			
-		    			followTarget(faces[0]);
+		    			followTarget(faces[0], Double.NaN);
 		    		}
 		    	}
 	    		
@@ -256,8 +303,15 @@ public class ControllerTest
 		    		if (currState.yJustPressed) telloControl.stop();
 		    	}
 		    	
-		    	TelloCamera.getInstance().setStatusBar(String.format("Batt: %d  Alt: %d  Hdg: %d  Mtrk: %b  Face: %b", 
-		    			drone.getBattery(), drone.getHeight(), drone.getHeading(), trackArucoMarker, trackFace));
+		    	// Altitude is averaged over the last half second as single height 
+		    	// readings are noisy.
+		    	
+		    	double altitude = drone.getTelemetryHistory().mean(TelemetryField.HEIGHT, 500);
+		    	
+		    	if (Double.isNaN(altitude)) altitude = drone.getHeight();
+		    	
+		    	TelloCamera.getInstance().setStatusBar(String.format("Batt: %d  Alt: %.0f  Hdg: %d  Mtrk: %b  Face: %b", 
+		    			drone.getBattery(), altitude, drone.getHeading(), trackArucoMarker, trackFace));
 		    	
 		    	Thread.sleep(100);
 		    }
@@ -275,6 +329,8 @@ public class ControllerTest
 	    	}
 	    }
 	    
+    	telloControl.getMetrics().stopLogging();
+    	
     	telloControl.disconnect();
     	
 //    	logger.info("mpid=" + telloControl.getMissionPadId() + ";mxyz=" + telloControl.getMissionPadxyz()[0] +
@@ -293,7 +349,31 @@ public class ControllerTest
 		return value;
 	}
 	
-	private void followTarget(Rect target)
+	// Tie the commands issued next to the frame detected on, so the latency
+	// from capture to the drone's reply is measured (see metrics report).
+	private void trackingFrame(FrameTiming timing)
+	{
+		FrameTiming.set(timing);
+		
+		if (timing != null) telloControl.getMetrics().frameDetected(timing);
+	}
+	
+	// Get the marker detector, estimating marker poses.
+	private ArucoMarkers getMarkers()
+	{
+		if (markers == null) 
+		{
+			markers = ArucoMarkers.getInstance();
+			markers.setPoseEstimation(MARKER_LENGTH);
+		}
+		
+		return markers;
+	}
+	
+	// Turn toward and keep a distance from a target. The distance in meters
+	// is used if known (NaN if not), otherwise the distance is judged by the
+	// change in target area since first acquired.
+	private void followTarget(Rect target, double distance)
 	{
 		camera.addTarget(target);
 		
@@ -328,21 +408,53 @@ public class ControllerTest
 		
 		if (offset / 50 != 0) rotate = rotate * Math.abs(offset) / 50;
 		
+		// Moves are issued asynchronously so the control loop keeps running
+		// while the drone executes them. Skip this adjustment if the previous
+		// one has not finished yet, otherwise moves pile up behind each other.
+		// Also wait for the drone to settle from the last rotation, the target
+		// offset is not meaningful while the camera is still turning.
+		
+		if (targetMove != null && !targetMove.isDone()) return;
+		
+		double yawRate = drone.getTelemetryHistory().yawRate(300);
+		
+		if (!Double.isNaN(yawRate) && Math.abs(yawRate) > 10) return;
+		
+		targetMove = null;
+		
 		if  (offset > 0)
-			telloControl.rotateRight(rotate);
+			targetMove = logFailure(telloControl.rotateRightAsync(rotate));
 		else if (offset < 0)
-			telloControl.rotateLeft(rotate);
+			targetMove = logFailure(telloControl.rotateLeftAsync(rotate));
+		
+		if (!Double.isNaN(distance))
+		{
+			// Move by the distance error, at least the 20 cm minimum move
+			// and at most 1 m. Ignore small errors so the drone doesn't hunt.
+			
+			double error = distance - TARGET_DISTANCE;
+			
+			logger.info(String.format("distance=%.2fm error=%.2fm", distance, error));
+			
+			if (Math.abs(error) < 0.15) return;
+			
+			int move = (int) Math.min(Math.max(Math.abs(error) * 100, 20), 100);
+			
+			targetMove = logFailure(error > 0 ? telloControl.forwardAsync(move) : telloControl.backwardAsync(move));
+			
+			return;
+		}
 		
-		// Determine change in distance from first target acquisition.
+		// Determine change in area from first target acquisition.
 		
-		int distance = initialTargetArea - targetArea;
+		int areaChange = initialTargetArea - targetArea;
 		
-		logger.info(String.format("ia=%d  ta=%d  dist=%d", initialTargetArea, targetArea, distance));
+		logger.info(String.format("ia=%d  ta=%d  dist=%d", initialTargetArea, targetArea, areaChange));
 		
 		// If distance is small, call it good otherwise the drone
 		// hunts back and forth.
 	
-		if (Math.abs(distance) < 5000) distance = 0;
+		if (Math.abs(areaChange) < 5000) areaChange = 0;
 	
 		// Centimeters to move to adjust distance to target. 20 cm
 		// is the default and minimum. Need to move more if target is far away
@@ -353,9 +465,18 @@ public class ControllerTest
 		// Plus distance means the target has moved away, minus means
 		// moved closer.
 		
-		if (distance > 0)
-			telloControl.forward(forwardBack);
-		else if (distance < 0)
-			telloControl.backward(forwardBack);
+		if (areaChange > 0)
+			targetMove = logFailure(telloControl.forwardAsync(forwardBack));
+		else if (areaChange < 0)
+			targetMove = logFailure(telloControl.backwardAsync(forwardBack));
+	}
+	
+	// Log a target move that failed, nothing else waits for its outcome.
+	private CompletableFuture<Void> logFailure(CompletableFuture<Void> move)
+	{
+		return move.whenComplete((result, e) ->
+		{
+			if (e != null) logger.warning("target move failed: " + e);
+		});
 	}
 }
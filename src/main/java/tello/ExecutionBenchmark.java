@@ -0,0 +1,155 @@
+package tello;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import tellolib.control.ExecutionMode;
+import tellolib.control.TelloControl;
+import tellolib.control.TelloControlInterface;
+import tellolib.simulator.TelloSimulator;
+import tellolib.swarm.DroneSession;
+import tellolib.swarm.SwarmController;
+import tellolib.swarm.SwarmResult;
+
+/**
+ * Compares the platform and virtual thread execution modes flying 50
+ * simulated drones on loopback. Each round every drone runs a sequence of
+ * blocking commands on a swarm worker and a burst of async commands on its
+ * command executor. Reports the time taken and the OS threads used, which
+ * with platform threads grow with the drone count. Virtual threads need Java
+ * 21, on older JDKs both runs use platform threads.
+ */
+public class ExecutionBenchmark
+{
+	private final Logger logger = Logger.getGlobal();
+
+	private static final int	DRONES = 50;
+	private static final int	ROUNDS = 5;
+	private static final int	COMMANDS = 4;
+	private static final int	BASE_PORT = 9000;
+
+	public void executeBenchmark()
+	{
+		logger.info("start, virtual threads " + (ExecutionMode.isVirtualSupported() ? "available" : "not available"));
+
+		Logger.getLogger("Tello").setLevel(Level.WARNING);
+
+		List<TelloSimulator> simulators = new ArrayList<>();
+
+		try
+		{
+			for (int i = 0; i < DRONES; i++)
+			{
+				TelloSimulator simulator = new TelloSimulator(BASE_PORT + i * 10);
+
+				simulator.setLatency(50, 20);
+				simulator.setStatus(BASE_PORT + i * 10 + 2, 10);
+				simulator.start();
+
+				simulators.add(simulator);
+			}
+
+			List<String> report = new ArrayList<>();
+
+			report.add(String.format("%-10s %10s %12s %12s %12s", "mode", "time ms", "commands/s", "OS threads",
+									 "failures"));
+
+			// A first run, not reported, starts the simulators' threads and
+			// warms up the JIT.
+
+			run(ExecutionMode.PLATFORM);
+
+			for (ExecutionMode mode : ExecutionMode.values()) report.add(run(mode));
+
+			for (String line : report) logger.info(line);
+		}
+		catch (Exception e) { e.printStackTrace(); }
+		finally
+		{
+			for (TelloSimulator simulator : simulators) simulator.stop();
+		}
+
+		logger.info("end");
+	}
+
+	// Fly all the drones in one mode and return the report line.
+	private String run(ExecutionMode mode) throws InterruptedException
+	{
+		TelloControl.setExecutionMode(mode);
+
+		List<DroneSession> sessions = new ArrayList<>();
+
+		for (int i = 0; i < DRONES; i++)
+		{
+			int port = BASE_PORT + i * 10;
+
+			sessions.add(new DroneSession("drone" + (i + 1), "127.0.0.1", port, port + 1, port + 2, port + 3));
+		}
+
+		// OS threads used by the swarm above those already running (simulators,
+		// reactor). Virtual threads are not counted, their carriers are.
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		Thread.sleep(1000);		// Let the threads of the last run end.
+
+		int base = threads.getThreadCount(), failures = 0;
+
+		threads.resetPeakThreadCount();
+
+		SwarmController swarm = new SwarmController(sessions);
+
+		swarm.connect();
+		swarm.startStatusMonitor();
+		swarm.takeOff();
+
+		long start = System.nanoTime();
+
+		for (int round = 0; round < ROUNDS; round++)
+		{
+			SwarmResult<Void> result = swarm.run(session ->
+			{
+				TelloControlInterface control = session.getControl();
+
+				// Blocking commands on the swarm worker.
+
+				for (int i = 0; i < COMMANDS; i++)
+				{
+					control.getBattery();
+					control.up(20);
+				}
+
+				// Async commands queued on the drone's command executor.
+
+				List<CompletableFuture<?>> futures = new ArrayList<>();
+
+				for (int i = 0; i < COMMANDS; i++)
+				{
+					futures.add(control.getHeightAsync());
+					futures.add(control.downAsync(20));
+				}
+
+				CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+			});
+
+			failures += result.getFailures().size();
+		}
+
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		int peak = threads.getPeakThreadCount() - base;
+
+		swarm.land();
+		swarm.disconnect();
+		swarm.shutdown();
+
+		double commands = (double) DRONES * ROUNDS * COMMANDS * 4;
+
+		return String.format("%-10s %10d %12.0f %12d %12d", TelloControl.getExecutionMode(), elapsed,
+							 commands * 1000 / elapsed, peak, failures);
+	}
+}
@@ -20,6 +20,18 @@ public class Main {
 	    
 	    //controllerTest.executeControllerTest();
 	    
+	    //CalibrationTool calibrationTool = new CalibrationTool();
+	    
+	    //calibrationTool.executeCalibration();
+	    
+	    //SwarmTest swarmTest = new SwarmTest();
+	    
+	    //swarmTest.executeSwarmTest();
+	    
+	    //ExecutionBenchmark executionBenchmark = new ExecutionBenchmark();
+	    
+	    //executionBenchmark.executeBenchmark();
+	    
 	    logger.info("end");
   }
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package tello;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import tellolib.simulator.TelloSimulator;
+import tellolib.swarm.DroneSession;
+import tellolib.swarm.SwarmController;
+import tellolib.swarm.SwarmResult;
+
+/**
+ * Flies a swarm of simulated drones on loopback, each simulator on its own
+ * command port and each session on its own local ports.
+ */
+public class SwarmTest
+{
+	private final Logger logger = Logger.getGlobal();
+
+	private static final int	DRONES = 10;
+	private static final int	BASE_PORT = 9000;
+
+	public void executeSwarmTest()
+	{
+		logger.info("start");
+
+		List<TelloSimulator>	simulators = new ArrayList<>();
+		List<DroneSession>		sessions = new ArrayList<>();
+
+		try
+		{
+			for (int i = 0; i < DRONES; i++)
+			{
+				int port = BASE_PORT + i * 10;
+
+				TelloSimulator simulator = new TelloSimulator(port);
+
+				simulator.setLatency(20, 30);
+				simulator.setStatus(port + 2, 10);
+				simulator.start();
+
+				simulators.add(simulator);
+
+				sessions.add(new DroneSession("drone" + (i + 1), "127.0.0.1", port, port + 1, port + 2, port + 3));
+			}
+
+			SwarmController swarm = new SwarmController(sessions);
+
+			logger.info("connect: " + swarm.connect());
+
+			swarm.startStatusMonitor();
+
+			// Status and keepalives of all drones are handled by the shared
+			// reactor thread.
+
+			swarm.run(session -> session.getControl().startKeepAlive());
+
+			logger.info("takeoff: " + swarm.takeOff());
+
+			// Each drone flies a different distance.
+
+			logger.info("up: " + swarm.run(session ->
+				session.getControl().up(20 + 10 * sessions.indexOf(session))));
+
+			SwarmResult<Integer> battery = swarm.getBattery();
+
+			for (DroneSession session : sessions)
+				logger.info(session.getName() + " battery=" + battery.get(session));
+
+			logger.info("poll: " + swarm.pollReadings());
+
+			for (DroneSession session : sessions)
+				logger.info(session.getName() + " height=" + session.getDrone().getHeight() + " sn=" +
+							session.getDrone().getSN() + " status=" + session.getDrone().getTelemetry().getSequence());
+
+			logger.info("land: " + swarm.land());
+
+			logger.info("disconnect: " + swarm.disconnect());
+
+			swarm.shutdown();
+		}
+		catch (Exception e) { e.printStackTrace(); }
+		finally
+		{
+			for (TelloSimulator simulator : simulators) simulator.stop();
+		}
+
+		logger.info("end");
+	}
+}
@@ -0,0 +1,38 @@
+package tellolib.camera;
+
+/**
+ * Pipeline stage that draws the camera overlays (target rectangles, contours
+ * and status bar) on a copy of the frame image, the frame's display image,
+ * leaving the image itself untouched for the detectors.
+ */
+public class AnnotateStage implements VisionStage
+{
+	private final TelloCamera	camera;
+
+	/**
+	 * Create an annotation stage.
+	 * @param camera Camera holding the overlays to draw.
+	 */
+	public AnnotateStage(TelloCamera camera)
+	{
+		this.camera = camera;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "Annotate";
+	}
+
+	@Override
+	public boolean process(Frame frame)
+	{
+		frame.image.copyTo(frame.display);
+
+		camera.drawOverlays(frame.display);
+
+		frame.hasDisplay = true;
+
+		return true;
+	}
+}
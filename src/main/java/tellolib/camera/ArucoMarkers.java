@@ -2,7 +2,7 @@ package tellolib.camera;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Vector;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.opencv.aruco.*;
@@ -13,21 +13,57 @@ import org.opencv.core.Rect;
 import org.opencv.imgproc.*;
 
 /**
- * Convenience functions for OpenCV Aruco Markers feature.
+ * Convenience functions for OpenCV Aruco Markers feature. An instance holds
+ * the results of its last detection and its working images, so it must only
+ * be used by one thread at a time. Use getInstance() for the global instance
+ * or create an instance per thread (see DetectorFactory) to detect on several
+ * threads at once.
  */
 public class ArucoMarkers implements ArucoMarkersInterface
 {
 	private final Logger		logger = Logger.getLogger("Tello");
 
 	private Dictionary			dict;
-	private Mat					ids;
-	private List<Mat> 			corners;
 	
-	private ArucoMarkers()
+	// Scratch Mats reused by every detection and the results they are read
+	// into. The corner Mats are made by the OpenCV Java wrapper on each call
+	// and released as soon as they are read.
+	
+	private final Mat			grayFrame = new Mat(), ids = new Mat();
+	private final List<Mat> 	corners = new ArrayList<Mat>();
+	private final MarkerResults	results = new MarkerResults();
+	private final float[]		markerCorners = new float[8];
+	private boolean				detected;
+	
+	// Pose estimation, on when the marker length is set. The camera matrix is
+	// made from the calibration for the frame size and detection region.
+	
+	private float				markerLength;
+	private CameraCalibration	calibration;
+	private final Mat			cameraMatrix = new Mat(), distortion = new Mat(), rvecs = new Mat(), tvecs = new Mat();
+	private int					frameWidth, frameHeight;
+	
+	// Tracking mode state. The track box bounds the markers found by the last
+	// detection, the velocity is the movement of its center since the one 
+	// before, in pixels per detection.
+	
+	private boolean				tracking;
+	private int					fullFrameInterval = 10, framesSinceFullFrame;
+	private double				trackingMargin = 0.5;
+	private Rect				trackBox;
+	private double				velocityX, velocityY;
+	private boolean				lastSearchFullFrame = true;
+	
+	/**
+	 * Create an independent detector.
+	 */
+	public ArucoMarkers()
 	{
 		dict = Aruco.getPredefinedDictionary(Aruco.DICT_ARUCO_ORIGINAL);
 	}
     
+	// Holder class and getInstance() provide the global instance.
+	
 	private static class SingletonHolder 
 	{
         public static final ArucoMarkers INSTANCE = new ArucoMarkers();
@@ -45,84 +81,308 @@ public class ArucoMarkers implements ArucoMarkersInterface
 	@Override
 	public boolean detectMarkers()
 	{
-		Mat image = TelloCamera.getInstance().getImage();
-		
-		return detectMarkers(image);	
+		try (Frame frame = TelloCamera.getInstance().borrowFrame())
+		{
+			if (frame == null) return false;
+			
+			return detectMarkers(frame.getImage(), frame.sequence, frame.timestamp);
+		}
 	}
 	
 	@Override
 	public boolean detectMarkers(Mat frame)
+	{
+		return detectMarkers(frame, 0, 0);
+	}
+	
+	// Detect and stamp the results with the frame's sequence number and
+	// capture time, 0 if unknown, and the time detection finished.
+	private boolean detectMarkers(Mat frame, long sequence, long captureTime)
+	{
+		boolean found = find(frame);
+		
+		results.sequence = sequence;
+		results.captureTime = captureTime;
+		results.detectTime = System.nanoTime();
+		
+		return found;
+	}
+	
+	private boolean find(Mat frame)
 	{
 		if (frame == null) return false;
 		
-		Mat	grayFrame = new Mat();
+		frameWidth = frame.cols();
+		frameHeight = frame.rows();
+		
+		// In tracking mode search only around where the markers are expected,
+		// falling back to the full frame if they are not there.
+		
+		if (tracking && trackBox != null && framesSinceFullFrame < fullFrameInterval)
+		{
+			framesSinceFullFrame++;
+			
+			Rect roi = predictRegion(frame.cols(), frame.rows());
+			
+			if (roi != null)
+			{
+				Mat		region = frame.submat(roi);
+				boolean	found = detect(region, roi.x, roi.y);
+				
+				region.release();
+				
+				if (found)
+				{
+					lastSearchFullFrame = false;
+					updateTrack();
+					return true;
+				}
+			}
+			
+			if (logger.isLoggable(Level.FINER)) logger.finer("marker lost in region " + roi);
+		}
+		
+		framesSinceFullFrame = 0;
+		lastSearchFullFrame = true;
+		
+		if (detect(frame, 0, 0))
+		{
+			updateTrack();
+			return true;
+		}
+		
+		trackBox = null;
+		
+		return false;
+	}
+	
+	// Detect markers in an image, which may be a region of the frame located at
+	// x,y, reading them into the results with the corners in frame coordinates.
+	private boolean detect(Mat image, int x, int y)
+	{
+		Mat	gray;
+		
+		// Already gray if preprocessed by the vision pipeline.
+		
+		if (image.channels() == 1)
+			gray = image;
+		else
+		{
+			Imgproc.cvtColor(image, grayFrame, Imgproc.COLOR_BGR2GRAY);
+			gray = grayFrame;
+		}
+		
+		Aruco.detectMarkers(gray, dict, corners, ids);
+		
+		detected = true;
+		
+		// One bulk read per Mat: ids is a column of ints, each corner Mat a
+		// row of 4 float x,y pairs.
+		
+		int count = corners.size();
+		
+		results.ensureCapacity(count);
+		
+		if (count > 0) ids.get(0, 0, results.ids);
+		
+		results.hasPose = count > 0 && markerLength > 0 && estimatePoses(x, y);
 
-		ids = new Mat();
-		corners = new Vector<Mat>();
+		for (int i = 0; i < count; i++)
+		{
+			Mat		mat = corners.get(i);
+			float[]	points = results.corners;
+			int		offset = i * 8;
+			
+			mat.get(0, 0, markerCorners);
+			System.arraycopy(markerCorners, 0, points, offset, 8);
+			
+			if (x != 0 || y != 0)
+				for (int j = offset; j < offset + 8; j += 2)
+				{
+					points[j] += x;
+					points[j + 1] += y;
+				}
+			
+			mat.release();
+		}
+		
+		corners.clear();
+		
+		results.count = count;
+		
+		if (count == 0) return false;
+		
+		if (logger.isLoggable(Level.FINE)) logger.fine("ids=" + ids.dump());
+		
+		return true;
+	}
+	
+	// Estimate the poses of all the markers found in one call, from their
+	// corners in the image or region at x,y.
+	private boolean estimatePoses(int x, int y)
+	{
+		CameraCalibration calibration = this.calibration != null ? this.calibration : CameraCalibration.getDefault();
+		
+		if (calibration == null) return false;
 		
-		Imgproc.cvtColor(frame, grayFrame, Imgproc.COLOR_BGR2GRAY);
+		calibration.getCameraMatrix(frameWidth, frameHeight, x, y, cameraMatrix);
+		calibration.getDistortion(distortion);
 		
-		Aruco.detectMarkers(grayFrame, dict, corners, ids);
+		Aruco.estimatePoseSingleMarkers(corners, markerLength, cameraMatrix, distortion, rvecs, tvecs);
 		
-		if (ids.empty()) return false;
+		// A column of 3 channel doubles, one per marker.
 		
-		logger.fine("ids=" + ids.dump());
+		rvecs.get(0, 0, results.rvecs);
+		tvecs.get(0, 0, results.tvecs);
 		
 		return true;
 	}
+	
+	// Update the track box and velocity from the markers just detected.
+	private void updateTrack()
+	{
+		float[]	points = results.corners;
+		float	left = Float.MAX_VALUE, top = Float.MAX_VALUE, right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+		
+		for (int i = 0; i < results.count * 8; i += 2)
+		{
+			left = Math.min(left, points[i]);
+			right = Math.max(right, points[i]);
+			top = Math.min(top, points[i + 1]);
+			bottom = Math.max(bottom, points[i + 1]);
+		}
+		
+		Rect box = new Rect((int) left, (int) top, (int) Math.ceil(right - left), (int) Math.ceil(bottom - top));
+		
+		if (trackBox != null)
+		{
+			velocityX = (box.x + box.width / 2.0) - (trackBox.x + trackBox.width / 2.0);
+			velocityY = (box.y + box.height / 2.0) - (trackBox.y + trackBox.height / 2.0);
+		} else
+			velocityX = velocityY = 0;
+		
+		trackBox = box;
+	}
+	
+	// The track box moved by the velocity and expanded by the margin on each
+	// side, clipped to the frame. Null if it falls outside the frame.
+	private Rect predictRegion(int frameWidth, int frameHeight)
+	{
+		int	marginX = (int) Math.max(trackBox.width * trackingMargin, 16);
+		int	marginY = (int) Math.max(trackBox.height * trackingMargin, 16);
+		
+		int left = (int) Math.max(trackBox.x + velocityX - marginX, 0);
+		int top = (int) Math.max(trackBox.y + velocityY - marginY, 0);
+		int right = (int) Math.min(trackBox.x + trackBox.width + velocityX + marginX, frameWidth);
+		int bottom = (int) Math.min(trackBox.y + trackBox.height + velocityY + marginY, frameHeight);
+		
+		if (right - left < 8 || bottom - top < 8) return null;
+		
+		return new Rect(left, top, right - left, bottom - top);
+	}
 
 	@Override
-	public int getMarkerCount()
+	public void setTracking( boolean tracking )
+	{
+		this.tracking = tracking;
+		
+		trackBox = null;
+	}
+	
+	@Override
+	public boolean isTracking()
+	{
+		return tracking;
+	}
+	
+	@Override
+	public void setTrackingParameters( int fullFrameInterval, double margin )
+	{
+		if (fullFrameInterval < 1 || margin < 0) throw new IllegalArgumentException("invalid tracking parameters");
+		
+		this.fullFrameInterval = fullFrameInterval;
+		this.trackingMargin = margin;
+	}
+	
+	@Override
+	public boolean isLastSearchFullFrame()
+	{
+		return lastSearchFullFrame;
+	}
+
+	@Override
+	public void setPoseEstimation( float markerLength )
+	{
+		this.markerLength = markerLength;
+	}
+	
+	@Override
+	public void setCalibration( CameraCalibration calibration )
+	{
+		this.calibration = calibration;
+	}
+	
+	@Override
+	public MarkerResults detect(Mat frame)
+	{
+		detectMarkers(frame);
+		
+		return results.copy();
+	}
+	
+	@Override
+	public MarkerResults detect(Frame frame)
+	{
+		detectMarkers(frame.getGray() != null ? frame.gray : frame.image, frame.sequence, frame.timestamp);
+		
+		return results.copy();
+	}
+	
+	@Override
+	public MarkerResults getResults()
 	{
-		if (ids == null) return 0;
+		return results;
+	}
+	
+	@Override
+	public void release()
+	{
+		grayFrame.release();
+		ids.release();
+		cameraMatrix.release();
+		distortion.release();
+		rvecs.release();
+		tvecs.release();
+	}
 
-		return (int) ids.total();
+	@Override
+	public int getMarkerCount()
+	{
+		return results.count;
 	}
 
 	@Override
 	public int getMarkerId( int index )
 	{
-		if (ids == null) return -1;
-
-		if (index >= ids.total() || index < 0) return -1;
+		if (index >= results.count || index < 0) return -1;
 		
-		return (int) ids.get(index, 0)[0];
+		return results.ids[index];
 	}
 
 	@Override
 	public ArrayList<MatOfPoint> getMarkerContours()
 	{
-		if  (ids == null) return null;
+		if  (!detected) return null;
 		
 		ArrayList<MatOfPoint> 	contours = new ArrayList<MatOfPoint>();
-		ArrayList<Rect>			markers = getMarkerTargets();
-		ArrayList<Point>		points;
+		Point[]					points = new Point[4];
 		
-		for (int i = 0; i < getMarkerCount(); i++)
+		for (int i = 0; i < results.count; i++)
 		{
-			Mat mat = corners.get(i);
-
-			//logger.fine("corners(" + i + ")=" + mat.dump());
-			
-			points = new ArrayList<Point>();
-			
 			for (int j = 0; j < 4; j++)
-			{
-				//logger.fine("x" + j + "=" + mat.get(0, j)[0] + " y" + j + "=" + mat.get(0, j)[1]);
-
-				int x = (int) mat.get(0, j)[0];
-				int y = (int) mat.get(0, j)[1];
-				
-				points.add(new Point(x, y));
-			}
+				points[j] = new Point((int) results.getCornerX(i, j), (int) results.getCornerY(i, j));
 
-			MatOfPoint contour = new MatOfPoint();
-
-			//logger.fine("number of points=" + points.size());
-			
-			contour.fromList(points);
-			
-			contours.add(contour);
+			contours.add(new MatOfPoint(points));
 		}
 		
 		//logger.fine("number of contours=" + contours.size());
@@ -133,42 +393,20 @@ public class ArucoMarkers implements ArucoMarkersInterface
 	@Override
 	public ArrayList<Rect> getMarkerTargets()
 	{
-		ArrayList<Rect>	targetRectangles = new ArrayList<Rect>();
+		if  (!detected) return null;
 		
-		if  (ids == null) return null;
+		ArrayList<Rect>	targetRectangles = new ArrayList<Rect>();
 		
-		for (int i = 0; i < getMarkerCount(); i++)
+		for (int i = 0; i < results.count; i++)
 		{
-			Mat mat = corners.get(i);
-
-			//logger.fine("corners(" + i + ")=" + mat.dump());
-
-			// The marker corner mat (matrix) contains an array of the locations
-			// of the 4 corners of the detected marker starting with the upper
-			// left corner, upper right, lower right, lower left. For each corner
-			// the location is given as x,y. This quite different than the Rect
-			// class description of a rectangle: upper left corner as x,y and
-			// height and width. So we convert.
+			// The marker corners are the locations of the 4 corners of the 
+			// detected marker starting with the upper left corner, upper right,
+			// lower right, lower left. For each corner the location is given 
+			// as x,y. This quite different than the Rect class description of
+			// a rectangle: upper left corner as x,y and height and width. So
+			// we convert.
 			
-			//logger.fine("x0=" + mat.get(0, 0)[0] + " y0=" + mat.get(0, 0)[1]);
-			//logger.fine("x1=" + mat.get(0, 1)[0] + " y1=" + mat.get(0, 1)[1]);
-			//logger.fine("x2=" + mat.get(0, 2)[0] + " y2=" + mat.get(0, 2)[1]);
-			//logger.fine("x3=" + mat.get(0, 3)[0] + " y3=" + mat.get(0, 3)[1]);
-			
-			int x0 = (int) mat.get(0, 0)[0];
-			int y0 = (int) mat.get(0, 0)[1];
-			int x1 = (int) mat.get(0, 1)[0];
-			int y1 = (int) mat.get(0, 1)[1];
-			//int x2 = (int) mat.get(0, 2)[0];
-			//int y2 = (int) mat.get(0, 2)[1];
-			//int x3 = (int) mat.get(0, 3)[0];
-			int y3 = (int) mat.get(0, 3)[1];
-
-			Rect rect = new Rect();
-			rect.x = x0;
-			rect.y = y0;
-			rect.width = x1 - x0;
-			rect.height = y3 - y0;
+			Rect rect = results.getTarget(i, new Rect());
 			
 			targetRectangles.add(rect);
 			
@@ -15,7 +15,7 @@ public interface ArucoMarkersInterface
 {
 	/**
 	 * Perform Aruco marker detection on the supplied image.
-	 * @param frame Image to analyze for markers.
+	 * @param frame Image to analyze for markers, color (BGR) or gray scale.
 	 * @return True if marker(s) detected, false if not.
 	 */
 	public boolean detectMarkers(Mat frame);
@@ -56,4 +56,86 @@ public interface ArucoMarkersInterface
 	 * no markers found.
 	 */
 	public ArrayList<MatOfPoint> getMarkerContours();
+	
+	/**
+	 * Turn on estimation of each marker's position and orientation relative
+	 * to the camera, done for all markers at once with each detection. Needs
+	 * a camera calibration (see setCalibration()), the poses are in the 
+	 * results (see MarkerResults.hasPose()).
+	 * @param markerLength Side of the markers' black square, in the unit the
+	 * positions are wanted in (meters for instance). 0 turns estimation off.
+	 */
+	public void setPoseEstimation(float markerLength);
+	
+	/**
+	 * Set the camera calibration used for pose estimation.
+	 * @param calibration The calibration, null for the default one (see
+	 * CameraCalibration.getDefault()).
+	 */
+	public void setCalibration(CameraCalibration calibration);
+	
+	/**
+	 * Perform Aruco marker detection on the supplied image and return the
+	 * results as an object of their own, which the detector does not change
+	 * afterwards, so it may be handed to other threads.
+	 * @param frame Image to analyze for markers, color (BGR) or gray scale.
+	 * @return Markers found, may be none.
+	 */
+	public MarkerResults detect(Mat frame);
+	
+	/**
+	 * Perform Aruco marker detection on a frame from the camera, using its
+	 * gray image if it has one, and return the results as an object of their
+	 * own stamped with the frame's sequence number and capture time.
+	 * @param frame Frame to analyze for markers.
+	 * @return Markers found, may be none.
+	 */
+	public MarkerResults detect(Frame frame);
+	
+	/**
+	 * Get the markers detected by the last call to detectMarkers() without 
+	 * allocating: the results object is reused and refilled by the next 
+	 * detection.
+	 * @return The marker ids and corners.
+	 */
+	public MarkerResults getResults();
+	
+	/**
+	 * Free the native memory held by the detector's working images. The 
+	 * detector may still be used, the memory is allocated again as needed.
+	 */
+	public void release();
+	
+	/**
+	 * Turn tracking mode on or off. In tracking mode, once markers are found,
+	 * detectMarkers() searches only a region around where they are predicted 
+	 * to be from their last position and movement, which is much faster than
+	 * searching the whole frame. A full frame search is done when the markers
+	 * are not found in the region and every few frames (see 
+	 * setTrackingParameters()) to pick up new markers. Off by default.
+	 * @param tracking True to turn tracking mode on.
+	 */
+	public void setTracking(boolean tracking);
+	
+	/**
+	 * Returns tracking mode state.
+	 * @return True if tracking mode is on.
+	 */
+	public boolean isTracking();
+	
+	/**
+	 * Set the tracking mode parameters.
+	 * @param fullFrameInterval Number of region searches between full frame 
+	 * searches, default 10.
+	 * @param margin Space searched around the predicted marker location on 
+	 * each side as a fraction of the marker size, default 0.5.
+	 */
+	public void setTrackingParameters(int fullFrameInterval, double margin);
+	
+	/**
+	 * Tells whether the last call to detectMarkers() searched the whole frame 
+	 * or only the tracking region.
+	 * @return True if the whole frame was searched.
+	 */
+	public boolean isLastSearchFullFrame();
 }
@@ -0,0 +1,51 @@
+package tellolib.camera;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Pipeline stage that looks for Aruco markers in each frame, using the gray
+ * image if the frame was preprocessed, and hands the result to a listener
+ * on the stage thread.
+ */
+public class ArucoStage implements VisionStage
+{
+	private final ArucoMarkersInterface			markers;
+	private final BiConsumer<Frame, MarkerResults>	listener;
+
+	/**
+	 * Create a stage with a detector of its own.
+	 * @param listener Called after each detection with the frame and the
+	 * results, which may be kept or passed to another thread.
+	 */
+	public ArucoStage(BiConsumer<Frame, MarkerResults> listener)
+	{
+		this(DetectorFactory.newArucoMarkers(), listener);
+	}
+
+	/**
+	 * Create a marker detection stage.
+	 * @param markers Detector to use. Must not be used elsewhere while the
+	 * pipeline runs.
+	 * @param listener Called after each detection with the frame and the
+	 * results, which may be kept or passed to another thread.
+	 */
+	public ArucoStage(ArucoMarkersInterface markers, BiConsumer<Frame, MarkerResults> listener)
+	{
+		this.markers = markers;
+		this.listener = listener;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "Aruco";
+	}
+
+	@Override
+	public boolean process(Frame frame)
+	{
+		listener.accept(frame, markers.detect(frame));
+
+		return true;
+	}
+}
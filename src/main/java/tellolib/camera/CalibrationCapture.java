@@ -0,0 +1,272 @@
+package tellolib.camera;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.opencv.aruco.Aruco;
+import org.opencv.aruco.CharucoBoard;
+import org.opencv.aruco.Dictionary;
+import org.opencv.calib3d.Calib3d;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.MatOfPoint3f;
+import org.opencv.core.Point3;
+import org.opencv.core.Size;
+import org.opencv.core.TermCriteria;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Collects views of a calibration board, a chessboard or a ChArUco board
+ * (a chessboard with Aruco markers in the white squares, which can be only
+ * partly in view), and computes the camera calibration from them. Views can
+ * be added from any images or captured from the TelloCamera video feed while
+ * the board is moved around in front of the drone. 15 to 25 views at
+ * different angles and distances, covering the whole image, give a good
+ * calibration.
+ */
+public class CalibrationCapture
+{
+	private final Logger		logger = Logger.getLogger("Tello");
+
+	private final Size			patternSize;
+	private final MatOfPoint3f	boardPoints;
+	private final CharucoBoard	charucoBoard;
+	private final Dictionary	dictionary;
+
+	private final Mat			gray = new Mat();
+	private final List<Mat>		imagePoints = new ArrayList<Mat>(), objectPoints = new ArrayList<Mat>();
+	private final List<Mat>		charucoIds = new ArrayList<Mat>();
+	private Size				imageSize;
+
+	private CalibrationCapture(Size patternSize, MatOfPoint3f boardPoints, CharucoBoard charucoBoard,
+							   Dictionary dictionary)
+	{
+		this.patternSize = patternSize;
+		this.boardPoints = boardPoints;
+		this.charucoBoard = charucoBoard;
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Create a capture for a chessboard.
+	 * @param cornersX Number of inner corners along the board's width, one
+	 * less than the squares.
+	 * @param cornersY Number of inner corners along the board's height.
+	 * @param squareSize Side of a square. The unit, meters for instance, is
+	 * the unit poses are estimated in.
+	 * @return The capture.
+	 */
+	public static CalibrationCapture chessboard(int cornersX, int cornersY, double squareSize)
+	{
+		List<Point3> points = new ArrayList<Point3>();
+
+		for (int y = 0; y < cornersY; y++)
+			for (int x = 0; x < cornersX; x++)
+				points.add(new Point3(x * squareSize, y * squareSize, 0));
+
+		MatOfPoint3f boardPoints = new MatOfPoint3f();
+
+		boardPoints.fromList(points);
+
+		return new CalibrationCapture(new Size(cornersX, cornersY), boardPoints, null, null);
+	}
+
+	/**
+	 * Create a capture for a ChArUco board made with the dictionary used by
+	 * ArucoMarkers (DICT_ARUCO_ORIGINAL).
+	 * @param squaresX Number of squares along the board's width.
+	 * @param squaresY Number of squares along the board's height.
+	 * @param squareLength Side of a square.
+	 * @param markerLength Side of a marker, in the same unit.
+	 * @return The capture.
+	 */
+	public static CalibrationCapture charuco(int squaresX, int squaresY, float squareLength, float markerLength)
+	{
+		Dictionary dictionary = Aruco.getPredefinedDictionary(Aruco.DICT_ARUCO_ORIGINAL);
+
+		return new CalibrationCapture(null, null,
+				CharucoBoard.create(squaresX, squaresY, squareLength, markerLength, dictionary), dictionary);
+	}
+
+	/**
+	 * Look for the board in an image and keep the view if found.
+	 * @param image Color (BGR) or gray image.
+	 * @return True if the board was found and the view added.
+	 */
+	public boolean addFrame(Mat image)
+	{
+		if (image.channels() == 1)
+			image.copyTo(gray);
+		else
+			Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
+
+		if (imageSize != null && !imageSize.equals(gray.size()))
+		{
+			logger.warning("calibration image size changed, view ignored");
+			return false;
+		}
+
+		boolean found = charucoBoard == null ? addChessboard() : addCharuco();
+
+		if (found) imageSize = gray.size();
+
+		return found;
+	}
+
+	private boolean addChessboard()
+	{
+		MatOfPoint2f corners = new MatOfPoint2f();
+
+		if (!Calib3d.findChessboardCorners(gray, patternSize, corners, Calib3d.CALIB_CB_ADAPTIVE_THRESH |
+										   Calib3d.CALIB_CB_NORMALIZE_IMAGE | Calib3d.CALIB_CB_FAST_CHECK))
+		{
+			corners.release();
+			return false;
+		}
+
+		Imgproc.cornerSubPix(gray, corners, new Size(11, 11), new Size(-1, -1),
+							 new TermCriteria(TermCriteria.EPS + TermCriteria.COUNT, 30, 0.001));
+
+		imagePoints.add(corners);
+		objectPoints.add(boardPoints);
+
+		return true;
+	}
+
+	private boolean addCharuco()
+	{
+		List<Mat>	markerCorners = new ArrayList<Mat>();
+		Mat			markerIds = new Mat(), corners = new Mat(), ids = new Mat();
+
+		try
+		{
+			Aruco.detectMarkers(gray, dictionary, markerCorners, markerIds);
+
+			if (markerIds.empty()) return false;
+
+			// A view needs enough corners to constrain the calibration.
+
+			if (Aruco.interpolateCornersCharuco(markerCorners, markerIds, gray, charucoBoard, corners, ids) < 6)
+				return false;
+
+			imagePoints.add(corners);
+			charucoIds.add(ids);
+
+			corners = ids = null;
+
+			return true;
+		}
+		finally
+		{
+			for (Mat mat : markerCorners) mat.release();
+
+			markerIds.release();
+
+			if (corners != null) corners.release();
+			if (ids != null) ids.release();
+		}
+	}
+
+	/**
+	 * Capture views from the TelloCamera video feed, which must be running.
+	 * Waits between views so the board can be moved to a new position.
+	 * @param views Number of views to capture.
+	 * @param intervalMillis Time between views in milliseconds.
+	 * @param timeoutMillis Time to give up after in milliseconds.
+	 * @return Number of views captured.
+	 * @throws InterruptedException If the thread is interrupted.
+	 */
+	public int capture(int views, long intervalMillis, long timeoutMillis) throws InterruptedException
+	{
+		TelloCamera	camera = TelloCamera.getInstance();
+		long		deadline = System.currentTimeMillis() + timeoutMillis, lastSequence = -1;
+		int			captured = 0;
+
+		while (captured < views && System.currentTimeMillis() < deadline)
+		{
+			boolean found = false;
+
+			try (Frame frame = camera.borrowFrame())
+			{
+				if (frame != null && frame.getSequence() != lastSequence)
+				{
+					lastSequence = frame.getSequence();
+
+					found = addFrame(frame.getImage());
+				}
+			}
+
+			if (found)
+			{
+				captured++;
+
+				logger.info("calibration view " + captured + " of " + views);
+
+				Thread.sleep(intervalMillis);
+			} else
+				Thread.sleep(50);
+		}
+
+		return captured;
+	}
+
+	/**
+	 * Get the number of views collected.
+	 * @return View count.
+	 */
+	public int getViewCount()
+	{
+		return imagePoints.size();
+	}
+
+	/**
+	 * Compute the calibration from the views collected.
+	 * @return The calibration or null if there are too few views (at least 4
+	 * are needed).
+	 */
+	public CameraCalibration calibrate()
+	{
+		if (imagePoints.size() < 4) return null;
+
+		Mat			cameraMatrix = new Mat(), distortion = new Mat();
+		List<Mat>	rvecs = new ArrayList<Mat>(), tvecs = new ArrayList<Mat>();
+		double		error;
+
+		if (charucoBoard == null)
+			error = Calib3d.calibrateCamera(objectPoints, imagePoints, imageSize, cameraMatrix, distortion,
+											rvecs, tvecs);
+		else
+			error = Aruco.calibrateCameraCharuco(imagePoints, charucoIds, charucoBoard, imageSize, cameraMatrix,
+												 distortion, rvecs, tvecs);
+
+		CameraCalibration calibration = new CameraCalibration(cameraMatrix, distortion, imageSize, error);
+
+		cameraMatrix.release();
+		distortion.release();
+
+		for (Mat mat : rvecs) mat.release();
+		for (Mat mat : tvecs) mat.release();
+
+		logger.info("camera calibration " + calibration);
+
+		return calibration;
+	}
+
+	/**
+	 * Discard the views collected and free their native memory.
+	 */
+	public void release()
+	{
+		for (Mat mat : imagePoints) mat.release();
+		for (Mat mat : charucoIds) mat.release();
+
+		imagePoints.clear();
+		objectPoints.clear();
+		charucoIds.clear();
+
+		gray.release();
+
+		imageSize = null;
+	}
+}
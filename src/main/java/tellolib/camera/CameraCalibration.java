@@ -0,0 +1,241 @@
+package tellolib.camera;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+/**
+ * Camera intrinsics (focal lengths, principal point) and lens distortion as
+ * found by CalibrationCapture, needed to estimate marker poses. A calibration
+ * is stored in a properties file and the default one is loaded once and
+ * cached. The calibration is made at one image size and scaled to the size
+ * of the images it is used with.
+ */
+public class CameraCalibration
+{
+	private static final Logger		logger = Logger.getLogger("Tello");
+
+	private static final Object		defaultLock = new Object();
+	private static CameraCalibration	defaultCalibration;
+	private static boolean			defaultLoaded;
+
+	private final double	fx, fy, cx, cy;
+	private final double[]	distortion;
+	private final Size		imageSize;
+	private final double	error;
+
+	/**
+	 * Create a calibration.
+	 * @param cameraMatrix 3x3 camera matrix.
+	 * @param distortion Distortion coefficients k1, k2, p1, p2[, k3...].
+	 * @param imageSize Size of the images calibrated on.
+	 * @param error RMS reprojection error of the calibration in pixels.
+	 */
+	public CameraCalibration(Mat cameraMatrix, Mat distortion, Size imageSize, double error)
+	{
+		double[]	m = new double[9];
+		Mat			m64 = new Mat(), d64 = new Mat();
+
+		cameraMatrix.convertTo(m64, CvType.CV_64F);
+		distortion.convertTo(d64, CvType.CV_64F);
+
+		m64.get(0, 0, m);
+
+		this.distortion = new double[(int) d64.total()];
+
+		d64.get(0, 0, this.distortion);
+
+		m64.release();
+		d64.release();
+
+		fx = m[0];
+		fy = m[4];
+		cx = m[2];
+		cy = m[5];
+
+		this.imageSize = imageSize.clone();
+		this.error = error;
+	}
+
+	private CameraCalibration(Properties properties)
+	{
+		fx = Double.parseDouble(properties.getProperty("fx"));
+		fy = Double.parseDouble(properties.getProperty("fy"));
+		cx = Double.parseDouble(properties.getProperty("cx"));
+		cy = Double.parseDouble(properties.getProperty("cy"));
+
+		String[] values = properties.getProperty("distortion").trim().split("\\s+");
+
+		distortion = new double[values.length];
+
+		for (int i = 0; i < values.length; i++) distortion[i] = Double.parseDouble(values[i]);
+
+		imageSize = new Size(Double.parseDouble(properties.getProperty("width")),
+							 Double.parseDouble(properties.getProperty("height")));
+
+		error = Double.parseDouble(properties.getProperty("error", "0"));
+	}
+
+	/**
+	 * Get the default calibration, loaded from the file named by the
+	 * tello.calibration system property, or calibration.properties in the
+	 * working directory, on first use.
+	 * @return The calibration or null if there is none.
+	 */
+	public static CameraCalibration getDefault()
+	{
+		synchronized (defaultLock)
+		{
+			if (!defaultLoaded)
+			{
+				defaultLoaded = true;
+
+				String fileName = System.getProperty("tello.calibration",
+						new File(System.getProperty("user.dir"), "calibration.properties").getPath());
+
+				try
+				{
+					defaultCalibration = load(fileName);
+
+					logger.fine("camera calibration loaded from " + fileName);
+				}
+				catch (IOException e)
+				{
+					logger.warning("no camera calibration: " + e.getMessage());
+				}
+			}
+
+			return defaultCalibration;
+		}
+	}
+
+	/**
+	 * Replace the default calibration, for instance with a new one from
+	 * CalibrationCapture.
+	 * @param calibration The calibration.
+	 */
+	public static void setDefault(CameraCalibration calibration)
+	{
+		synchronized (defaultLock)
+		{
+			defaultCalibration = calibration;
+			defaultLoaded = true;
+		}
+	}
+
+	/**
+	 * Load a calibration from a properties file.
+	 * @param fileName The file.
+	 * @return The calibration.
+	 * @throws IOException If the file can't be read or is not a calibration.
+	 */
+	public static CameraCalibration load(String fileName) throws IOException
+	{
+		Properties properties = new Properties();
+
+		try (InputStream in = new FileInputStream(fileName))
+		{
+			properties.load(in);
+		}
+
+		try
+		{
+			return new CameraCalibration(properties);
+		}
+		catch (NullPointerException | NumberFormatException e)
+		{
+			throw new IOException("invalid camera calibration " + fileName);
+		}
+	}
+
+	/**
+	 * Save the calibration to a properties file.
+	 * @param fileName The file.
+	 * @throws IOException If the file can't be written.
+	 */
+	public void save(String fileName) throws IOException
+	{
+		Properties		properties = new Properties();
+		StringBuilder	values = new StringBuilder();
+
+		for (double value : distortion) values.append(value).append(' ');
+
+		properties.setProperty("fx", Double.toString(fx));
+		properties.setProperty("fy", Double.toString(fy));
+		properties.setProperty("cx", Double.toString(cx));
+		properties.setProperty("cy", Double.toString(cy));
+		properties.setProperty("distortion", values.toString().trim());
+		properties.setProperty("width", Double.toString(imageSize.width));
+		properties.setProperty("height", Double.toString(imageSize.height));
+		properties.setProperty("error", Double.toString(error));
+
+		try (OutputStream out = new FileOutputStream(fileName))
+		{
+			properties.store(out, "Tello camera calibration");
+		}
+	}
+
+	/**
+	 * Fill a camera matrix for images of a given size, which may be a region
+	 * of a larger image. The principal point is moved to the region's
+	 * coordinates.
+	 * @param width Width of the full image.
+	 * @param height Height of the full image.
+	 * @param offsetX X of the region in the full image.
+	 * @param offsetY Y of the region in the full image.
+	 * @param cameraMatrix 3x3 CV_64F Mat to fill.
+	 */
+	public void getCameraMatrix(int width, int height, int offsetX, int offsetY, Mat cameraMatrix)
+	{
+		double	scaleX = width / imageSize.width, scaleY = height / imageSize.height;
+
+		cameraMatrix.create(3, 3, CvType.CV_64F);
+		cameraMatrix.put(0, 0, fx * scaleX, 0, cx * scaleX - offsetX,
+							   0, fy * scaleY, cy * scaleY - offsetY,
+							   0, 0, 1);
+	}
+
+	/**
+	 * Fill a Mat with the distortion coefficients.
+	 * @param coefficients Mat to fill, made a 1xN CV_64F row.
+	 */
+	public void getDistortion(Mat coefficients)
+	{
+		coefficients.create(1, distortion.length, CvType.CV_64F);
+		coefficients.put(0, 0, distortion);
+	}
+
+	/**
+	 * Get the size of the images the calibration was made on.
+	 * @return Image size.
+	 */
+	public Size getImageSize()
+	{
+		return imageSize.clone();
+	}
+
+	/**
+	 * Get the RMS reprojection error of the calibration.
+	 * @return Error in pixels.
+	 */
+	public double getError()
+	{
+		return error;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("fx=%.1f fy=%.1f cx=%.1f cy=%.1f size=%.0fx%.0f error=%.3f", fx, fy, cx, cy,
+							 imageSize.width, imageSize.height, error);
+	}
+}
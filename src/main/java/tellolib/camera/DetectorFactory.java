@@ -0,0 +1,88 @@
+package tellolib.camera;
+
+/**
+ * Hands out marker and face detectors for code detecting on several threads
+ * at once, for instance marker and face detection on different cores against
+ * the same frame. Detectors hold per detection state and a face detector's
+ * classifier can't be shared, so each thread needs detectors of its own:
+ * either new instances or the ones kept for the calling thread. A thread
+ * done detecting calls releaseThreadDetectors() to free the native memory of
+ * the ones kept for it, a pool thread before it is reused for other work.
+ */
+public class DetectorFactory
+{
+	private static final ThreadLocal<ArucoMarkersInterface>		threadMarkers = new ThreadLocal<>();
+	private static final ThreadLocal<FaceDetectionInterface>	threadFaces = new ThreadLocal<>();
+
+	private DetectorFactory()
+	{
+	}
+
+	/**
+	 * Create an independent marker detector.
+	 * @return New detector.
+	 */
+	public static ArucoMarkersInterface newArucoMarkers()
+	{
+		return new ArucoMarkers();
+	}
+
+	/**
+	 * Create an independent face detector with its own classifier.
+	 * @return New detector.
+	 */
+	public static FaceDetectionInterface newFaceDetection()
+	{
+		return new FaceDetection();
+	}
+
+	/**
+	 * Get the marker detector of the calling thread, created on first use.
+	 * @return The thread's detector.
+	 */
+	public static ArucoMarkersInterface getArucoMarkers()
+	{
+		ArucoMarkersInterface markers = threadMarkers.get();
+
+		if (markers == null)
+		{
+			markers = new ArucoMarkers();
+			threadMarkers.set(markers);
+		}
+
+		return markers;
+	}
+
+	/**
+	 * Get the face detector of the calling thread, created on first use.
+	 * @return The thread's detector.
+	 */
+	public static FaceDetectionInterface getFaceDetection()
+	{
+		FaceDetectionInterface faces = threadFaces.get();
+
+		if (faces == null)
+		{
+			faces = new FaceDetection();
+			threadFaces.set(faces);
+		}
+
+		return faces;
+	}
+
+	/**
+	 * Release the detectors kept for the calling thread, if any. The thread
+	 * gets new ones if it detects again.
+	 */
+	public static void releaseThreadDetectors()
+	{
+		ArucoMarkersInterface	markers = threadMarkers.get();
+		FaceDetectionInterface	faces = threadFaces.get();
+
+		if (markers != null) markers.release();
+		if (faces != null) faces.release();
+
+		threadMarkers.remove();
+		threadFaces.remove();
+	}
+}
@@ -1,7 +1,9 @@
 package tellolib.camera;
 
+import java.io.File;
 import java.util.logging.Logger;
 
+import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfRect;
 import org.opencv.core.Rect;
@@ -10,8 +12,14 @@ import org.opencv.imgproc.Imgproc;
 import org.opencv.objdetect.CascadeClassifier;
 import org.opencv.objdetect.Objdetect;
 
+import tellolib.metrics.LatencyHistogram;
+
 /**
- * Face detection with OpenCV.
+ * Face detection with OpenCV. An instance holds the results of its last 
+ * detection, its working images and its classifier, none of which can be 
+ * shared between threads, so it must only be used by one thread at a time.
+ * Use getInstance() for the global instance or create an instance per thread
+ * (see DetectorFactory) to detect on several threads at once.
  */
 public class FaceDetection implements FaceDetectionInterface
 {
@@ -19,18 +27,43 @@ public class FaceDetection implements FaceDetectionInterface
 	
 	private CascadeClassifier	faceCascade = new CascadeClassifier();
 	
-	private Rect[] 				facesArray = null;
+	// Scratch Mats reused by every detection and the results they are read
+	// into.
+	
+	private final Mat			grayFrame = new Mat(), smallFrame = new Mat(), region = new Mat(), match = new Mat();
+	private final MatOfRect		faces = new MatOfRect();
+	private final FaceResults	results = new FaceResults();
+	private boolean				detected;
+	
+	// Tracking mode state. Templates hold the face images cut from the frame
+	// at the last detection, matched in a region around each face in the 
+	// frames between detections.
+	
+	private boolean				tracking;
+	private int					detectionInterval = 10, framesSinceDetection;
+	private double				detectionScale = 0.5, trackingMargin = 0.5;
+	private double				matchThreshold = 0.6;
+	private Mat[]				templates = new Mat[0];
+	private boolean				haveTemplates;
+	private LatencyHistogram	detectionTime = new LatencyHistogram(), trackingTime = new LatencyHistogram();
 	
-	private FaceDetection()
+	/**
+	 * Create an independent detector with its own classifier, loaded from the
+	 * file named by the tello.faceClassifier system property or from
+	 * src/resources in the working directory.
+	 */
+	public FaceDetection()
 	{
-		String basePath = System.getProperty("user.dir");
-		String classifierPath = basePath + "\\src\\resources\\haarcascade_frontalface_alt.xml";
+		String classifierPath = System.getProperty("tello.faceClassifier",
+				new File(System.getProperty("user.dir"), "src/resources/haarcascade_frontalface_alt.xml").getPath());
 		
 		logger.fine("classifier path=" + classifierPath);
 		
 		faceCascade.load(classifierPath);
 	}
     
+	// Holder class and getInstance() provide the global instance.
+	
 	private static class SingletonHolder 
 	{
         public static final FaceDetection INSTANCE = new FaceDetection();
@@ -48,27 +81,95 @@ public class FaceDetection implements FaceDetectionInterface
 	@Override
 	public boolean detectFaces()
 	{
-		Mat image = TelloCamera.getInstance().getImage();
-		
-		return detectFaces(image);	
+		try (Frame frame = TelloCamera.getInstance().borrowFrame())
+		{
+			if (frame == null) return false;
+			
+			return detectFaces(frame.getImage(), frame.sequence, frame.timestamp);
+		}
 	}
-
+	
 	@Override
 	public boolean detectFaces(Mat image)
 	{
-		MatOfRect 			faces = new MatOfRect();
-		Mat 				grayFrame = new Mat();
-		int 				absoluteFaceSize = 0;
+		return detectFaces(image, 0, 0);
+	}
+	
+	// Detect and stamp the results with the frame's sequence number and
+	// capture time, 0 if unknown, and the time detection finished.
+	private boolean detectFaces(Mat image, long sequence, long captureTime)
+	{
+		boolean found = find(image);
+		
+		results.sequence = sequence;
+		results.captureTime = captureTime;
+		results.detectTime = System.nanoTime();
 		
+		return found;
+	}
+
+	private boolean find(Mat image)
+	{
 		if (image == null) return false;
 		
 		logger.finer("detectFaces");
 		
-		// convert the frame in gray scale
-		Imgproc.cvtColor(image, grayFrame, Imgproc.COLOR_BGR2GRAY);
+		// In tracking mode follow the faces found by the last detection until
+		// it is time to detect again or a face is lost.
+		
+		if (tracking && haveTemplates && framesSinceDetection < detectionInterval)
+		{
+			long start = System.nanoTime();
+			
+			boolean tracked = track(image);
+			
+			trackingTime.record((System.nanoTime() - start) / 1000);
+			
+			if (tracked)
+			{
+				framesSinceDetection++;
+				return true;
+			}
+			
+			logger.finer("face lost, detecting");
+		}
 		
-		// equalize the frame histogram to improve the result
-		Imgproc.equalizeHist(grayFrame, grayFrame);
+		long start = System.nanoTime();
+		
+		boolean found = detect(image, tracking ? detectionScale : 1.0);
+		
+		detectionTime.record((System.nanoTime() - start) / 1000);
+		
+		framesSinceDetection = 0;
+		
+		haveTemplates = tracking && found && saveTemplates(image);
+		
+		return found;
+	}
+	
+	// Run the face detector on the image reduced by the scale factor.
+	private boolean detect(Mat image, double scale)
+	{
+		int 				absoluteFaceSize = 0;
+		
+		// scale down the image first so the conversions also work on fewer
+		// pixels
+		if (scale != 1.0)
+		{
+			Imgproc.resize(image, smallFrame, new Size(), scale, scale, Imgproc.INTER_AREA);
+			
+			image = smallFrame;
+		}
+		
+		// convert the frame in gray scale, unless preprocessed by the vision
+		// pipeline, and equalize the frame histogram to improve the result
+		if (image.channels() == 1)
+			Imgproc.equalizeHist(image, grayFrame);
+		else
+		{
+			Imgproc.cvtColor(image, grayFrame, Imgproc.COLOR_BGR2GRAY);
+			Imgproc.equalizeHist(grayFrame, grayFrame);
+		}
 		
 		// compute minimum face size (1% of the frame height, in our case)
 		int height = grayFrame.rows();
@@ -81,27 +182,201 @@ public class FaceDetection implements FaceDetectionInterface
 		faceCascade.detectMultiScale(grayFrame, faces, 1.1, 2, 0 | Objdetect.CASCADE_SCALE_IMAGE,
 				new Size(absoluteFaceSize, absoluteFaceSize), new Size(height,height));
 		
-		// each rectangle in faces is a face.
-		facesArray = faces.toArray();
+		detected = true;
+		
+		// each row of faces is a face rectangle as 4 ints, read in one go.
+		int		count = faces.rows();
+		int[]	rects;
+		
+		results.ensureCapacity(count);
+		rects = results.rects;
+		
+		if (count > 0) faces.get(0, 0, rects);
+		
+		// back to full frame coordinates
+		if (scale != 1.0)
+			for (int i = 0; i < count * 4; i++) rects[i] = (int) Math.round(rects[i] / scale);
+		
+		results.count = count;
+		
+		logger.finer("faces detected = " + count);		
+		
+		if (count == 0) return false;
 		
-		logger.finer("faces detected = " + facesArray.length);		
+		return true;
+	}
+	
+	// Find each face by matching its template in a region around where it was
+	// last seen, moving the face in the results. Fails if any face does not 
+	// match well enough.
+	private boolean track(Mat image)
+	{
+		int[]	rects = results.rects;
+		
+		for (int i = 0; i < results.count; i++)
+		{
+			int		x = rects[i * 4], y = rects[i * 4 + 1], width = rects[i * 4 + 2], height = rects[i * 4 + 3];
+			int		marginX = (int) Math.max(width * trackingMargin, 8);
+			int		marginY = (int) Math.max(height * trackingMargin, 8);
+			
+			int left = Math.max(x - marginX, 0);
+			int top = Math.max(y - marginY, 0);
+			int right = Math.min(x + width + marginX, image.cols());
+			int bottom = Math.min(y + height + marginY, image.rows());
+			
+			if (right - left < width || bottom - top < height) return false;
+			
+			Mat area = image.submat(top, bottom, left, right);
+			
+			toGray(area, region);
+			
+			area.release();
+			
+			Imgproc.matchTemplate(region, templates[i], match, Imgproc.TM_CCOEFF_NORMED);
+			
+			Core.MinMaxLocResult best = Core.minMaxLoc(match);
+			
+			if (best.maxVal < matchThreshold) return false;
+			
+			rects[i * 4] = left + (int) best.maxLoc.x;
+			rects[i * 4 + 1] = top + (int) best.maxLoc.y;
+		}
+		
+		return true;
+	}
+	
+	// Cut the detected faces out of the frame as the tracking templates, 
+	// reusing the template Mats. Fails if a face is not inside the frame.
+	private boolean saveTemplates(Mat image)
+	{
+		int[]	rects = results.rects;
+		
+		if (templates.length < results.count)
+		{
+			Mat[] newTemplates = new Mat[results.count];
+			
+			System.arraycopy(templates, 0, newTemplates, 0, templates.length);
+			
+			for (int i = templates.length; i < newTemplates.length; i++) newTemplates[i] = new Mat();
+			
+			templates = newTemplates;
+		}
 		
-		if (facesArray.length == 0) return false;
+		for (int i = 0; i < results.count; i++)
+		{
+			int	x = rects[i * 4], y = rects[i * 4 + 1], width = rects[i * 4 + 2], height = rects[i * 4 + 3];
+			
+			// Scaling may round a face past the frame edge, it can't be 
+			// tracked then. Detect again next time.
+			
+			if (x < 0 || y < 0 || x + width > image.cols() || y + height > image.rows()) return false;
+			
+			Mat face = image.submat(y, y + height, x, x + width);
+			
+			toGray(face, templates[i]);
+			
+			face.release();
+		}
 		
 		return true;
 	}
+	
+	private static void toGray(Mat image, Mat gray)
+	{
+		if (image.channels() == 1)
+			image.copyTo(gray);
+		else
+			Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
+	}
 
 	@Override
-	public int getFaceCount()
+	public void setTracking( boolean tracking )
+	{
+		this.tracking = tracking;
+		
+		haveTemplates = false;
+	}
+	
+	@Override
+	public boolean isTracking()
+	{
+		return tracking;
+	}
+	
+	@Override
+	public void setTrackingParameters( int detectionInterval, double detectionScale, double margin )
+	{
+		if (detectionInterval < 1 || detectionScale <= 0 || detectionScale > 1 || margin < 0)
+			throw new IllegalArgumentException("invalid tracking parameters");
+		
+		this.detectionInterval = detectionInterval;
+		this.detectionScale = detectionScale;
+		this.trackingMargin = margin;
+	}
+	
+	@Override
+	public LatencyHistogram getDetectionTime()
+	{
+		return detectionTime;
+	}
+	
+	@Override
+	public LatencyHistogram getTrackingTime()
+	{
+		return trackingTime;
+	}
+
+	@Override
+	public FaceResults detect(Mat image)
+	{
+		detectFaces(image);
+		
+		return results.copy();
+	}
+	
+	@Override
+	public FaceResults detect(Frame frame)
+	{
+		detectFaces(frame.getGray() != null ? frame.gray : frame.image, frame.sequence, frame.timestamp);
+		
+		return results.copy();
+	}
+	
+	@Override
+	public FaceResults getResults()
+	{
+		return results;
+	}
+	
+	@Override
+	public void release()
 	{
-		if (facesArray == null) return 0;
+		grayFrame.release();
+		smallFrame.release();
+		region.release();
+		match.release();
+		faces.release();
 		
-		return facesArray.length;
+		for (Mat template : templates) template.release();
+		
+		haveTemplates = false;
+	}
+
+	@Override
+	public int getFaceCount()
+	{
+		return results.count;
 	}
 
 	@Override
 	public Rect[] getFaces()
 	{
+		if (!detected) return null;
+		
+		Rect[] facesArray = new Rect[results.count];
+		
+		for (int i = 0; i < facesArray.length; i++) facesArray[i] = results.getRect(i, new Rect());
+		
 		return facesArray;
 	}
 }
\ No newline at end of file
@@ -3,6 +3,8 @@ package tellolib.camera;
 import org.opencv.core.Mat;
 import org.opencv.core.Rect;
 
+import tellolib.metrics.LatencyHistogram;
+
 /**
  * Face detection with OpenCV.
  */
@@ -10,7 +12,7 @@ public interface FaceDetectionInterface
 {
 	/**
 	 * Perform face detection function on an image.
-	 * @param frame Mat to examine for faces.
+	 * @param frame Mat to examine for faces, color (BGR) or gray scale.
 	 * @return True if face(s) detected, false if not.
 	 */
 	public boolean detectFaces(Mat frame);
@@ -35,5 +37,76 @@ public interface FaceDetectionInterface
 	 * @return Array of rectangles bounding faces.
 	 */
 	public Rect[] getFaces();
-
+	
+	/**
+	 * Perform face detection on an image and return the results as an object
+	 * of their own, which the detector does not change afterwards, so it may
+	 * be handed to other threads.
+	 * @param frame Mat to examine for faces, color (BGR) or gray scale.
+	 * @return Faces found, may be none.
+	 */
+	public FaceResults detect(Mat frame);
+	
+	/**
+	 * Perform face detection on a frame from the camera, using its gray image
+	 * if it has one, and return the results as an object of their own stamped
+	 * with the frame's sequence number and capture time.
+	 * @param frame Frame to examine for faces.
+	 * @return Faces found, may be none.
+	 */
+	public FaceResults detect(Frame frame);
+	
+	/**
+	 * Get the faces detected by the last call to detectFaces() without 
+	 * allocating: the results object is reused and refilled by the next 
+	 * detection.
+	 * @return The face rectangles.
+	 */
+	public FaceResults getResults();
+	
+	/**
+	 * Free the native memory held by the detector's working images. The 
+	 * detector may still be used, the memory is allocated again as needed.
+	 */
+	public void release();
+	
+	/**
+	 * Turn tracking mode on or off. In tracking mode faces are detected on a
+	 * scaled down image, and in the frames between detections each face is 
+	 * followed by matching its image from the last detection in a small 
+	 * region around where it was, which is much faster than detecting. The 
+	 * faces are detected again every few frames (see setTrackingParameters())
+	 * or when one is lost. Off by default.
+	 * @param tracking True to turn tracking mode on.
+	 */
+	public void setTracking(boolean tracking);
+	
+	/**
+	 * Returns tracking mode state.
+	 * @return True if tracking mode is on.
+	 */
+	public boolean isTracking();
+	
+	/**
+	 * Set the tracking mode parameters.
+	 * @param detectionInterval Number of tracked frames between detections,
+	 * default 10.
+	 * @param detectionScale Scale of the image faces are detected on, from
+	 * 0 to 1, default 0.5.
+	 * @param margin Space searched around a face on each side when tracking 
+	 * as a fraction of the face size, default 0.5.
+	 */
+	public void setTrackingParameters(int detectionInterval, double detectionScale, double margin);
+	
+	/**
+	 * Get the times taken by face detection.
+	 * @return Histogram of detection times in microseconds.
+	 */
+	public LatencyHistogram getDetectionTime();
+	
+	/**
+	 * Get the times taken by face tracking between detections.
+	 * @return Histogram of tracking times in microseconds.
+	 */
+	public LatencyHistogram getTrackingTime();
 }
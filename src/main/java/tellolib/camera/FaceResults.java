@@ -0,0 +1,170 @@
+package tellolib.camera;
+
+import org.opencv.core.Rect;
+
+import tellolib.metrics.FrameTiming;
+
+/**
+ * Faces found by a detection, held as x, y, width, height of each face's
+ * bounding rectangle in a primitive array. The object belongs to the detector
+ * and is refilled by the next detection, so no memory is allocated per
+ * detection once the array has grown to the face count. The copies returned
+ * by FaceDetectionInterface.detect() are never changed and may be shared
+ * between threads.
+ */
+public class FaceResults
+{
+	int			count;
+	long		sequence, captureTime, detectTime;
+	int[]		rects;
+
+	FaceResults()
+	{
+		rects = new int[16];
+	}
+
+	private FaceResults( int count )
+	{
+		this.count = count;
+
+		rects = new int[count * 4];
+	}
+
+	/**
+	 * Get the number of faces.
+	 * @return Face count, may be zero.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Get the x coordinate of a face's upper left corner.
+	 * @param index Face index from 0.
+	 * @return X in pixels.
+	 */
+	public int getX( int index )
+	{
+		return rects[check(index) * 4];
+	}
+
+	/**
+	 * Get the y coordinate of a face's upper left corner.
+	 * @param index Face index from 0.
+	 * @return Y in pixels.
+	 */
+	public int getY( int index )
+	{
+		return rects[check(index) * 4 + 1];
+	}
+
+	/**
+	 * Get the width of a face.
+	 * @param index Face index from 0.
+	 * @return Width in pixels.
+	 */
+	public int getWidth( int index )
+	{
+		return rects[check(index) * 4 + 2];
+	}
+
+	/**
+	 * Get the height of a face.
+	 * @param index Face index from 0.
+	 * @return Height in pixels.
+	 */
+	public int getHeight( int index )
+	{
+		return rects[check(index) * 4 + 3];
+	}
+
+	/**
+	 * Set a rectangle to a face's bounding rectangle.
+	 * @param index Face index from 0.
+	 * @param rect Rectangle to set.
+	 * @return The rectangle.
+	 */
+	public Rect getRect( int index, Rect rect )
+	{
+		int	i = check(index) * 4;
+
+		rect.x = rects[i];
+		rect.y = rects[i + 1];
+		rect.width = rects[i + 2];
+		rect.height = rects[i + 3];
+
+		return rect;
+	}
+
+	/**
+	 * Get the sequence number of the frame detected on.
+	 * @return Frame sequence number, 0 if not detected on a camera frame.
+	 */
+	public long getSequence()
+	{
+		return sequence;
+	}
+
+	/**
+	 * Get the capture time of the frame detected on.
+	 * @return Capture time in System.nanoTime() units, 0 if not detected on a
+	 * camera frame.
+	 */
+	public long getCaptureTime()
+	{
+		return captureTime;
+	}
+
+	/**
+	 * Get the time detection finished.
+	 * @return Detection time in System.nanoTime() units.
+	 */
+	public long getDetectTime()
+	{
+		return detectTime;
+	}
+
+	/**
+	 * Get the frame timing to pass on to commands reacting to the detection
+	 * (see FrameTiming.set()).
+	 * @return The timing or null if not detected on a camera frame.
+	 */
+	public FrameTiming getTiming()
+	{
+		return captureTime == 0 ? null : new FrameTiming(sequence, captureTime, detectTime);
+	}
+
+	// A copy sized to the faces, not touched by the detector.
+	FaceResults copy()
+	{
+		FaceResults copy = new FaceResults(count);
+
+		System.arraycopy(rects, 0, copy.rects, 0, count * 4);
+
+		copy.sequence = sequence;
+		copy.captureTime = captureTime;
+		copy.detectTime = detectTime;
+
+		return copy;
+	}
+
+	// Make room for a number of faces, keeping the current contents.
+	void ensureCapacity( int faces )
+	{
+		if (rects.length >= faces * 4) return;
+
+		int[]	newRects = new int[Math.max(faces * 4, rects.length * 2)];
+
+		System.arraycopy(rects, 0, newRects, 0, rects.length);
+
+		rects = newRects;
+	}
+
+	private int check( int index )
+	{
+		if (index < 0 || index >= count) throw new IndexOutOfBoundsException("face " + index + " of " + count);
+
+		return index;
+	}
+}
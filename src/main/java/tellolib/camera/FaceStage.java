@@ -0,0 +1,51 @@
+package tellolib.camera;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Pipeline stage that looks for faces in each frame, using the gray image if
+ * the frame was preprocessed, and hands the result to a listener on the stage
+ * thread.
+ */
+public class FaceStage implements VisionStage
+{
+	private final FaceDetectionInterface		faces;
+	private final BiConsumer<Frame, FaceResults>	listener;
+
+	/**
+	 * Create a stage with a detector of its own.
+	 * @param listener Called after each detection with the frame and the
+	 * results, which may be kept or passed to another thread.
+	 */
+	public FaceStage(BiConsumer<Frame, FaceResults> listener)
+	{
+		this(DetectorFactory.newFaceDetection(), listener);
+	}
+
+	/**
+	 * Create a face detection stage.
+	 * @param faces Detector to use. Must not be used elsewhere while the
+	 * pipeline runs.
+	 * @param listener Called after each detection with the frame and the
+	 * results, which may be kept or passed to another thread.
+	 */
+	public FaceStage(FaceDetectionInterface faces, BiConsumer<Frame, FaceResults> listener)
+	{
+		this.faces = faces;
+		this.listener = listener;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "Face";
+	}
+
+	@Override
+	public boolean process(Frame frame)
+	{
+		listener.accept(frame, faces.detect(frame));
+
+		return true;
+	}
+}
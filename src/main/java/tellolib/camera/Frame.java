@@ -0,0 +1,127 @@
+package tellolib.camera;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opencv.core.Mat;
+
+/**
+ * A video frame borrowed from TelloCamera. The image is shared with the camera
+ * and any other borrower, so it must be treated as read only and must not be
+ * used after release() is called. Frames are reference counted and returned to
+ * the camera's frame pool for reuse when the last holder releases them. Frame
+ * implements AutoCloseable so it can be borrowed in a try with resources
+ * statement.
+ */
+public class Frame implements AutoCloseable
+{
+	final Mat				image = new Mat(), gray = new Mat(), display = new Mat();
+	long					sequence, timestamp;
+
+	// Set by the pipeline stages after writing the Mat, read from other threads.
+	volatile boolean		hasGray, hasDisplay;
+
+	private final FramePool		pool;
+	private final AtomicInteger	references = new AtomicInteger();
+
+	Frame(FramePool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * Get the frame image. Do not modify or release it.
+	 * @return The image.
+	 */
+	public Mat getImage()
+	{
+		return image;
+	}
+
+	/**
+	 * Get the gray scale version of the image made by a PreprocessStage.
+	 * Do not modify or release it.
+	 * @return The gray image or null if the frame was not preprocessed.
+	 */
+	public Mat getGray()
+	{
+		return hasGray ? gray : null;
+	}
+
+	/**
+	 * Get the copy of the image with the camera overlays drawn on it made by
+	 * an AnnotateStage. Do not modify or release it.
+	 * @return The annotated image or null if the frame was not annotated.
+	 */
+	public Mat getDisplay()
+	{
+		return hasDisplay ? display : null;
+	}
+
+	/**
+	 * Get the frame's number in the video stream.
+	 * @return Frame sequence number, starting at 1.
+	 */
+	public long getSequence()
+	{
+		return sequence;
+	}
+
+	/**
+	 * Get the time the frame was captured.
+	 * @return Capture time in System.nanoTime() units.
+	 */
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+
+	/**
+	 * Give the frame back. Must be called once for every time the frame
+	 * was borrowed.
+	 */
+	public void release()
+	{
+		int count = references.decrementAndGet();
+
+		if (count == 0)
+			pool.recycle(this);
+		else if (count < 0)
+			throw new IllegalStateException("frame released more times than borrowed");
+	}
+
+	@Override
+	public void close()
+	{
+		release();
+	}
+
+	// Take a reference only if the frame is still held by someone, so a frame
+	// that has just gone back to the pool is never handed out.
+	boolean tryRetain()
+	{
+		while (true)
+		{
+			int count = references.get();
+
+			if (count == 0) return false;
+
+			if (references.compareAndSet(count, count + 1)) return true;
+		}
+	}
+
+	// Reference for the pool taking the frame out of the free list.
+	void retainFree()
+	{
+		hasGray = hasDisplay = false;
+
+		references.set(1);
+	}
+
+	// Free the native memory of the images.
+	void releaseImages()
+	{
+		image.release();
+		gray.release();
+		display.release();
+	}
+}
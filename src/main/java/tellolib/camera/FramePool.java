@@ -0,0 +1,130 @@
+package tellolib.camera;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pool of reusable frames and the most recently published frame. The capture
+ * thread takes a free frame, reads into it and publishes it; consumers borrow
+ * the published frame by reference. With one consumer at a time three frames
+ * circulate (being written, published, borrowed), more are allocated only if
+ * consumers hold on to frames longer. No frame is ever written while borrowed.
+ */
+class FramePool
+{
+	private final ConcurrentLinkedQueue<Frame>	free = new ConcurrentLinkedQueue<>();
+	private final AtomicReference<Frame>		latest = new AtomicReference<>();
+	private volatile boolean					closed;
+	private int									allocated;
+
+	/**
+	 * Take a free frame to write into. The caller holds the only reference.
+	 * Only called by the capture thread.
+	 * @return The frame.
+	 */
+	Frame acquire()
+	{
+		Frame frame = free.poll();
+
+		if (frame == null)
+		{
+			frame = new Frame(this);
+			allocated++;
+		}
+
+		frame.retainFree();
+
+		return frame;
+	}
+
+	/**
+	 * Make a frame the latest one handed to borrowers. The pool takes its own
+	 * reference, the caller keeps its reference.
+	 * @param frame Frame to publish.
+	 */
+	void publish(Frame frame)
+	{
+		if (closed) return;
+
+		frame.tryRetain();
+
+		Frame previous = latest.getAndSet(frame);
+
+		if (previous != null) previous.release();
+	}
+
+	/**
+	 * Borrow the latest frame.
+	 * @return The frame, to be released by the caller, or null if none.
+	 */
+	Frame borrow()
+	{
+		while (true)
+		{
+			Frame frame = latest.get();
+
+			if (frame == null) return null;
+
+			if (!frame.tryRetain()) continue;	// Replaced and recycled meanwhile.
+
+			// Replaced, recycled and taken by the capture thread again between
+			// reading latest and retaining it, so possibly being written. Still
+			// published means it was not, or has been written and published
+			// again.
+
+			if (latest.get() == frame) return frame;
+
+			frame.release();
+		}
+	}
+
+	/**
+	 * Get the latest frame without taking a reference. Only for reading
+	 * frame properties that do not change, such as the image size.
+	 * @return The frame or null if none.
+	 */
+	Frame peek()
+	{
+		return latest.get();
+	}
+
+	/**
+	 * Get the number of frames created by the pool.
+	 * @return Frame count.
+	 */
+	int getAllocated()
+	{
+		return allocated;
+	}
+
+	/**
+	 * Drop the published frame and free the native memory of all frames once
+	 * they are released.
+	 */
+	void close()
+	{
+		closed = true;
+
+		Frame previous = latest.getAndSet(null);
+
+		if (previous != null) previous.release();
+
+		Frame frame;
+
+		while ((frame = free.poll()) != null) frame.releaseImages();
+	}
+
+	// Called when the last reference to a frame is released.
+	void recycle(Frame frame)
+	{
+		if (closed)
+			frame.releaseImages();
+		else
+		{
+			free.add(frame);
+
+			// Closed meanwhile, so close() may have missed it.
+			if (closed && free.remove(frame)) frame.releaseImages();
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package tellolib.camera;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock free queue of frames between two pipeline stages with a drop
+ * oldest policy: when the queue is full, adding a frame releases the oldest
+ * frame waiting, so a stage that falls behind always works on recent frames
+ * and the latency stays bounded. One thread adds frames and one takes them.
+ * <p>
+ * Slots are addressed by ever increasing head and tail counters. The consumer
+ * and the producer (when dropping) both take frames by advancing the head with
+ * compare and set, so each frame is taken exactly once.
+ */
+class FrameQueue
+{
+	private final AtomicReferenceArray<Frame>	slots;
+	private final int							capacity;
+	private final AtomicLong					head = new AtomicLong(), tail = new AtomicLong(), dropped = new AtomicLong();
+	private volatile Thread						consumer;
+
+	/**
+	 * Create a queue.
+	 * @param capacity Maximum number of frames waiting.
+	 */
+	FrameQueue(int capacity)
+	{
+		if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+
+		this.capacity = capacity;
+
+		slots = new AtomicReferenceArray<>(capacity);
+	}
+
+	/**
+	 * Add a frame, passing the caller's reference to the queue. Releases the
+	 * oldest frame if full. Only called by the producer thread.
+	 * @param frame Frame to add.
+	 */
+	void offer(Frame frame)
+	{
+		long t = tail.get();
+
+		while (t - head.get() >= capacity)
+		{
+			Frame oldest = take();
+
+			if (oldest != null)
+			{
+				oldest.release();
+				dropped.incrementAndGet();
+			}
+		}
+
+		slots.set((int) (t % capacity), frame);
+		tail.set(t + 1);
+
+		Thread waiting = consumer;
+
+		if (waiting != null) LockSupport.unpark(waiting);
+	}
+
+	/**
+	 * Take the oldest frame, waiting up to a time limit if empty. Only called
+	 * by the consumer thread.
+	 * @param timeoutMillis Maximum wait in milliseconds.
+	 * @return The frame, whose reference passes to the caller, or null if
+	 * none arrived in time or the thread was interrupted.
+	 */
+	Frame poll(long timeoutMillis)
+	{
+		Frame frame = take();
+
+		if (frame != null) return frame;
+
+		consumer = Thread.currentThread();
+
+		try
+		{
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+			while ((frame = take()) == null && !Thread.currentThread().isInterrupted())
+			{
+				long remaining = deadline - System.nanoTime();
+
+				if (remaining <= 0) break;
+
+				LockSupport.parkNanos(this, remaining);
+			}
+		}
+		finally { consumer = null; }
+
+		return frame;
+	}
+
+	/**
+	 * Release all the frames waiting.
+	 */
+	void clear()
+	{
+		Frame frame;
+
+		while ((frame = take()) != null) frame.release();
+	}
+
+	/**
+	 * Get the number of frames dropped because the queue was full.
+	 * @return Dropped frame count.
+	 */
+	long getDropped()
+	{
+		return dropped.get();
+	}
+
+	private Frame take()
+	{
+		while (true)
+		{
+			long h = head.get();
+
+			if (h >= tail.get()) return null;
+
+			Frame frame = slots.get((int) (h % capacity));
+
+			if (head.compareAndSet(h, h + 1)) return frame;
+		}
+	}
+}
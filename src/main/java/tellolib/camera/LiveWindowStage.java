@@ -0,0 +1,85 @@
+package tellolib.camera;
+
+import java.awt.Dimension;
+import java.awt.Image;
+import java.util.logging.Logger;
+
+import javax.swing.ImageIcon;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.HighGui;
+
+/**
+ * Pipeline sink that shows the frames in a window, the annotated image if
+ * the frame has one.
+ */
+public class LiveWindowStage implements VisionStage
+{
+	private final Logger		logger = Logger.getLogger("Tello");
+
+	private final String		title;
+	private final Dimension		size;
+	private JFrame				jFrame;
+	private JLabel				jLabel;
+
+	/**
+	 * Create a live window stage.
+	 * @param title Window title.
+	 * @param width Initial window width.
+	 * @param height Initial window height.
+	 */
+	public LiveWindowStage(String title, int width, int height)
+	{
+		this.title = title;
+
+		size = new Dimension(width, height);
+	}
+
+	@Override
+	public String getName()
+	{
+		return "LiveWindow";
+	}
+
+	@Override
+	public void start()
+	{
+		jFrame = new JFrame(title);
+		jFrame.setMinimumSize(size);
+		jLabel = new JLabel();
+		jFrame.getContentPane().add(jLabel);
+		jFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		jFrame.pack();
+		jFrame.setVisible(true);
+	}
+
+	@Override
+	public boolean process(Frame frame)
+	{
+		Mat image = frame.getDisplay() != null ? frame.display : frame.image;
+
+		try
+		{
+			// Convert image Mat to a buffered image.
+			Image img = HighGui.toBufferedImage(image);
+
+			// Set label component of the live window to new image.
+			jLabel.setIcon(new ImageIcon(img));
+		}
+		catch (Exception e) {logger.warning("live window update failed: " + e.toString());}
+
+		return true;
+	}
+
+	@Override
+	public void stop()
+	{
+		if (jFrame == null) return;
+
+		jFrame.setVisible(false);
+		jFrame.dispose();
+		jFrame = null;
+	}
+}
@@ -0,0 +1,265 @@
+package tellolib.camera;
+
+import org.opencv.core.Rect;
+
+import tellolib.metrics.FrameTiming;
+
+/**
+ * Aruco markers found by a detection, held in primitive arrays: the marker ids
+ * and the 4 corners of each marker as x,y pairs starting with the upper left
+ * corner, then upper right, lower right and lower left, plus each marker's
+ * rotation and translation when poses are estimated. The object belongs to
+ * the detector and is refilled by the next detection, so no memory is
+ * allocated per detection once the arrays have grown to the marker count.
+ * The copies returned by ArucoMarkersInterface.detect() are never changed and
+ * may be shared between threads.
+ */
+public class MarkerResults
+{
+	int			count;
+	long		sequence, captureTime, detectTime;
+	int[]		ids;
+	float[]		corners;
+	boolean		hasPose;
+	double[]	rvecs, tvecs;
+
+	MarkerResults()
+	{
+		this(0);
+		
+		ensureCapacity(4);
+	}
+
+	private MarkerResults( int count )
+	{
+		this.count = count;
+
+		ids = new int[count];
+		corners = new float[count * 8];
+		rvecs = new double[count * 3];
+		tvecs = new double[count * 3];
+	}
+
+	/**
+	 * Get the number of markers.
+	 * @return Marker count, may be zero.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Get a marker's id.
+	 * @param index Marker index from 0.
+	 * @return Marker id.
+	 */
+	public int getId( int index )
+	{
+		return ids[check(index)];
+	}
+
+	/**
+	 * Get the x coordinate of a marker corner.
+	 * @param index Marker index from 0.
+	 * @param corner Corner 0 to 3, upper left clockwise.
+	 * @return X in pixels.
+	 */
+	public float getCornerX( int index, int corner )
+	{
+		return corners[check(index) * 8 + corner * 2];
+	}
+
+	/**
+	 * Get the y coordinate of a marker corner.
+	 * @param index Marker index from 0.
+	 * @param corner Corner 0 to 3, upper left clockwise.
+	 * @return Y in pixels.
+	 */
+	public float getCornerY( int index, int corner )
+	{
+		return corners[check(index) * 8 + corner * 2 + 1];
+	}
+
+	/**
+	 * Get the center of a marker, the average of its corners.
+	 * @param index Marker index from 0.
+	 * @return X of the center in pixels.
+	 */
+	public float getCenterX( int index )
+	{
+		int	i = check(index) * 8;
+
+		return (corners[i] + corners[i + 2] + corners[i + 4] + corners[i + 6]) / 4;
+	}
+
+	/**
+	 * Get the center of a marker, the average of its corners.
+	 * @param index Marker index from 0.
+	 * @return Y of the center in pixels.
+	 */
+	public float getCenterY( int index )
+	{
+		int	i = check(index) * 8 + 1;
+
+		return (corners[i] + corners[i + 2] + corners[i + 4] + corners[i + 6]) / 4;
+	}
+
+	/**
+	 * Set a rectangle to the marker's upper left corner, the width of its top
+	 * edge and the height of its left edge.
+	 * @param index Marker index from 0.
+	 * @param rect Rectangle to set.
+	 * @return The rectangle.
+	 */
+	public Rect getTarget( int index, Rect rect )
+	{
+		int	i = check(index) * 8;
+
+		rect.x = (int) corners[i];
+		rect.y = (int) corners[i + 1];
+		rect.width = (int) corners[i + 2] - rect.x;
+		rect.height = (int) corners[i + 7] - rect.y;
+
+		return rect;
+	}
+
+	/**
+	 * Tells if the markers' poses were estimated (see 
+	 * ArucoMarkersInterface.setPoseEstimation()).
+	 * @return True if the pose values are set.
+	 */
+	public boolean hasPose()
+	{
+		return hasPose;
+	}
+
+	/**
+	 * Get a coordinate of a marker center relative to the camera: x to the
+	 * right, y down, z straight ahead.
+	 * @param index Marker index from 0.
+	 * @param axis 0 for x, 1 for y, 2 for z.
+	 * @return Coordinate in the unit of the marker length.
+	 */
+	public double getTranslation( int index, int axis )
+	{
+		return tvecs[check(index) * 3 + axis];
+	}
+
+	/**
+	 * Get a component of a marker's rotation relative to the camera as a 
+	 * Rodrigues vector: the direction is the axis of rotation, the length the
+	 * angle in radians.
+	 * @param index Marker index from 0.
+	 * @param axis 0 for x, 1 for y, 2 for z.
+	 * @return Rotation vector component.
+	 */
+	public double getRotation( int index, int axis )
+	{
+		return rvecs[check(index) * 3 + axis];
+	}
+
+	/**
+	 * Get the straight line distance from the camera to a marker center.
+	 * @param index Marker index from 0.
+	 * @return Distance in the unit of the marker length.
+	 */
+	public double getDistance( int index )
+	{
+		int	i = check(index) * 3;
+
+		return Math.sqrt(tvecs[i] * tvecs[i] + tvecs[i + 1] * tvecs[i + 1] + tvecs[i + 2] * tvecs[i + 2]);
+	}
+
+	/**
+	 * Get the horizontal angle from the camera's axis to a marker center.
+	 * @param index Marker index from 0.
+	 * @return Angle in degrees, plus to the right.
+	 */
+	public double getBearing( int index )
+	{
+		int	i = check(index) * 3;
+
+		return Math.toDegrees(Math.atan2(tvecs[i], tvecs[i + 2]));
+	}
+
+	/**
+	 * Get the sequence number of the frame detected on.
+	 * @return Frame sequence number, 0 if not detected on a camera frame.
+	 */
+	public long getSequence()
+	{
+		return sequence;
+	}
+
+	/**
+	 * Get the capture time of the frame detected on.
+	 * @return Capture time in System.nanoTime() units, 0 if not detected on a
+	 * camera frame.
+	 */
+	public long getCaptureTime()
+	{
+		return captureTime;
+	}
+
+	/**
+	 * Get the time detection finished.
+	 * @return Detection time in System.nanoTime() units.
+	 */
+	public long getDetectTime()
+	{
+		return detectTime;
+	}
+
+	/**
+	 * Get the frame timing to pass on to commands reacting to the detection
+	 * (see FrameTiming.set()).
+	 * @return The timing or null if not detected on a camera frame.
+	 */
+	public FrameTiming getTiming()
+	{
+		return captureTime == 0 ? null : new FrameTiming(sequence, captureTime, detectTime);
+	}
+
+	// A copy sized to the markers, not touched by the detector.
+	MarkerResults copy()
+	{
+		MarkerResults copy = new MarkerResults(count);
+
+		System.arraycopy(ids, 0, copy.ids, 0, count);
+		System.arraycopy(corners, 0, copy.corners, 0, count * 8);
+		System.arraycopy(rvecs, 0, copy.rvecs, 0, count * 3);
+		System.arraycopy(tvecs, 0, copy.tvecs, 0, count * 3);
+
+		copy.hasPose = hasPose;
+		copy.sequence = sequence;
+		copy.captureTime = captureTime;
+		copy.detectTime = detectTime;
+
+		return copy;
+	}
+
+	// Make room for a number of markers, keeping the current contents.
+	void ensureCapacity( int markers )
+	{
+		if (ids.length >= markers) return;
+
+		int[]	newIds = new int[Math.max(markers, ids.length * 2)];
+		float[]	newCorners = new float[newIds.length * 8];
+
+		System.arraycopy(ids, 0, newIds, 0, ids.length);
+		System.arraycopy(corners, 0, newCorners, 0, corners.length);
+
+		ids = newIds;
+		corners = newCorners;
+		rvecs = new double[newIds.length * 3];
+		tvecs = new double[newIds.length * 3];
+	}
+
+	private int check( int index )
+	{
+		if (index < 0 || index >= count) throw new IndexOutOfBoundsException("marker " + index + " of " + count);
+
+		return index;
+	}
+}
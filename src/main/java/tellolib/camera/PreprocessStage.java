@@ -0,0 +1,26 @@
+package tellolib.camera;
+
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Pipeline stage that makes the gray scale image used by the detectors, so the
+ * conversion is done once per frame however many detectors follow.
+ */
+public class PreprocessStage implements VisionStage
+{
+	@Override
+	public String getName()
+	{
+		return "Preprocess";
+	}
+
+	@Override
+	public boolean process(Frame frame)
+	{
+		Imgproc.cvtColor(frame.image, frame.gray, Imgproc.COLOR_BGR2GRAY);
+
+		frame.hasGray = true;
+
+		return true;
+	}
+}
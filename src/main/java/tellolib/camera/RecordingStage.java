@@ -0,0 +1,35 @@
+package tellolib.camera;
+
+/**
+ * Pipeline sink that writes the frames to the camera's recording while
+ * recording is on (see TelloCamera.startRecording()), the annotated image
+ * if the frame has one. The frames are only queued here, the file is written
+ * by the recorder's own thread.
+ */
+public class RecordingStage implements VisionStage
+{
+	private final TelloCamera	camera;
+
+	/**
+	 * Create a recording stage.
+	 * @param camera Camera doing the recording.
+	 */
+	public RecordingStage(TelloCamera camera)
+	{
+		this.camera = camera;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "Recording";
+	}
+
+	@Override
+	public boolean process(Frame frame)
+	{
+		if (camera.isRecording()) camera.record(frame.getDisplay() != null ? frame.display : frame.image, frame.timestamp);
+
+		return true;
+	}
+}
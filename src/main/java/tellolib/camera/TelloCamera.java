@@ -1,7 +1,5 @@
 package tellolib.camera;
 
-import java.awt.Dimension;
-import java.awt.Image;
 import java.io.ByteArrayInputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -10,9 +8,6 @@ import java.util.List;
 import java.util.logging.Logger;
 
 import javax.imageio.ImageIO;
-import javax.swing.ImageIcon;
-import javax.swing.JFrame;
-import javax.swing.JLabel;
 
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
@@ -23,7 +18,6 @@ import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.videoio.*;
-import org.opencv.highgui.HighGui;
 import org.opencv.highgui.ImageWindow;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
@@ -37,17 +31,16 @@ public class TelloCamera implements TelloCameraInterface
 {
 	private final 				Logger logger = Logger.getLogger("Tello");
 
-	private boolean				recording;
 	private Thread				videoCaptureThread;
 	private VideoCapture		camera;
-	private Mat					image;
-	private VideoWriter			videoWriter;
+	private FramePool			framePool;
+	private VisionPipeline		pipeline;
+	private volatile VideoTap	videoTap;
+	private volatile VideoRecorder	recorder = new VideoRecorder(30, VideoRecorder.DropPolicy.DROP_OLDEST);
 	private ImageWindow			imageWindow;
 	private Size				videoFrameSize = new Size(960, 720);
 	private double				videoFrameRate = 30;
 	private SimpleDateFormat	df = new SimpleDateFormat("yyyy-MM-dd.HHmmss");
-	private JFrame				jFrame;
-	private JLabel				jLabel;
 	private String				statusBar = null;
 	
 	private ArrayList<Rect>			targetRectangles;
@@ -55,12 +48,26 @@ public class TelloCamera implements TelloCameraInterface
 	private Scalar 					targetColor = new Scalar(0, 0, 255), contourColor = new Scalar(255, 0, 0);
 	private int						targetWidth = 1, contourWidth = 1;
 	
-	// Private constructor, holder class and getInstance() implement this
-	// class as a singleton.
+	// Video port, or -1 to use the one set with TelloDrone.setNetwork().
+	private final int			videoPort;
+	
+	// Private constructor, holder class and getInstance() provide a global
+	// instance for the drone at the default address. Each drone of a swarm
+	// has its own instance (see DroneSession).
 	
 	private TelloCamera()
 	{
-
+		videoPort = -1;
+	}
+	
+	/**
+	 * Create a camera for a drone other than the global one. The OpenCV library
+	 * must be loaded before video capture is started.
+	 * @param videoPort Local UDP port the drone's video stream is received on.
+	 */
+	public TelloCamera(int videoPort)
+	{
+		this.videoPort = videoPort;
 	}
     
 	private static class SingletonHolder 
@@ -84,32 +91,53 @@ public class TelloCamera implements TelloCameraInterface
 		
 		if (camera != null) return;
 
+		// The video tap receives the feed from the drone and passes it on to 
+		// a loopback port for decoding, recording the raw stream on request.
+		// If the tap can't bind the video port, decode the feed directly.
+		
+		int port = videoPort < 0 ? TelloDrone.getUdpVideoPort() : videoPort;
+		
+		videoTap = new VideoTap(port);
+		
+		String url;
+		
+		if (videoTap.open())
+			url = "udp://127.0.0.1:" + Integer.toString(videoTap.getDecodePort());
+		else
+		{
+			videoTap = null;
+			url = "udp://0.0.0.0:" + Integer.toString(port);
+		}
+
 		// Create VideoCapture object to accept video feed from drone.
 		
 		camera = new VideoCapture();
 		
 	 	camera.setExceptionMode(true);
 		
-		camera.open("udp://0.0.0.0:" + Integer.toString(TelloDrone.UDP_VIDEO_PORT), Videoio.CAP_FFMPEG);
+		camera.open(url, Videoio.CAP_FFMPEG);
 		
 		logger.fine("video camera open:" + camera.isOpened());
 		
-		image = new Mat();
+		framePool = new FramePool();
+		
+		// Frames are annotated, displayed in the live window and recorded
+		// by pipeline stages, each on its own thread. More stages, such as 
+		// detectors, can be added with getPipeline().
+		
+		pipeline = new VisionPipeline();
+		
+		VisionPipeline.Node annotate = pipeline.add(new AnnotateStage(this), 1);
 		
-		// Create window to display live video feed.
-
 		if (liveWindow)
-		{
-	        jFrame = new JFrame("Tello Controller Test");
-	        jFrame.setMinimumSize(new Dimension((int) videoFrameSize.width, (int) videoFrameSize.height));
-	        jLabel = new JLabel();
-	        jFrame.getContentPane().add(jLabel);
-	        jFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-	        jFrame.pack();
-	        jFrame.setVisible(true);
-		}
+			annotate.then(new LiveWindowStage("Tello Controller Test", (int) videoFrameSize.width, 
+											  (int) videoFrameSize.height), 1);
 		
-        // Start thread to process images from video feed.
+		annotate.then(new RecordingStage(this), 4);
+		
+		pipeline.start();
+		
+        // Start thread to read images from video feed.
 		
 		videoCaptureThread = new VideoCaptureThread();
 		videoCaptureThread.start();
@@ -120,34 +148,47 @@ public class TelloCamera implements TelloCameraInterface
 	{
 		if (camera == null) return;
 
-		if (recording) stopRecording();
+		stopRecording();
 
 		logger.fine("stopping video capture thread");
 		
 		if (videoCaptureThread != null) videoCaptureThread.interrupt();
 		
-		if (jFrame != null) 
-		{
-			jFrame.setVisible(false);
-			jFrame.dispose();
-		}
+		pipeline.stop();
+		pipeline = null;
 		
 		camera.release();
-		image.release();
-		image = null;
+		
+		if (videoTap != null) videoTap.close();
+		videoTap = null;
+		
+		framePool.close();
+		framePool = null;
 		camera = null;
 	}
 	
 	@Override
 	public Mat getImage()
 	{
-	    synchronized (this) 
-	    {
-	    	if (image == null)
-	    		return null;
-	    	else
-	    		return image.clone();
-	    }
+		Frame frame = borrowFrame();
+		
+		if (frame == null) return null;
+		
+		try
+		{
+			return frame.getImage().clone();
+		}
+		finally { frame.release(); }
+	}
+	
+	@Override
+	public Frame borrowFrame()
+	{
+		FramePool pool = framePool;
+		
+		if (pool == null) return null;
+		
+		return pool.borrow();
 	}
 
 	// Thread to read the images of the video stream and process them
@@ -163,52 +204,35 @@ public class TelloCamera implements TelloCameraInterface
 		
 	    public void run()
 	    {
-	    	Mat	image2 = new Mat();
+	    	FramePool		pool = framePool;
+	    	VisionPipeline	stages = pipeline;
+	    	long			sequence = 0;
 	    	
 			logger.fine("video capture thread started");
 			
 	    	try
 	    	{
-	    		// Loop reading images from the video feed storing the current image
-	    		// in the image variable.
+	    		// Loop reading images from the video feed into a free frame from
+	    		// the pool, then publishing it as the current image and handing
+	    		// it to the pipeline. Borrowed frames are never written, so no
+	    		// lock is needed.
 	    		
 	    		while (!isInterrupted())
 	    		{
-	    		    synchronized (this) { camera.read(image); }
+	    			Frame frame = pool.acquire();
 	    			
-	    		    // Draw target rectangles on image.
-	    		    
-	    			if (targetRectangles != null)
+	    			try
 	    			{
-	    				for (Rect rect: targetRectangles) 
-	    					Imgproc.rectangle(image, 
-	    							new Point(rect.x, rect.y), 
-	    							new Point(rect.x + rect.width, rect.y +  rect.height), 
-	    							targetColor, targetWidth);
-	    			}
-	    			
-	    			if (contours != null)
-	    			{
-	    				Imgproc.drawContours(image, contours, -1, contourColor, contourWidth);
-	    			}
-
-	    			if (statusBar != null)
-	    			{
-	    				Imgproc.putText(image, statusBar, new Point(0, image.height() - 25), Imgproc.FONT_HERSHEY_PLAIN, 
-	    						1.5, new Scalar(255, 255, 255), 2, Imgproc.FILLED);
-	    			}
-
-	    			// write image to live window if open.
-	    		    
-	    		    if (jFrame != null)	updateLiveWindow(image);
-	    			
-	    			// Write image to recording file if recording.
-	    			
-	    			if (recording) 
-	    			{
-	    				Imgproc.resize(image, image2, videoFrameSize);
-	    				videoWriter.write(image2);
+	    				camera.read(frame.image);
+	    				
+	    				frame.sequence = ++sequence;
+	    				frame.timestamp = System.nanoTime();
+	    				
+	    				pool.publish(frame);
+	    				
+	    				stages.submit(frame);
 	    			}
+	    			finally { frame.release(); }
 	    		}
 	    		
 	    		logger.fine("Video capture thread ended");
@@ -220,6 +244,54 @@ public class TelloCamera implements TelloCameraInterface
 	    }
 	}
 
+	/**
+	 * Get the pipeline processing the video frames while capture is running.
+	 * Stages added to it get every frame captured.
+	 * @return The pipeline or null if not capturing.
+	 */
+	public VisionPipeline getPipeline()
+	{
+		return pipeline;
+	}
+
+	// Draw the target rectangles, contours and status bar on an image. Called
+	// by AnnotateStage.
+	void drawOverlays(Mat image)
+	{
+		synchronized (this)
+		{
+			if (targetRectangles != null)
+			{
+				for (Rect rect: targetRectangles) 
+					Imgproc.rectangle(image, 
+							new Point(rect.x, rect.y), 
+							new Point(rect.x + rect.width, rect.y +  rect.height), 
+							targetColor, targetWidth);
+			}
+		}
+		
+		ArrayList<MatOfPoint> contours = this.contours;
+		
+		if (contours != null)
+		{
+			Imgproc.drawContours(image, contours, -1, contourColor, contourWidth);
+		}
+
+		String statusBar = this.statusBar;
+		
+		if (statusBar != null)
+		{
+			Imgproc.putText(image, statusBar, new Point(0, image.height() - 25), Imgproc.FONT_HERSHEY_PLAIN, 
+					1.5, new Scalar(255, 255, 255), 2, Imgproc.FILLED);
+		}
+	}
+
+	// Queue an image for the recording writer. Called by RecordingStage.
+	void record(Mat image, long timestamp)
+	{
+		recorder.write(image, timestamp);
+	}
+
 	@Override
 	public boolean takePicture( String folder )
 	{
@@ -253,21 +325,6 @@ public class TelloCamera implements TelloCameraInterface
 		return result;
 	}
 
-	// Update the live window with the supplied image.
-	private void updateLiveWindow(Mat image)
-	{
-		//logger.info("updateLiveWindow");
-		try
-		{
-	        // Convert image Mat to a jpeg.
-	        Image img = HighGui.toBufferedImage(image);
-	        
-	        // Set label component of the live window to new jpeg.
-	        jLabel.setIcon(new ImageIcon(img));
-		}
-		catch (Exception e) {logger.warning("live window update failed: " + e.toString());}
-	}
-	
 	@Override
 	public boolean startRecording( String folder )
 	{
@@ -282,12 +339,9 @@ public class TelloCamera implements TelloCameraInterface
 		
 		fileName = folder + "\\" + df.format(new Date()) + ".avi";
 
-		videoWriter = new VideoWriter(fileName, VideoWriter.fourcc('M', 'J', 'P', 'G'), videoFrameRate, 
-									  videoFrameSize, true);
-
-		if (videoWriter != null && videoWriter.isOpened())
+		if (recorder.start(fileName, videoFrameRate, videoFrameSize))
 		{
-			recording = result = true;
+			result = true;
 		
 			logger.fine("Video recording started to " + fileName);
 		} else
@@ -299,11 +353,12 @@ public class TelloCamera implements TelloCameraInterface
 	@Override
 	public void stopRecording()
 	{
-		if (camera == null || !recording) return;
-
-		recording =  false;
+		if (camera == null) return;
 
-		videoWriter.release();
+		// Returns when the frames queued have been written and the file closed.
+		// Also closes the file of a recording that failed on a write error.
+		
+		recorder.stop();
 		
 		logger.fine("Video recording stopped");
 	}
@@ -311,7 +366,80 @@ public class TelloCamera implements TelloCameraInterface
 	@Override
 	public boolean isRecording()
 	{
-		return recording;
+		return recorder.isRecording();
+	}
+
+	@Override
+	public boolean startRawRecording( String folder )
+	{
+		String		fileName;
+		
+		if (camera == null || videoTap == null) 
+		{
+			logger.warning("No raw video stream");
+			return false;
+		}
+		
+		fileName = folder + "\\" + df.format(new Date()) + ".h264";
+
+		if (videoTap.startRecording(fileName))
+		{
+			logger.fine("Raw video recording started to " + fileName);
+			return true;
+		}
+		
+		logger.warning("Raw video recording failed");
+		
+		return false;
+	}
+
+	@Override
+	public void stopRawRecording()
+	{
+		VideoTap videoTap = this.videoTap;
+		
+		if (videoTap == null || !videoTap.isRecording()) return;
+
+		videoTap.stopRecording();
+		
+		logger.fine("Raw video recording stopped: " + videoTap.getWritten() + " bytes");
+	}
+	
+	@Override
+	public boolean isRawRecording()
+	{
+		VideoTap videoTap = this.videoTap;
+		
+		return videoTap != null && videoTap.isRecording();
+	}
+
+	/**
+	 * Set how recorded frames are queued for the writer thread. Takes effect
+	 * when the next recording starts.
+	 * @param queueCapacity Number of frames that may wait for the writer.
+	 * @param dropPolicy What to do with a frame when the queue is full.
+	 */
+	public void setRecordingPolicy( int queueCapacity, VideoRecorder.DropPolicy dropPolicy )
+	{
+		if (recorder.isRecording()) 
+		{
+			logger.warning("Recording policy can't be changed while recording");
+			return;
+		}
+		
+		recorder.stop();	// Close the file of a failed recording.
+		
+		recorder = new VideoRecorder(queueCapacity, dropPolicy);
+	}
+
+	/**
+	 * Get the video recorder, for its written, dropped, repeated and skipped
+	 * frame counts.
+	 * @return The recorder.
+	 */
+	public VideoRecorder getRecorder()
+	{
+		return recorder;
 	}
 
 	@Override
@@ -357,9 +485,12 @@ public class TelloCamera implements TelloCameraInterface
 	
 	public Size getImageSize()
 	{
-		if (image == null) return new Size(0,0);
+		FramePool	pool = framePool;
+		Frame		frame = pool == null ? null : pool.peek();
+		
+		if (frame == null) return new Size(0,0);
 		
-		return new Size(image.width(), image.height());
+		return new Size(frame.image.width(), frame.image.height());
 	}
 
 	@Override
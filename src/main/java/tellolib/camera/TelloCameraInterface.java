@@ -52,10 +52,41 @@ public interface TelloCameraInterface
   boolean isRecording();
 
   /**
-   * Returns the current image from the video feed.
+   * Turn on recording of the H.264 stream from the drone, as received, to an
+   * .h264 file in the named folder. There is no decoding or re-encoding, so
+   * this costs far less than startRecording() and keeps the full quality, but
+   * the overlays are not recorded. The file plays in VLC or ffplay and can be
+   * put in a container with ffmpeg -framerate 30 -i file.h264 -c copy file.mp4.
+   * @param folder Location to save the video file.
+   * @return True if recording started, false if failed.
+   */
+  boolean startRawRecording(String folder);
+  
+  /**
+   * Stop recording the H.264 stream.
+   */
+  void stopRawRecording();
+  
+  /**
+   * Returns raw recording state.
+   * @return True if raw recording in progress, false if not.
+   */
+  boolean isRawRecording();
+
+  /**
+   * Returns a copy of the current image from the video feed. Use 
+   * borrowFrame() to know when the image was captured.
    * @return The current image.
    */
   Mat getImage();
+
+  /**
+   * Borrow the current frame from the video feed without copying it. The
+   * frame is shared and must be treated as read only. Call release() on
+   * it (or close it with try with resources) when done.
+   * @return The current frame or null if no video stream.
+   */
+  Frame borrowFrame();
 	
   /**
    * Add a target rectangle to be drawn on the camera feed images.
@@ -0,0 +1,358 @@
+package tellolib.camera;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoWriter;
+
+/**
+ * Writes video to a file on a dedicated writer thread so disk stalls and slow
+ * encoding do not hold up the thread supplying the frames. Frames are resized
+ * into Mats from a pool and queued for the writer, a bounded queue with a
+ * configurable policy for when the writer falls behind.
+ * <p>
+ * The video file has a fixed frame rate, so frames are placed by their capture
+ * timestamps: a frame is written as many times as needed to fill the time
+ * since the previous one (dropped frames show as a held image rather than
+ * shortening the video), and a frame arriving ahead of time is skipped.
+ */
+public class VideoRecorder
+{
+	/**
+	 * What to do with a frame when the writer queue is full.
+	 */
+	public enum DropPolicy
+	{
+		/** Discard the oldest queued frame to make room. */
+		DROP_OLDEST,
+		/** Discard the new frame. */
+		DROP_NEWEST,
+		/** Wait for room, slowing down the caller. */
+		BLOCK
+	}
+
+	private final Logger						logger = Logger.getLogger("Tello");
+
+	private final int							queueCapacity;
+	private final DropPolicy					dropPolicy;
+	private final BlockingQueue<RecordFrame>	queue;
+	private final ConcurrentLinkedQueue<RecordFrame>	free = new ConcurrentLinkedQueue<>();
+	private final RecordFrame					end = new RecordFrame(null);
+	private final AtomicLong					written = new AtomicLong(), dropped = new AtomicLong(),
+												repeated = new AtomicLong(), skipped = new AtomicLong();
+
+	private VideoWriter							videoWriter;
+	private Size								frameSize;
+	private double								frameRate;
+	private volatile boolean					recording;
+	private volatile int						generation;
+	private Thread								writerThread;
+
+	/**
+	 * Create a recorder.
+	 * @param queueCapacity Number of frames that may wait for the writer.
+	 * @param dropPolicy What to do with a frame when the queue is full.
+	 */
+	public VideoRecorder(int queueCapacity, DropPolicy dropPolicy)
+	{
+		this.queueCapacity = queueCapacity;
+		this.dropPolicy = dropPolicy;
+
+		queue = new ArrayBlockingQueue<>(queueCapacity + 1);
+	}
+
+	/**
+	 * Open a video file and start the writer thread.
+	 * @param fileName File to write, an .avi file recorded as MJPG.
+	 * @param frameRate Frame rate of the video file.
+	 * @param frameSize Size of the video frames, images are resized to it.
+	 * @return True if recording started, false if the file could not be opened.
+	 */
+	public synchronized boolean start(String fileName, double frameRate, Size frameSize)
+	{
+		if (recording) return false;
+
+		// Close the file of a recording that failed and was not stopped.
+
+		if (writerThread != null) finish();
+
+		// Frames queued by a write racing with the last stop, after it emptied
+		// the queue.
+
+		RecordFrame frame;
+
+		while ((frame = queue.poll()) != null) if (frame != end) frame.image.release();
+
+		videoWriter = new VideoWriter(fileName, VideoWriter.fourcc('M', 'J', 'P', 'G'), frameRate, frameSize, true);
+
+		if (!videoWriter.isOpened())
+		{
+			videoWriter.release();
+			videoWriter = null;
+			return false;
+		}
+
+		this.frameRate = frameRate;
+		this.frameSize = frameSize;
+
+		written.set(0);
+		dropped.set(0);
+		repeated.set(0);
+		skipped.set(0);
+
+		recording = true;
+
+		writerThread = new WriterThread();
+		writerThread.start();
+
+		return true;
+	}
+
+	/**
+	 * Queue an image for writing. The image is copied, so the caller may
+	 * reuse it at once.
+	 * @param image Image to record.
+	 * @param timestamp Capture time of the image, System.nanoTime() units.
+	 */
+	public void write(Mat image, long timestamp)
+	{
+		// Read before recording, so a frame from a write racing with stop is
+		// not taken for the next recording's.
+
+		int current = generation;
+
+		if (!recording) return;
+
+		RecordFrame frame = free.poll();
+
+		if (frame == null) frame = new RecordFrame(new Mat());
+
+		Imgproc.resize(image, frame.image, frameSize);
+		frame.timestamp = timestamp;
+		frame.generation = current;
+
+		switch (dropPolicy)
+		{
+			case DROP_OLDEST:
+				while (queue.size() >= queueCapacity)
+				{
+					RecordFrame oldest = queue.poll();
+
+					if (oldest == null) break;
+
+					free.add(oldest);
+					dropped.incrementAndGet();
+				}
+
+				if (!queue.offer(frame)) discard(frame);
+				break;
+
+			case DROP_NEWEST:
+				if (queue.size() >= queueCapacity || !queue.offer(frame)) discard(frame);
+				break;
+
+			case BLOCK:
+				try
+				{
+					queue.put(frame);
+				}
+				catch (InterruptedException e)
+				{
+					discard(frame);
+					Thread.currentThread().interrupt();
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Stop recording. Returns when every frame queued has been written and
+	 * the file is closed. Also closes the file of a recording that failed.
+	 */
+	public synchronized void stop()
+	{
+		if (writerThread == null) return;
+
+		finish();
+	}
+
+	// Stop the writer thread once it has written the queued frames and close
+	// the file. The writer thread may have ended already on a write error.
+	private void finish()
+	{
+		recording = false;
+
+		try
+		{
+			// The end marker goes behind every frame already queued. If the
+			// writer thread has ended no one takes it, so don't wait for room.
+
+			while (writerThread.isAlive() && !queue.offer(end, 100, TimeUnit.MILLISECONDS)) {}
+
+			writerThread.join();
+		}
+		catch (InterruptedException e)
+		{
+			writerThread.interrupt();
+			Thread.currentThread().interrupt();
+		}
+
+		writerThread = null;
+		generation++;
+
+		videoWriter.release();
+		videoWriter = null;
+
+		// Frames queued by a write racing with stop.
+
+		RecordFrame frame;
+
+		while ((frame = queue.poll()) != null) if (frame != end) free.add(frame);
+
+		while ((frame = free.poll()) != null) frame.image.release();
+
+		logger.fine("video recording stopped: written=" + written + " repeated=" + repeated + " dropped=" +
+					dropped + " skipped=" + skipped);
+	}
+
+	/**
+	 * Tells if recording is in progress.
+	 * @return True if recording.
+	 */
+	public boolean isRecording()
+	{
+		return recording;
+	}
+
+	/**
+	 * Get the number of frames written to the file, repeats included.
+	 * @return Written frame count.
+	 */
+	public long getWritten()
+	{
+		return written.get();
+	}
+
+	/**
+	 * Get the number of frames discarded because the writer fell behind.
+	 * @return Dropped frame count.
+	 */
+	public long getDropped()
+	{
+		return dropped.get();
+	}
+
+	/**
+	 * Get the number of extra copies of frames written to fill gaps in the
+	 * timestamps.
+	 * @return Repeated frame count.
+	 */
+	public long getRepeated()
+	{
+		return repeated.get();
+	}
+
+	/**
+	 * Get the number of frames not written because they arrived faster than
+	 * the video frame rate.
+	 * @return Skipped frame count.
+	 */
+	public long getSkipped()
+	{
+		return skipped.get();
+	}
+
+	private void discard(RecordFrame frame)
+	{
+		free.add(frame);
+		dropped.incrementAndGet();
+	}
+
+	// A pooled image waiting to be written. The end marker has no image.
+	private static class RecordFrame
+	{
+		final Mat	image;
+		long		timestamp;
+		int			generation;
+
+		RecordFrame(Mat image)
+		{
+			this.image = image;
+		}
+	}
+
+	// Thread that writes the queued frames until it takes the end marker.
+	private class WriterThread extends Thread
+	{
+		private final int	generation = VideoRecorder.this.generation;
+
+		WriterThread()
+		{
+			this.setName("VideoRecorder");
+			this.setDaemon(true);
+		}
+
+		public void run()
+		{
+			long	startTime = 0;
+			long	frameCount = 0;
+
+			try
+			{
+				while (true)
+				{
+					RecordFrame frame = queue.take();
+
+					if (frame == end) break;
+
+					// Left from the last recording.
+
+					if (frame.generation != generation)
+					{
+						free.add(frame);
+						continue;
+					}
+
+					if (frameCount == 0) startTime = frame.timestamp;
+
+					// Position of the frame in the video by its timestamp.
+
+					long position = Math.round((frame.timestamp - startTime) * frameRate / 1e9);
+					long copies = Math.max(position + 1 - frameCount, 0);
+
+					if (copies == 0) skipped.incrementAndGet();
+
+					for (long i = 0; i < copies; i++) videoWriter.write(frame.image);
+
+					if (copies > 1) repeated.addAndGet(copies - 1);
+
+					written.addAndGet(copies);
+					frameCount += copies;
+
+					free.add(frame);
+				}
+			}
+			catch (InterruptedException e) {}
+			catch (Exception e)
+			{
+				logger.warning("video recording failed: " + e.getMessage());
+
+				// Stop taking frames and unblock any writer waiting for room.
+				// The file is closed by stop().
+
+				recording = false;
+
+				RecordFrame frame;
+
+				while ((frame = queue.poll()) != null) if (frame != end) free.add(frame);
+			}
+		}
+	}
+}
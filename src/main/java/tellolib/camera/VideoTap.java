@@ -0,0 +1,305 @@
+package tellolib.camera;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Receives the raw H.264 video stream from the drone on its own NIO channel and
+ * passes every datagram on to a loopback port where FFMPEG (VideoCapture) reads
+ * and decodes it. While recording, the datagrams are also written unchanged to
+ * a file, so recording costs a buffer copy rather than a decode and re-encode.
+ * <p>
+ * The file is a raw H.264 Annex B elementary stream (.h264) that players such
+ * as VLC and ffplay open directly, and that can be put in a container without
+ * re-encoding, e.g. ffmpeg -framerate 30 -i video.h264 -c copy video.mp4.
+ * Writing starts at the first datagram holding a sequence parameter set (the
+ * start of a key frame) so the file always decodes from the beginning.
+ */
+class VideoTap
+{
+	private static final int	MAX_DATAGRAM = 2048;
+	private static final int	NAL_SPS = 7;
+
+	private final Logger		logger = Logger.getLogger("Tello");
+
+	private final int			videoPort;
+	private final ByteBuffer	buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+	private final Object		recordLock = new Object();
+	private final AtomicLong	received = new AtomicLong(), written = new AtomicLong();
+
+	private DatagramChannel		channel, decodeChannel;
+	private InetSocketAddress	decodeAddress;
+	private Thread				tapThread;
+	private FileChannel			file;
+	private boolean				waitingForKeyFrame;
+
+	/**
+	 * Create a tap.
+	 * @param videoPort UDP port the drone sends the video stream to.
+	 */
+	VideoTap(int videoPort)
+	{
+		this.videoPort = videoPort;
+	}
+
+	/**
+	 * Bind the video port and start passing the stream on to the decode port.
+	 * @return True if open, false if the video port could not be bound.
+	 */
+	synchronized boolean open()
+	{
+		if (channel != null) return true;
+
+		try
+		{
+			decodeAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), freePort());
+
+			channel = DatagramChannel.open();
+			channel.bind(new InetSocketAddress(videoPort));
+
+			// Not connected, so datagrams sent before FFMPEG is listening are
+			// simply lost rather than failing later sends.
+
+			decodeChannel = DatagramChannel.open();
+		}
+		catch (IOException e)
+		{
+			logger.warning("video tap failed to open: " + e.getMessage());
+			closeChannels();
+			return false;
+		}
+
+		tapThread = new TapThread();
+		tapThread.start();
+
+		logger.fine("video tap open on port " + videoPort + " passing to " + decodeAddress);
+
+		return true;
+	}
+
+	/**
+	 * Stop receiving and close any recording.
+	 */
+	synchronized void close()
+	{
+		if (channel == null) return;
+
+		stopRecording();
+
+		// Closing the channel ends the receive the thread is blocked in.
+
+		closeChannels();
+
+		try
+		{
+			tapThread.join(2000);
+		}
+		catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+
+		tapThread = null;
+	}
+
+	/**
+	 * Get the loopback port the stream is passed on to for decoding.
+	 * @return Port number.
+	 */
+	int getDecodePort()
+	{
+		return decodeAddress.getPort();
+	}
+
+	/**
+	 * Start writing the stream to a file.
+	 * @param fileName File to write, replaced if it exists.
+	 * @return True if recording started, false if the file could not be opened.
+	 */
+	boolean startRecording(String fileName)
+	{
+		synchronized (recordLock)
+		{
+			if (file != null) return false;
+
+			try
+			{
+				file = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+										StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			}
+			catch (IOException e)
+			{
+				logger.warning("raw video recording failed: " + e.getMessage());
+				return false;
+			}
+
+			waitingForKeyFrame = true;
+			written.set(0);
+
+			return true;
+		}
+	}
+
+	/**
+	 * Stop writing the stream and close the file.
+	 */
+	void stopRecording()
+	{
+		synchronized (recordLock)
+		{
+			if (file == null) return;
+
+			try
+			{
+				file.close();
+			}
+			catch (IOException e) { logger.warning("raw video file close failed: " + e.getMessage()); }
+
+			file = null;
+		}
+	}
+
+	/**
+	 * Tells if the stream is being written to a file.
+	 * @return True if recording.
+	 */
+	boolean isRecording()
+	{
+		synchronized (recordLock)
+		{
+			return file != null;
+		}
+	}
+
+	/**
+	 * Get the number of datagrams received from the drone.
+	 * @return Datagram count.
+	 */
+	long getReceived()
+	{
+		return received.get();
+	}
+
+	/**
+	 * Get the number of bytes written to the current recording.
+	 * @return Byte count.
+	 */
+	long getWritten()
+	{
+		return written.get();
+	}
+
+	// Write a datagram to the recording, if any, skipping datagrams until the
+	// first key frame.
+	private void record(ByteBuffer datagram) throws IOException
+	{
+		synchronized (recordLock)
+		{
+			if (file == null) return;
+
+			if (waitingForKeyFrame)
+			{
+				if (!startsWithSps(datagram)) return;
+
+				waitingForKeyFrame = false;
+			}
+
+			while (datagram.hasRemaining()) written.addAndGet(file.write(datagram));
+		}
+	}
+
+	// Tells if a datagram begins with an Annex B start code (00 00 01 or
+	// 00 00 00 01) followed by a sequence parameter set NAL unit.
+	private static boolean startsWithSps(ByteBuffer datagram)
+	{
+		int p = datagram.position(), limit = datagram.limit(), zeros = 0;
+
+		while (p < limit && datagram.get(p) == 0 && zeros < 3)
+		{
+			zeros++;
+			p++;
+		}
+
+		if (zeros < 2 || p + 1 >= limit || datagram.get(p) != 1) return false;
+
+		return (datagram.get(p + 1) & 0x1f) == NAL_SPS;
+	}
+
+	// Find a free UDP port on the loopback interface for FFMPEG to listen on.
+	private static int freePort() throws IOException
+	{
+		try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress()))
+		{
+			return socket.getLocalPort();
+		}
+	}
+
+	private void closeChannels()
+	{
+		try
+		{
+			if (channel != null) channel.close();
+			if (decodeChannel != null) decodeChannel.close();
+		}
+		catch (IOException e) {}
+
+		channel = decodeChannel = null;
+	}
+
+	// Thread that receives the video datagrams, passes them on to the decoder
+	// and writes them to the recording.
+	private class TapThread extends Thread
+	{
+		private final DatagramChannel	channel = VideoTap.this.channel, decodeChannel = VideoTap.this.decodeChannel;
+
+		TapThread()
+		{
+			this.setName("VideoTap");
+			this.setDaemon(true);
+		}
+
+		public void run()
+		{
+			logger.fine("video tap thread started");
+
+			try
+			{
+				while (channel.isOpen())
+				{
+					buffer.clear();
+
+					if (channel.receive(buffer) == null) continue;
+
+					buffer.flip();
+					received.incrementAndGet();
+
+					decodeChannel.send(buffer, decodeAddress);
+
+					buffer.rewind();
+
+					try
+					{
+						record(buffer);
+					}
+					catch (IOException e)
+					{
+						logger.warning("raw video recording failed: " + e.getMessage());
+						stopRecording();
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				if (channel.isOpen()) logger.warning("video tap failed: " + e.getMessage());
+			}
+
+			logger.fine("video tap thread ended");
+		}
+	}
+}
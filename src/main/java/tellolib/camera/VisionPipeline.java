@@ -0,0 +1,262 @@
+package tellolib.camera;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Processes the frames from TelloCamera through a tree of stages, typically
+ * decode (the camera capture thread) then preprocess, detect, annotate and the
+ * sinks (live window, recording). Every stage runs on its own thread and has a
+ * bounded input queue that drops the oldest frame when full, so a slow stage
+ * only loses frames itself and does not hold up the capture or the stages
+ * beside it. A stage can feed several following stages, each gets the same
+ * frame by reference.
+ * <p>
+ * Detection is usually slower than the frame rate, so detectors are best added
+ * as a branch of their own beside annotation rather than in front of it:
+ * <pre>
+ * Node preprocess = pipeline.add(new PreprocessStage(), 1);
+ * preprocess.then(new ArucoStage(listener), 1);
+ * Node annotate = preprocess.then(new AnnotateStage(camera), 1);
+ * annotate.then(new LiveWindowStage("Tello"), 1);
+ * </pre>
+ * Stages may be added while the pipeline runs.
+ */
+public class VisionPipeline
+{
+	private final Logger		logger = Logger.getLogger("Tello");
+
+	private final List<Node>	roots = new CopyOnWriteArrayList<>();
+	private final List<Node>	nodes = new CopyOnWriteArrayList<>();
+	private volatile boolean	running;
+
+	/**
+	 * Add a stage fed directly with the captured frames.
+	 * @param stage The stage.
+	 * @param queueCapacity Frames that may wait for the stage before the
+	 * oldest is dropped.
+	 * @return The stage's node, used to add the stages following it.
+	 */
+	public Node add(VisionStage stage, int queueCapacity)
+	{
+		Node node = new Node(stage, queueCapacity);
+
+		roots.add(node);
+
+		return node;
+	}
+
+	/**
+	 * Start the stage threads. Called by TelloCamera when video capture starts.
+	 */
+	public synchronized void start()
+	{
+		if (running) return;
+
+		running = true;
+
+		for (Node node : nodes) node.startThread();
+	}
+
+	/**
+	 * Stop the stage threads, waiting for them to end, and release the frames
+	 * waiting in the queues. Called by TelloCamera when video capture stops.
+	 */
+	public synchronized void stop()
+	{
+		if (!running) return;
+
+		running = false;
+
+		for (Node node : nodes) node.stopThread();
+	}
+
+	/**
+	 * Tells if the pipeline is running.
+	 * @return True if started.
+	 */
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+	/**
+	 * Get the stages of the pipeline in the order they were added.
+	 * @return List of stage nodes.
+	 */
+	public List<Node> getNodes()
+	{
+		return nodes;
+	}
+
+	/**
+	 * Feed a captured frame to the pipeline. The caller keeps its reference.
+	 * @param frame The frame.
+	 */
+	void submit(Frame frame)
+	{
+		if (!running) return;
+
+		for (Node node : roots) node.offer(frame);
+	}
+
+	/**
+	 * A stage in the pipeline with its input queue and thread.
+	 */
+	public class Node
+	{
+		private final VisionStage	stage;
+		private final FrameQueue	queue;
+		private final List<Node>	next = new CopyOnWriteArrayList<>();
+		private final AtomicLong	processed = new AtomicLong();
+		private volatile long		processingNanos;
+		private Thread				thread;
+
+		private Node(VisionStage stage, int queueCapacity)
+		{
+			this.stage = stage;
+
+			queue = new FrameQueue(queueCapacity);
+
+			synchronized (VisionPipeline.this)
+			{
+				nodes.add(this);
+
+				if (running) startThread();
+			}
+		}
+
+		/**
+		 * Add a stage fed with the frames this stage passes on.
+		 * @param stage The stage.
+		 * @param queueCapacity Frames that may wait for the stage before the
+		 * oldest is dropped.
+		 * @return The new stage's node.
+		 */
+		public Node then(VisionStage stage, int queueCapacity)
+		{
+			Node node = new Node(stage, queueCapacity);
+
+			next.add(node);
+
+			return node;
+		}
+
+		/**
+		 * Get the stage.
+		 * @return The stage.
+		 */
+		public VisionStage getStage()
+		{
+			return stage;
+		}
+
+		/**
+		 * Get the number of frames the stage has processed.
+		 * @return Processed frame count.
+		 */
+		public long getProcessed()
+		{
+			return processed.get();
+		}
+
+		/**
+		 * Get the number of frames dropped because the stage fell behind.
+		 * @return Dropped frame count.
+		 */
+		public long getDropped()
+		{
+			return queue.getDropped();
+		}
+
+		/**
+		 * Get the time the stage took to process the last frame.
+		 * @return Processing time in nanoseconds.
+		 */
+		public long getProcessingNanos()
+		{
+			return processingNanos;
+		}
+
+		// Queue a frame taking a reference for this stage.
+		private void offer(Frame frame)
+		{
+			if (frame.tryRetain()) queue.offer(frame);
+		}
+
+		private void startThread()
+		{
+			thread = new StageThread(this);
+			thread.start();
+		}
+
+		private void stopThread()
+		{
+			if (thread == null) return;
+
+			thread.interrupt();
+
+			try
+			{
+				thread.join(2000);
+			}
+			catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+
+			thread = null;
+
+			queue.clear();
+		}
+	}
+
+	// Thread that takes frames from a stage's queue, processes them and passes
+	// them on.
+	private class StageThread extends Thread
+	{
+		private final Node node;
+
+		StageThread(Node node)
+		{
+			this.node = node;
+
+			this.setName("Vision-" + node.stage.getName());
+			this.setDaemon(true);
+		}
+
+		public void run()
+		{
+			logger.fine("vision stage " + node.stage.getName() + " started");
+
+			try
+			{
+				node.stage.start();
+
+				while (!isInterrupted())
+				{
+					Frame frame = node.queue.poll(100);
+
+					if (frame == null) continue;
+
+					try
+					{
+						long start = System.nanoTime();
+
+						boolean pass = node.stage.process(frame);
+
+						node.processingNanos = System.nanoTime() - start;
+						node.processed.incrementAndGet();
+
+						if (pass) for (Node next : node.next) next.offer(frame);
+					}
+					catch (Exception e) { logger.warning("vision stage " + node.stage.getName() + " failed: " + e.getMessage()); }
+					finally { frame.release(); }
+				}
+			}
+			catch (Exception e) { logger.warning("vision stage " + node.stage.getName() + " failed: " + e.getMessage()); }
+			finally { node.stage.stop(); }
+
+			logger.fine("vision stage " + node.stage.getName() + " ended");
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package tellolib.camera;
+
+/**
+ * A step of a VisionPipeline: preprocessing, detection, annotation or a sink
+ * such as the live window or recording. Each stage runs on its own thread and
+ * is handed frames one at a time.
+ * <p>
+ * A frame may be processed by several stages at once, so a stage must only
+ * read the frame image. The exceptions are the stages whose job is to fill in
+ * the frame's gray image (preprocess) or display image (annotate): they write
+ * them before passing the frame on, and stages after them only read them.
+ */
+public interface VisionStage
+{
+	/**
+	 * Get the stage name, used to name its thread.
+	 * @return Stage name.
+	 */
+	String getName();
+
+	/**
+	 * Process a frame. The frame must not be kept or released, it is released
+	 * by the pipeline once all stages are done with it.
+	 * @param frame The frame.
+	 * @return True to pass the frame on to the stages after this one, false
+	 * to stop processing it.
+	 */
+	boolean process(Frame frame);
+
+	/**
+	 * Called on the stage thread before the first frame.
+	 */
+	default void start() {}
+
+	/**
+	 * Called on the stage thread after the last frame when the pipeline stops.
+	 * Release any resources here.
+	 */
+	default void stop() {}
+}
@@ -8,6 +8,8 @@ public abstract class AbstractTelloCommand implements TelloCommandInterface
 {
 
   protected String command, parameters;
+  
+  protected int timeout;
 
   public AbstractTelloCommand(String command) 
   {
@@ -38,4 +40,19 @@ public abstract class AbstractTelloCommand implements TelloCommandInterface
   {
     this.parameters = parameters;
   }
+
+  @Override
+  public int getTimeout()
+  {
+    return timeout;
+  }
+
+  /**
+   * Set the time to wait for the drone to respond to this command.
+   * @param timeout Timeout in milliseconds, 0 to use the communication default.
+   */
+  public void setTimeout(int timeout)
+  {
+    this.timeout = timeout;
+  }
 }
@@ -0,0 +1,177 @@
+package tellolib.command;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes commands as the ASCII bytes sent to the drone into a buffer reused
+ * for every command, so sending allocates nothing. The commands in
+ * TelloCommandValues are encoded once, numeric parameters are written as
+ * digits straight into the buffer:
+ * <pre>
+ * encoder.command(TelloCommandValues.RC).add(lr).add(fb).add(ud).add(yaw);
+ * communication.executeCommandNoWait(encoder.getBuffer(), encoder.getLength());
+ * </pre>
+ * An encoder is not thread safe, each sender keeps its own or guards it.
+ */
+public class CommandEncoder
+{
+  /**
+   * ASCII bytes of every command value, never modified after class load.
+   */
+  private static final Map<String, byte[]> ENCODED = new HashMap<>();
+
+  static
+  {
+    for (Field field : TelloCommandValues.class.getFields())
+    {
+      if (field.getType() != String.class || !Modifier.isStatic(field.getModifiers())) continue;
+
+      try
+      {
+        String value = (String) field.get(null);
+
+        ENCODED.put(value, value.getBytes(StandardCharsets.US_ASCII));
+      }
+      catch (IllegalAccessException e) { throw new IllegalStateException(e); }
+    }
+  }
+
+  private byte[] buffer;
+  private int length;
+
+  /**
+   * Create an encoder with room for any Tello command. The buffer grows if
+   * longer text is encoded.
+   */
+  public CommandEncoder()
+  {
+    buffer = new byte[64];
+  }
+
+  /**
+   * Start a new command, replacing the one in the buffer.
+   * @param command Command, one of TelloCommandValues or a complete command
+   * with its parameters.
+   * @return This encoder.
+   */
+  public CommandEncoder command(String command)
+  {
+    length = 0;
+
+    byte[] encoded = ENCODED.get(command);
+
+    if (encoded != null)
+    {
+      ensureCapacity(encoded.length);
+      System.arraycopy(encoded, 0, buffer, 0, encoded.length);
+      length = encoded.length;
+    }
+    else
+      append(command);
+
+    return this;
+  }
+
+  /**
+   * Add a numeric parameter, preceded by a space.
+   * @param value Parameter value.
+   * @return This encoder.
+   */
+  public CommandEncoder add(int value)
+  {
+    ensureCapacity(length + 12);
+
+    buffer[length++] = ' ';
+
+    long number = value;
+
+    if (number < 0)
+    {
+      buffer[length++] = '-';
+      number = -number;
+    }
+
+    int start = length;
+
+    do
+    {
+      buffer[length++] = (byte) ('0' + number % 10);
+      number /= 10;
+    } while (number > 0);
+
+    // Digits were written least significant first.
+
+    for (int i = start, j = length - 1; i < j; i++, j--)
+    {
+      byte digit = buffer[i];
+      buffer[i] = buffer[j];
+      buffer[j] = digit;
+    }
+
+    return this;
+  }
+
+  /**
+   * Add a text parameter, preceded by a space.
+   * @param parameter Parameter text.
+   * @return This encoder.
+   */
+  public CommandEncoder add(String parameter)
+  {
+    ensureCapacity(length + 1);
+
+    buffer[length++] = ' ';
+
+    append(parameter);
+
+    return this;
+  }
+
+  /**
+   * Get the buffer holding the encoded command. Valid until the next call
+   * to command().
+   * @return The buffer, the command is in the first getLength() bytes.
+   */
+  public byte[] getBuffer()
+  {
+    return buffer;
+  }
+
+  /**
+   * Get the length of the encoded command.
+   * @return Length in bytes.
+   */
+  public int getLength()
+  {
+    return length;
+  }
+
+  @Override
+  public String toString()
+  {
+    return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+  }
+
+  // Append text as ASCII, other characters as '?' like String.getBytes().
+  private void append(String text)
+  {
+    ensureCapacity(length + text.length());
+
+    for (int i = 0; i < text.length(); i++)
+    {
+      char c = text.charAt(i);
+
+      buffer[length++] = (byte) (c < 128 ? c : '?');
+    }
+  }
+
+  private void ensureCapacity(int capacity)
+  {
+    if (capacity > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+  }
+}
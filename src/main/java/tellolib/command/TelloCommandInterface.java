@@ -10,4 +10,11 @@ public interface TelloCommandInterface {
    * @return Composed command.
    */
   String composeCommand();
+
+  /**
+   * Get the time to wait for the drone to respond to this command.
+   *
+   * @return Timeout in milliseconds, 0 to use the communication default.
+   */
+  int getTimeout();
 }
\ No newline at end of file
@@ -0,0 +1,1027 @@
+package tellolib.communication;
+
+import tellolib.command.CommandEncoder;
+import tellolib.command.TelloCommandInterface;
+import tellolib.drone.TelloDrone;
+import tellolib.exception.TelloCommandException;
+import tellolib.exception.TelloConnectionException;
+import tellolib.flightlog.FlightRecorder;
+import tellolib.metrics.TelloMetrics;
+import tellolib.metrics.TelloMetricsInterface;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking alternative to TelloCommunication built on NIO datagram channels.
+ * A TelloReactor services both the command and status channels with a Selector
+ * and completes outstanding commands as their replies arrive, so a slow reply
+ * to one caller does not hold a lock other callers (such as flyRC) need. Each
+ * instance has a reactor of its own unless given one to share, so any number of
+ * drones can be serviced by one thread, with status parsed and keepalives sent
+ * on that thread too (see setStatusListener() and startKeepAlive()).
+ * <p>
+ * The Tello does not tag its replies, so replies are matched to commands in the
+ * order the commands were sent. Read queries (battery? and the like) are answered
+ * at once, so several may be in flight together, up to the pipeline depth. Other
+ * commands are answered when the drone finishes them and are sent alone: they
+ * wait for the queries in flight and queries wait for them, which keeps the
+ * replies in the order the commands were sent.
+ */
+public class TelloChannelCommunication implements TelloCommunicationInterface
+{
+  private final Logger logger = Logger.getLogger("Tello");
+
+  /**
+   * Drone address and the local ports we receive replies and status on.
+   */
+  private InetSocketAddress droneAddress;
+  private int localPort, localStatusPort, socketTimeout = 10000, queryTimeout = 2000;
+  private boolean useDroneNetwork;
+
+  private DatagramChannel commandChannel, statusChannel;
+  private final TelloReactor sharedReactor;
+  private TelloReactor reactor;
+  private volatile boolean connected;
+
+  /**
+   * Direct buffers reused for every send and receive. The send buffer is guarded
+   * by sendLock, the receive buffers are only touched by the reactor thread.
+   */
+  private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(1024);
+  private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(1024);
+  private final byte[] receiveBytes = new byte[1024];
+  private final Object sendLock = new Object();
+
+  /**
+   * Encoder for the commands sent, guarded by sendLock.
+   */
+  private final CommandEncoder encoder = new CommandEncoder();
+
+  /**
+   * Commands sent and waiting for a reply, oldest first. A command that timed
+   * out stays as a placeholder until its grace deadline, so a late reply to
+   * it is not taken as the reply to the next command.
+   */
+  private final ConcurrentLinkedQueue<PendingCommand> pendingCommands = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Commands in flight, guarded by flightLock. Locks rather than monitors so
+   * virtual threads waiting on them free their carrier thread.
+   */
+  private final ReentrantLock flightLock = new ReentrantLock();
+  private final Condition flightChanged = flightLock.newCondition();
+  private int queriesInFlight, commandsWaiting, pipelineDepth = 4;
+  private boolean commandInFlight;
+
+  /**
+   * Most recent status packet, guarded by statusLock.
+   */
+  private final ReentrantLock statusLock = new ReentrantLock();
+  private final Condition statusChanged = statusLock.newCondition();
+  private final byte[] statusData = new byte[1024];
+  private int statusLength;
+  private long statusSequence, statusSequenceRead;
+  private volatile TelloStatusListener statusListener;
+
+  /**
+   * Keepalive settings and the timer running it while connected, guarded by
+   * this.
+   */
+  private int keepAliveInterval;
+  private Consumer<String> keepAliveListener;
+  private TelloReactor.Timer keepAliveTimer;
+
+  /**
+   * Flight recorder or null if not recording.
+   */
+  private volatile FlightRecorder flightRecorder;
+
+  /**
+   * Command latency and status measurements.
+   */
+  private final TelloMetrics metrics = new TelloMetrics();
+
+  // Private holder class and getInstance() provide a global instance for the
+  // default drone address. Other addresses (a simulator on loopback for
+  // instance) can be reached by creating instances directly.
+
+  private static class SingletonHolder
+  {
+    public static final TelloChannelCommunication INSTANCE = new TelloChannelCommunication();
+  }
+
+  /**
+   * Get the global instance of TelloChannelCommunication connected to the
+   * default drone address.
+   * @return Global TelloChannelCommunication instance.
+   */
+  public static TelloChannelCommunication getInstance()
+  {
+    return SingletonHolder.INSTANCE;
+  }
+
+  // The global instance picks up the address and ports from TelloDrone at
+  // connect time so they can be changed with TelloDrone.setNetwork().
+  private TelloChannelCommunication()
+  {
+    useDroneNetwork = true;
+    sharedReactor = null;
+  }
+
+  /**
+   * Create a communication instance for a drone at a specific address.
+   * @param address Drone IP address or host name.
+   * @param udpPort Drone UDP port that accepts commands.
+   * @param localPort Local UDP port commands are sent from and replies received on.
+   * @param localStatusPort Local UDP port status packets are received on.
+   */
+  public TelloChannelCommunication(String address, int udpPort, int localPort, int localStatusPort)
+    throws TelloConnectionException
+  {
+    this(address, udpPort, localPort, localStatusPort, null);
+  }
+
+  /**
+   * Create a communication instance for a drone at a specific address whose
+   * channels are serviced by a reactor shared with other drones.
+   * @param address Drone IP address or host name.
+   * @param udpPort Drone UDP port that accepts commands.
+   * @param localPort Local UDP port commands are sent from and replies received on.
+   * @param localStatusPort Local UDP port status packets are received on.
+   * @param reactor Reactor to service the channels, null for one of its own.
+   */
+  public TelloChannelCommunication(String address, int udpPort, int localPort, int localStatusPort,
+                                   TelloReactor reactor) throws TelloConnectionException
+  {
+    sharedReactor = reactor;
+
+    try
+    {
+      droneAddress = new InetSocketAddress(InetAddress.getByName(address), udpPort);
+      this.localPort = localPort;
+      this.localStatusPort = localStatusPort;
+    } catch (Exception e) {
+      throw new TelloConnectionException(e);
+    }
+  }
+
+  @Override
+  public void connect() throws TelloConnectionException
+  {
+    try
+    {
+      logger.info("Connecting to drone...");
+
+      if (useDroneNetwork)
+      {
+        droneAddress = new InetSocketAddress(InetAddress.getByName(TelloDrone.getIpAddress()), TelloDrone.getUdpPort());
+        localPort = TelloDrone.getLocalUdpPort();
+        localStatusPort = TelloDrone.getUdpStatusPort();
+      }
+
+      reactor = sharedReactor != null ? sharedReactor : new TelloReactor("ChannelReader");
+
+      commandChannel = DatagramChannel.open();
+      commandChannel.bind(new InetSocketAddress(localPort));
+      commandChannel.connect(droneAddress);
+
+      if (!droneAddress.getAddress().isReachable(100)) throw new TelloConnectionException("Tello not responding");
+
+      statusChannel = DatagramChannel.open();
+      statusChannel.bind(new InetSocketAddress(localStatusPort));
+
+      connected = true;
+
+      reactor.register(commandChannel, this::readCommandReply);
+      reactor.register(statusChannel, this::readStatus);
+
+      synchronized (this)
+      {
+        if (keepAliveInterval > 0) keepAliveTimer = reactor.schedule(this::keepAlive, keepAliveInterval);
+      }
+
+      logger.info("Connected!");
+    } catch (Exception e) {
+      closeChannels();
+      throw new TelloConnectionException("Connect failed" , e);
+    }
+  }
+
+  @Override
+  public void executeCommand(final TelloCommandInterface telloCommand) throws TelloConnectionException,
+                          TelloCommandException
+  {
+    if (telloCommand == null) throw new TelloCommandException("Command was null");
+
+    final String command = telloCommand.composeCommand();
+
+    logger.fine("executing command: " + command);
+
+    String response = sendAndWait(command, false, timeout(telloCommand, socketTimeout));
+
+    logger.finer("response: " + response);
+
+    if (response.toLowerCase().startsWith("forced stop")) return;
+    if (response.toLowerCase().startsWith("unknown command")) throw new TelloCommandException("unknown command");
+    if (response.toLowerCase().startsWith("out of range")) throw new TelloCommandException("invalid parameter");
+    if (!response.toLowerCase().startsWith("ok")) throw new TelloCommandException("command failed: " + response);
+  }
+
+  @Override
+  public void executeCommandNoWait(final TelloCommandInterface telloCommand) throws TelloConnectionException,
+                          TelloCommandException
+  {
+    if (telloCommand == null) throw new TelloCommandException("Command was null");
+
+    final String command = telloCommand.composeCommand();
+
+    logger.finer("executing command: " + command);
+
+    synchronized (sendLock)
+    {
+      try
+      {
+        sendData(command);
+      } catch (TelloConnectionException e) {
+        recordCommand(command, null, FlightRecorder.FAILED, 0);
+        throw e;
+      }
+    }
+
+    recordCommand(command, null, FlightRecorder.NO_WAIT, 0);
+  }
+
+  @Override
+  public void executeCommandNoWait(byte[] command, int length) throws TelloConnectionException
+  {
+    synchronized (sendLock)
+    {
+      if (commandChannel == null || !commandChannel.isConnected()) throw new TelloConnectionException("No connection");
+
+      try
+      {
+        sendBuffer.clear();
+        sendBuffer.put(command, 0, length);
+        sendBuffer.flip();
+        commandChannel.write(sendBuffer);
+      } catch (Exception e) {
+        throw new TelloConnectionException(e);
+      }
+    }
+
+    FlightRecorder recorder = flightRecorder;
+
+    if (recorder != null) recorder.recordCommand(command, length, FlightRecorder.NO_WAIT);
+  }
+
+  @Override
+  public String executeReadCommand(final TelloCommandInterface telloCommand) throws TelloConnectionException,
+                          TelloCommandException
+  {
+    if (telloCommand == null) throw new TelloCommandException("Command was null");
+
+    final String command = telloCommand.composeCommand();
+
+    if (!command.equals("battery?")) logger.fine("executing command: " + command);
+
+    String response = sendAndWait(command, true, timeout(telloCommand, queryTimeout));
+
+    logger.finer("response: " + response);
+
+    return checkReadResponse(response);
+  }
+
+  @Override
+  public List<String> executeReadCommands(List<TelloCommandInterface> telloCommandList)
+                          throws TelloConnectionException, TelloCommandException
+  {
+    List<PendingCommand> sent = new ArrayList<>(telloCommandList.size());
+    List<String> responses = new ArrayList<>(telloCommandList.size());
+    RuntimeException failure = null;
+
+    // Send them all, waiting only when the pipeline is full, then collect the
+    // replies. Every command sent is waited for even after a failure so its
+    // pipeline slot is released.
+
+    for (TelloCommandInterface telloCommand : telloCommandList)
+    {
+      try
+      {
+        if (telloCommand == null) throw new TelloCommandException("Command was null");
+
+        final String command = telloCommand.composeCommand();
+
+        logger.fine("executing command: " + command);
+
+        sent.add(send(command, true, timeout(telloCommand, queryTimeout)));
+      } catch (RuntimeException e) {
+        failure = e;
+        break;
+      }
+    }
+
+    for (PendingCommand pending : sent)
+    {
+      try
+      {
+        String response = await(pending);
+
+        logger.finer("response: " + response);
+
+        responses.add(checkReadResponse(response));
+      } catch (RuntimeException e) {
+        if (failure == null) failure = e;
+      }
+    }
+
+    if (failure != null) throw failure;
+
+    return responses;
+  }
+
+  private static String checkReadResponse(String response) throws TelloCommandException
+  {
+    if (response.toLowerCase().startsWith("unknown command")) throw new TelloCommandException("unknown command");
+    // Original Tello (not edu) has misspelled error return.
+    if (response.toLowerCase().startsWith("unkown command")) throw new TelloCommandException("unknown command");
+    if (response.toLowerCase().startsWith("out of range")) throw new TelloCommandException("invalid parameter");
+    if (response.toLowerCase().startsWith("error")) throw new TelloCommandException("command failed: " + response);
+
+    return response;
+  }
+
+  @Override
+  public void executeCommands(List<TelloCommandInterface> telloCommandList)
+  {
+    for (TelloCommandInterface command : telloCommandList) executeCommand(command);
+  }
+
+  @Override
+  public Map<String, String> getTelloOnBoardData(List<String> valuesToBeObtained)
+  {
+    Map<String, String> dataMap = new HashMap<>();
+
+    return dataMap;
+  }
+
+  @Override
+  public String receiveStatusData() throws IOException
+  {
+    statusLock.lock();
+
+    try
+    {
+      waitForStatus();
+
+      return new String(statusData, 0, statusLength, StandardCharsets.UTF_8);
+    } finally {
+      statusLock.unlock();
+    }
+  }
+
+  @Override
+  public int receiveStatusData(byte[] buffer) throws IOException
+  {
+    statusLock.lock();
+
+    try
+    {
+      waitForStatus();
+
+      int length = Math.min(statusLength, buffer.length);
+      System.arraycopy(statusData, 0, buffer, 0, length);
+
+      return length;
+    } finally {
+      statusLock.unlock();
+    }
+  }
+
+  // Wait for a status packet newer than the last one returned. Caller must hold
+  // statusLock.
+  private void waitForStatus() throws IOException
+  {
+    try
+    {
+      while (statusSequence == statusSequenceRead)
+      {
+        if (!connected) throw new IOException("Not connected");
+
+        statusChanged.await();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Status receive interrupted", e);
+    }
+
+    statusSequenceRead = statusSequence;
+  }
+
+  @Override
+  public void disconnect()
+  {
+    closeChannels();
+
+    logger.info("Disconnected!");
+  }
+
+  /**
+   * Set the time to wait for a reply to a command.
+   * @param ms Timeout in milliseconds.
+   */
+  public void setTimeout(int ms)
+  {
+    socketTimeout = ms;
+  }
+
+  /**
+   * Get the time to wait for a reply to a command.
+   * @return Timeout in milliseconds.
+   */
+  public int getTimeout()
+  {
+    return socketTimeout;
+  }
+
+  /**
+   * Set the time to wait for a reply to read commands that do not set their
+   * own timeout.
+   * @param ms Timeout in milliseconds.
+   */
+  public void setQueryTimeout(int ms)
+  {
+    queryTimeout = ms;
+  }
+
+  /**
+   * Get the time to wait for a reply to read commands.
+   * @return Timeout in milliseconds.
+   */
+  public int getQueryTimeout()
+  {
+    return queryTimeout;
+  }
+
+  /**
+   * Set the number of read queries that may be waiting for their replies at
+   * the same time. 1 sends every command alone.
+   * @param depth Pipeline depth.
+   */
+  public void setPipelineDepth(int depth)
+  {
+    if (depth < 1) throw new IllegalArgumentException("pipeline depth must be at least 1");
+
+    flightLock.lock();
+
+    try
+    {
+      pipelineDepth = depth;
+      flightChanged.signalAll();
+    } finally {
+      flightLock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of read queries that may be in flight at the same time.
+   * @return Pipeline depth.
+   */
+  public int getPipelineDepth()
+  {
+    return pipelineDepth;
+  }
+
+  @Override
+  public void setFlightRecorder(FlightRecorder recorder)
+  {
+    flightRecorder = recorder;
+  }
+
+  @Override
+  public TelloMetricsInterface getMetrics()
+  {
+    return metrics;
+  }
+
+  @Override
+  public boolean setStatusListener(TelloStatusListener listener)
+  {
+    statusListener = listener;
+
+    return true;
+  }
+
+  @Override
+  public synchronized boolean startKeepAlive(int intervalMillis, Consumer<String> listener)
+  {
+    if (intervalMillis <= 0) throw new IllegalArgumentException("keepalive interval must be positive");
+
+    if (keepAliveTimer != null) keepAliveTimer.cancel();
+
+    keepAliveInterval = intervalMillis;
+    keepAliveListener = listener;
+    keepAliveTimer = connected ? reactor.schedule(this::keepAlive, intervalMillis) : null;
+
+    return true;
+  }
+
+  @Override
+  public synchronized void stopKeepAlive()
+  {
+    if (keepAliveTimer != null) keepAliveTimer.cancel();
+
+    keepAliveInterval = 0;
+    keepAliveListener = null;
+    keepAliveTimer = null;
+  }
+
+  /**
+   * Get the reactor servicing the channels.
+   * @return The reactor, null if not connected.
+   */
+  public TelloReactor getReactor()
+  {
+    return reactor;
+  }
+
+  // Send the command and wait for its reply.
+  private String sendAndWait(String command, boolean query, int timeout) throws TelloConnectionException
+  {
+    return await(send(command, query, timeout));
+  }
+
+  // Wait for room in the pipeline, then queue the command as pending and send
+  // it. Queueing and sending happen under sendLock so the pending queue order
+  // always matches the order on the wire.
+  private PendingCommand send(String command, boolean query, int timeout) throws TelloConnectionException
+  {
+    PendingCommand pending = new PendingCommand(command, query);
+
+    acquire(pending);
+
+    pending.start = System.nanoTime();
+    pending.deadline = pending.start + timeout * 1000000L;
+
+    synchronized (sendLock)
+    {
+      pendingCommands.add(pending);
+
+      try
+      {
+        sendData(command);
+      } catch (TelloConnectionException e) {
+        pendingCommands.remove(pending);
+
+        if (pending.state.compareAndSet(PendingCommand.WAITING, PendingCommand.ABANDONED)) release(pending);
+
+        recordCommand(command, null, FlightRecorder.FAILED, 0);
+        throw e;
+      }
+    }
+
+    return pending;
+  }
+
+  // Wait until the command's own deadline for its reply, recording the outcome.
+  private String await(PendingCommand pending) throws TelloConnectionException
+  {
+    try
+    {
+      long remaining = pending.deadline - System.nanoTime();
+
+      if (!pending.latch.await(remaining, TimeUnit.NANOSECONDS))
+      {
+        // If the reader matched a reply meanwhile it is being completed,
+        // otherwise it timed out.
+
+        if (abandon(pending))
+          throw new TelloConnectionException("Timeout waiting for response to " + pending.command);
+
+        pending.latch.await();
+      }
+    } catch (InterruptedException e) {
+      abandon(pending);
+      Thread.currentThread().interrupt();
+      throw new TelloConnectionException("Interrupted waiting for response to " + pending.command, e);
+    }
+
+    if (pending.response == null)
+    {
+      recordCommand(pending.command, null, FlightRecorder.FAILED, System.nanoTime() - pending.start);
+      throw new TelloConnectionException("No connection");
+    }
+
+    recordCommand(pending.command, pending.response, FlightRecorder.RESPONSE, pending.replied - pending.start);
+
+    return pending.response;
+  }
+
+  // Give up on a command's reply, leaving it queued as a placeholder until
+  // its grace deadline and releasing its place in flight. Returns false if
+  // a reply was matched to it first.
+  private boolean abandon(PendingCommand pending)
+  {
+    long now = System.nanoTime();
+
+    // Set first, the reader may see the placeholder as soon as it is abandoned.
+    pending.graceDeadline = now + (pending.deadline - pending.start);
+
+    if (!pending.state.compareAndSet(PendingCommand.WAITING, PendingCommand.ABANDONED)) return false;
+
+    release(pending);
+    metrics.commandTimedOut(pending.command);
+    recordCommand(pending.command, null, FlightRecorder.FAILED, now - pending.start);
+
+    // Drop placeholders past their grace deadline, so they do not pile up
+    // while no reply comes at all.
+
+    for (PendingCommand placeholder : pendingCommands)
+    {
+      if (placeholder.state.get() == PendingCommand.ABANDONED && now - placeholder.graceDeadline >= 0)
+        pendingCommands.remove(placeholder);
+    }
+
+    return true;
+  }
+
+  // Wait until the command may be sent: queries while no other command is in
+  // flight or waiting and the pipeline has room, other commands when nothing
+  // is in flight.
+  private void acquire(PendingCommand pending) throws TelloConnectionException
+  {
+    flightLock.lock();
+
+    try
+    {
+      try
+      {
+        if (pending.query)
+        {
+          while (commandInFlight || commandsWaiting > 0 || queriesInFlight >= pipelineDepth) flightChanged.await();
+
+          queriesInFlight++;
+        }
+        else
+        {
+          commandsWaiting++;
+
+          try
+          {
+            while (commandInFlight || queriesInFlight > 0) flightChanged.await();
+          } finally {
+            commandsWaiting--;
+          }
+
+          commandInFlight = true;
+        }
+      } catch (InterruptedException e) {
+        flightChanged.signalAll();
+        Thread.currentThread().interrupt();
+        throw new TelloConnectionException("Interrupted waiting to send " + pending.command, e);
+      }
+    } finally {
+      flightLock.unlock();
+    }
+  }
+
+  // Take a place in flight for a query if one is free without waiting.
+  private boolean tryAcquire(PendingCommand pending)
+  {
+    flightLock.lock();
+
+    try
+    {
+      if (commandInFlight || commandsWaiting > 0 || queriesInFlight >= pipelineDepth) return false;
+
+      queriesInFlight++;
+
+      return true;
+    } finally {
+      flightLock.unlock();
+    }
+  }
+
+  // Release the command's place in flight. Called exactly once per command
+  // sent, by whoever takes it off the pending queue.
+  private void release(PendingCommand pending)
+  {
+    flightLock.lock();
+
+    try
+    {
+      if (pending.query)
+        queriesInFlight--;
+      else
+        commandInFlight = false;
+
+      flightChanged.signalAll();
+    } finally {
+      flightLock.unlock();
+    }
+  }
+
+  private static int timeout(TelloCommandInterface command, int defaultTimeout)
+  {
+    return command.getTimeout() > 0 ? command.getTimeout() : defaultTimeout;
+  }
+
+  // Caller must hold sendLock.
+  private void sendData(String data) throws TelloConnectionException
+  {
+    if (commandChannel == null || !commandChannel.isConnected()) throw new TelloConnectionException("No connection");
+
+    try
+    {
+      encoder.command(data);
+
+      sendBuffer.clear();
+      sendBuffer.put(encoder.getBuffer(), 0, encoder.getLength());
+      sendBuffer.flip();
+      commandChannel.write(sendBuffer);
+    } catch (Exception e) {
+      throw new TelloConnectionException(e);
+    }
+  }
+
+  private void closeChannels()
+  {
+    connected = false;
+
+    synchronized (this)
+    {
+      if (keepAliveTimer != null) keepAliveTimer.cancel();
+
+      keepAliveTimer = null;
+    }
+
+    try
+    {
+      if (statusChannel != null) statusChannel.close();
+      if (commandChannel != null) commandChannel.close();
+    } catch (IOException e) {
+      logger.warning("channel close failed: " + e.getMessage());
+    }
+
+    // Closing cancels the channels' registrations. A reactor of our own goes
+    // with them, a shared one is told to drop them so the ports can be bound
+    // again.
+
+    if (reactor != null)
+    {
+      if (reactor == sharedReactor)
+      {
+        if (statusChannel != null) reactor.unregister(statusChannel);
+        if (commandChannel != null) reactor.unregister(commandChannel);
+      } else
+        reactor.close();
+
+      reactor = null;
+    }
+
+    statusLock.lock();
+
+    try
+    {
+      statusChanged.signalAll();
+    } finally {
+      statusLock.unlock();
+    }
+
+    // Release anyone still waiting on a reply.
+    PendingCommand pending;
+
+    while ((pending = pendingCommands.poll()) != null)
+    {
+      if (pending.state.compareAndSet(PendingCommand.WAITING, PendingCommand.ABANDONED)) release(pending);
+
+      pending.latch.countDown();
+    }
+  }
+
+  // Reactor dispatch for a readable command channel.
+  private void readCommandReply() throws IOException
+  {
+    receiveBuffer.clear();
+
+    if (commandChannel.read(receiveBuffer) <= 0) return;
+
+    receiveBuffer.flip();
+    int length = receiveBuffer.remaining();
+    receiveBuffer.get(receiveBytes, 0, length);
+
+    String  response = new String(receiveBytes, 0, length, StandardCharsets.UTF_8);
+    long    now = System.nanoTime();
+
+    // Match the reply to the oldest command. A command that timed out takes
+    // its late reply, unless past its grace deadline or the reply does not
+    // fit it, then it is dropped and the next command tried. A query timed
+    // out and sent again is dropped too: either reply does for the query
+    // waiting, and a lost reply does not time out the next query as well. A
+    // reply that does not fit a command still waiting is discarded.
+
+    PendingCommand pending;
+
+    while (true)
+    {
+      pending = pendingCommands.peek();
+
+      if (pending == null)
+      {
+        logger.finer("unsolicited response discarded: " + response);
+        return;
+      }
+
+      boolean matches = TelloReplies.matches(pending.command, pending.query, response);
+
+      if (pending.state.get() == PendingCommand.ABANDONED)
+      {
+        pendingCommands.remove(pending);
+
+        PendingCommand next = pendingCommands.peek();
+
+        boolean repeated = pending.query && next != null && next.state.get() == PendingCommand.WAITING
+                           && next.command.equals(pending.command);
+
+        if (matches && now - pending.graceDeadline < 0 && !repeated)
+        {
+          logger.finer("late response to " + pending.command + " discarded: " + response);
+          return;
+        }
+
+        continue;
+      }
+
+      if (!matches)
+      {
+        logger.fine("response " + response + " does not fit " + pending.command + ", discarded");
+        return;
+      }
+
+      pendingCommands.remove(pending);
+
+      // Timed out meanwhile, the reply is late.
+      if (!pending.state.compareAndSet(PendingCommand.WAITING, PendingCommand.ANSWERED)) return;
+
+      break;
+    }
+
+    release(pending);
+
+    pending.replied = now;
+    pending.response = response;
+    pending.latch.countDown();
+
+    // Nobody waits for a keepalive query, its reply is handled here.
+
+    if (pending.listener != null)
+    {
+      recordCommand(pending.command, pending.response, FlightRecorder.RESPONSE, pending.replied - pending.start);
+
+      // A bad reply must not fail the reactor, other drones may depend on it.
+
+      try
+      {
+        pending.listener.accept(pending.response);
+      }
+      catch (RuntimeException e) { logger.warning("keepalive reply not handled: " + pending.response); }
+    }
+  }
+
+  // Reactor dispatch for a readable status channel.
+  private void readStatus() throws IOException
+  {
+    receiveBuffer.clear();
+
+    if (statusChannel.receive(receiveBuffer) == null) return;
+
+    receiveBuffer.flip();
+
+    metrics.statusReceived(System.nanoTime());
+
+    statusLock.lock();
+
+    try
+    {
+      statusLength = receiveBuffer.remaining();
+      receiveBuffer.get(statusData, 0, statusLength);
+      statusSequence++;
+      statusChanged.signalAll();
+
+      FlightRecorder recorder = flightRecorder;
+
+      if (recorder != null) recorder.recordStatus(statusData, 0, statusLength);
+
+      TelloStatusListener listener = statusListener;
+
+      if (listener != null) listener.statusReceived(statusData, 0, statusLength);
+    } finally {
+      statusLock.unlock();
+    }
+  }
+
+  // Reactor timer task that sends a battery query nobody waits for. Skipped
+  // if a command is in flight, which keeps the drone awake anyway.
+  private void keepAlive()
+  {
+    expireKeepAlives();
+
+    Consumer<String> listener = keepAliveListener;
+
+    PendingCommand pending = new PendingCommand("battery?", true);
+
+    pending.listener = listener != null ? listener : response -> {};
+
+    if (!tryAcquire(pending)) return;
+
+    pending.start = System.nanoTime();
+    pending.deadline = pending.start + queryTimeout * 1000000L;
+
+    synchronized (sendLock)
+    {
+      pendingCommands.add(pending);
+
+      try
+      {
+        sendData(pending.command);
+      } catch (TelloConnectionException e) {
+        pendingCommands.remove(pending);
+
+        if (pending.state.compareAndSet(PendingCommand.WAITING, PendingCommand.ABANDONED)) release(pending);
+
+        recordCommand(pending.command, null, FlightRecorder.FAILED, 0);
+        return;
+      }
+    }
+
+    // Expire the query at its own deadline, not the next keepalive, so a lost
+    // reply does not hold up the commands behind it. The millisecond added
+    // covers the timer's coarser clock.
+
+    TelloReactor currentReactor = reactor;
+
+    if (currentReactor != null) currentReactor.scheduleOnce(this::expireKeepAlives, queryTimeout + 1);
+  }
+
+  // Time out keepalive queries whose reply did not come, as await() does for
+  // the commands it waits for. Runs on the reactor thread.
+  private void expireKeepAlives()
+  {
+    long now = System.nanoTime();
+
+    for (PendingCommand pending : pendingCommands)
+    {
+      if (pending.listener == null || now - pending.deadline < 0) continue;
+
+      abandon(pending);
+    }
+  }
+
+  private void recordCommand(String command, String response, int outcome, long latency)
+  {
+    if (outcome == FlightRecorder.RESPONSE) metrics.commandCompleted(command, response, latency);
+
+    FlightRecorder recorder = flightRecorder;
+
+    if (recorder != null) recorder.recordCommand(command, response, outcome, latency);
+  }
+
+  // A command waiting for its reply. Its state goes from WAITING to ANSWERED
+  // when a reply is matched to it or to ABANDONED when it times out,
+  // whichever comes first.
+  private static class PendingCommand
+  {
+    static final int      WAITING = 0, ANSWERED = 1, ABANDONED = 2;
+
+    final String          command;
+    final boolean         query;
+    final CountDownLatch  latch = new CountDownLatch(1);
+    final AtomicInteger   state = new AtomicInteger(WAITING);
+    long                  start, deadline, replied;
+    volatile long         graceDeadline;
+    volatile String       response;
+    Consumer<String>      listener;
+
+    PendingCommand(String command, boolean query)
+    {
+      this.command = command;
+      this.query = query;
+    }
+  }
+}
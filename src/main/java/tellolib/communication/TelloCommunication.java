@@ -1,19 +1,26 @@
 package tellolib.communication;
 
+import tellolib.command.CommandEncoder;
 import tellolib.command.TelloCommandInterface;
 import tellolib.drone.TelloDrone;
 import tellolib.exception.TelloCommandException;
 import tellolib.exception.TelloConnectionException;
+import tellolib.flightlog.FlightRecorder;
+import tellolib.metrics.TelloMetrics;
+import tellolib.metrics.TelloMetricsInterface;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
@@ -27,6 +34,21 @@ public class TelloCommunication implements TelloCommunicationInterface
    * Datagram sockets for UDP communication with the Tello drone.
    */
   private DatagramSocket ds, dsStatus;
+  
+  /**
+   * Packet reused to receive status data into caller supplied buffers.
+   */
+  private DatagramPacket statusPacket;
+
+  /**
+   * Packet reused to send encoded commands, guarded by itself.
+   */
+  private final DatagramPacket rawPacket = new DatagramPacket(new byte[0], 0);
+  
+  /**
+   * Encoder reused for the commands sent by the synchronized methods.
+   */
+  private final CommandEncoder encoder = new CommandEncoder();
 
   /**
    * Drone IP address.
@@ -36,21 +58,34 @@ public class TelloCommunication implements TelloCommunicationInterface
   /**
    * Drone UDP ports and timeout.
    */
-  private Integer udpPort, udpStatusPort, socketTimeout = 10000;
+  private Integer udpPort, localUdpPort, udpStatusPort, socketTimeout = 10000;
+  
+  /**
+   * Timeout for read commands that do not set their own.
+   */
+  private int queryTimeout = 2000;
+  
+  /**
+   * Set when a command timed out, so its reply may still come. Guarded by
+   * this.
+   */
+  private boolean overdue;
+  
+  /**
+   * Flight recorder or null if not recording.
+   */
+  private volatile FlightRecorder flightRecorder;
+
+  /**
+   * Command latency and status measurements.
+   */
+  private final TelloMetrics metrics = new TelloMetrics();
 	
   // Private constructor, holder class and getInstance() implement this
   // class as a singleton.
 	
-  private TelloCommunication() throws TelloConnectionException 
+  private TelloCommunication() 
   {
-    try 
-    {
-      ipAddress = InetAddress.getByName(TelloDrone.IP_ADDRESS);
-      udpPort = TelloDrone.UDP_PORT;
-      udpStatusPort = TelloDrone.UDP_STATUS_PORT;
-    } catch (Exception e) {
-      throw new TelloConnectionException(e);
-    }
   }
   
   private static class SingletonHolder 
@@ -74,7 +109,15 @@ public class TelloCommunication implements TelloCommunicationInterface
     {
       logger.info("Connecting to drone...");
       
-      ds = new DatagramSocket(udpPort);
+      // Address and ports are picked up at connect time so they can be 
+      // changed with TelloDrone.setNetwork().
+      
+      ipAddress = InetAddress.getByName(TelloDrone.getIpAddress());
+      udpPort = TelloDrone.getUdpPort();
+      localUdpPort = TelloDrone.getLocalUdpPort();
+      udpStatusPort = TelloDrone.getUdpStatusPort();
+      
+      ds = new DatagramSocket(localUdpPort);
       ds.setSoTimeout(socketTimeout);	// timeout on socket operations.
       ds.connect(ipAddress, udpPort);
       
@@ -105,14 +148,20 @@ public class TelloCommunication implements TelloCommunicationInterface
     
     logger.fine("executing command: " + command);
 
+    long start = System.nanoTime();
+    
     try 
     {
       sendData(command);
-      response = receiveData();
+      response = receiveReply(command, false, timeout(telloCommand, socketTimeout));
     } catch (Exception e) {
+      if (e instanceof SocketTimeoutException) metrics.commandTimedOut(command);
+      recordCommand(command, null, FlightRecorder.FAILED, System.nanoTime() - start);
       throw new TelloConnectionException(e);
     } 
 
+    recordCommand(command, response, FlightRecorder.RESPONSE, System.nanoTime() - start);
+    
     logger.finer("response: " + response);
 
     if (response.toLowerCase().startsWith("forced stop")) return;
@@ -137,8 +186,37 @@ public class TelloCommunication implements TelloCommunicationInterface
     {
       sendData(command);
     } catch (Exception e) {
+      recordCommand(command, null, FlightRecorder.FAILED, 0);
       throw new TelloConnectionException(e);
     } 
+    
+    recordCommand(command, null, FlightRecorder.NO_WAIT, 0);
+  }
+
+  @Override
+  public void executeCommandNoWait(byte[] command, int length) throws TelloConnectionException
+  {
+    if (!ds.isConnected()) throw new TelloConnectionException("No connection");
+
+    // Not synchronized on this, so it is not held up by a command waiting
+    // for its response. DatagramSocket send is thread safe.
+
+    synchronized (rawPacket)
+    {
+      try 
+      {
+        rawPacket.setData(command, 0, length);
+        rawPacket.setAddress(ipAddress);
+        rawPacket.setPort(udpPort);
+        ds.send(rawPacket);
+      } catch (Exception e) {
+        throw new TelloConnectionException(e);
+      } 
+    }
+    
+    FlightRecorder recorder = flightRecorder;
+    
+    if (recorder != null) recorder.recordCommand(command, length, FlightRecorder.NO_WAIT);
   }
 
   @Override
@@ -162,14 +240,20 @@ public class TelloCommunication implements TelloCommunicationInterface
     
     if (command != "battery?") logger.fine("executing command: " + command);
 
+    long start = System.nanoTime();
+    
     try 
     {
       sendData(command);
-      response = receiveData();
+      response = receiveReply(command, true, timeout(telloCommand, queryTimeout));
     } catch (Exception e) {
+        if (e instanceof SocketTimeoutException) metrics.commandTimedOut(command);
+        recordCommand(command, null, FlightRecorder.FAILED, System.nanoTime() - start);
         throw new TelloConnectionException(e);
     }
 
+    recordCommand(command, response, FlightRecorder.RESPONSE, System.nanoTime() - start);
+
     logger.finer("response: " + response);
 
     if (response.toLowerCase().startsWith("unknown command")) throw new TelloCommandException("unknown command");
@@ -181,6 +265,19 @@ public class TelloCommunication implements TelloCommunicationInterface
     return response;
   }
 
+  @Override
+  public synchronized List<String> executeReadCommands(List<TelloCommandInterface> telloCommandList) 
+  {
+    // Replies are read with a blocking socket so the commands are run one
+    // at a time. TelloChannelCommunication pipelines them.
+    
+    List<String> responses = new ArrayList<>(telloCommandList.size());
+    
+    for (TelloCommandInterface command : telloCommandList) responses.add(executeReadCommand(command));
+    
+    return responses;
+  }
+
   @Override
   public void executeCommands(List<TelloCommandInterface> telloCommandList) 
   {
@@ -197,15 +294,69 @@ public class TelloCommunication implements TelloCommunicationInterface
 	logger.info("Disconnected!");
   }
   
+  // Caller must hold this.
   private void sendData(String data) throws IOException 
   {
-    byte[] sendData = data.getBytes();
-    final DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, ipAddress, udpPort);
-    ds.send(sendPacket);
+    if (overdue) drainReplies();
+
+    encoder.command(data);
+    
+    synchronized (rawPacket)
+    {
+      rawPacket.setData(encoder.getBuffer(), 0, encoder.getLength());
+      rawPacket.setAddress(ipAddress);
+      rawPacket.setPort(udpPort);
+      ds.send(rawPacket);
+    }
   }
 
-  private String receiveData() throws IOException 
+  // Receive the reply to a command, discarding replies that do not fit it,
+  // such as a late reply to a command that timed out. Caller must hold this.
+  private String receiveReply(String command, boolean query, int timeout) throws IOException 
   {
+    long deadline = System.nanoTime() + timeout * 1000000L;
+
+    try
+    {
+      while (true)
+      {
+        String response = receiveData(timeout);
+
+        if (TelloReplies.matches(command, query, response)) return response;
+
+        logger.fine("response " + response + " does not fit " + command + ", discarded");
+
+        timeout = (int) ((deadline - System.nanoTime()) / 1000000L);
+
+        if (timeout <= 0) throw new SocketTimeoutException("Receive timed out");
+      }
+    } catch (SocketTimeoutException e) {
+      overdue = true;
+      throw e;
+    }
+  }
+
+  // Discard replies already received to commands that timed out, so they
+  // are not taken as the reply to the next command. Caller must hold this.
+  private void drainReplies() throws IOException 
+  {
+    overdue = false;
+
+    try
+    {
+      while (true)
+      {
+        logger.finer("late response discarded: " + receiveData(1));
+      }
+    } catch (SocketTimeoutException e) {
+      // Nothing more queued.
+    }
+  }
+
+  private String receiveData(int timeout) throws IOException 
+  {
+    ds.setSoTimeout(timeout);
+    
     byte[] receiveData = new byte[1024];
     final DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
     ds.receive(receivePacket);
@@ -217,9 +368,79 @@ public class TelloCommunication implements TelloCommunicationInterface
     byte[] receiveData = new byte[1024];
     final DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
     dsStatus.receive(receivePacket);
+    metrics.statusReceived(System.nanoTime());
+    recordStatus(receiveData, receivePacket.getLength());
     return trimExecutionResponse(receiveData, receivePacket);
   }
 
+  @Override
+  public int receiveStatusData(byte[] buffer) throws IOException 
+  {
+    if (statusPacket == null)
+      statusPacket = new DatagramPacket(buffer, buffer.length);
+    else
+      statusPacket.setData(buffer, 0, buffer.length);
+    
+    dsStatus.receive(statusPacket);
+    metrics.statusReceived(System.nanoTime());
+    recordStatus(buffer, statusPacket.getLength());
+    return statusPacket.getLength();
+  }
+  
+  @Override
+  public void setFlightRecorder(FlightRecorder recorder)
+  {
+    flightRecorder = recorder;
+  }
+  
+  @Override
+  public TelloMetricsInterface getMetrics()
+  {
+    return metrics;
+  }
+
+  // Status and replies are received by blocking on sockets, so status
+  // monitoring and keepalive are left to threads calling the receive and
+  // read methods.
+
+  @Override
+  public boolean setStatusListener(TelloStatusListener listener)
+  {
+    return false;
+  }
+
+  @Override
+  public boolean startKeepAlive(int intervalMillis, Consumer<String> listener)
+  {
+    return false;
+  }
+
+  @Override
+  public void stopKeepAlive()
+  {
+  }
+  
+  private void recordCommand(String command, String response, int outcome, long latency)
+  {
+    if (outcome == FlightRecorder.RESPONSE) metrics.commandCompleted(command, response, latency);
+    
+    FlightRecorder recorder = flightRecorder;
+    
+    if (recorder != null) recorder.recordCommand(command, response, outcome, latency);
+  }
+  
+  private void recordStatus(byte[] data, int length)
+  {
+    FlightRecorder recorder = flightRecorder;
+    
+    if (recorder != null) recorder.recordStatus(data, 0, length);
+  }
+
+  private static int timeout(TelloCommandInterface command, int defaultTimeout)
+  {
+    return command.getTimeout() > 0 ? command.getTimeout() : defaultTimeout;
+  }
+
   private String trimExecutionResponse(byte[] response, DatagramPacket receivePacket) 
   {
     response = Arrays.copyOf(response, receivePacket.getLength());
@@ -235,4 +456,19 @@ public class TelloCommunication implements TelloCommunicationInterface
   {
 	  return socketTimeout;
   }
+  
+  /**
+   * Set the time to wait for a reply to read commands that do not set their
+   * own timeout.
+   * @param ms Timeout in milliseconds.
+   */
+  public void setQueryTimeout(int ms) 
+  {
+	  queryTimeout = ms;
+  }
+  
+  public int getQueryTimeout() 
+  {
+	  return queryTimeout;
+  }
 }
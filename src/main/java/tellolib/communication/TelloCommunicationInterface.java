@@ -3,8 +3,11 @@ package tellolib.communication;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import tellolib.command.TelloCommandInterface;
+import tellolib.flightlog.FlightRecorder;
+import tellolib.metrics.TelloMetricsInterface;
 
 /**
  * Low level support interface for sending and receiving data from DJI Tello drone.
@@ -33,6 +36,15 @@ public interface TelloCommunicationInterface
    */
   String executeReadCommand(final TelloCommandInterface telloCommand);
 
+  /**
+   * Executes a list of commands on Tello drone that return data. Where the
+   * implementation supports it the commands are sent without waiting for
+   * each response, so the list completes in about one round trip.
+   * @param telloCommandList The list of commands to be executed.
+   * @return Data returned from Tello for each command, in list order.
+   */
+  List<String> executeReadCommands(final List<TelloCommandInterface> telloCommandList);
+
   /**
    * Executes a list of commands on Tello drone.
    * @param telloCommandList The list of commands to be executed.
@@ -59,11 +71,69 @@ public interface TelloCommunicationInterface
    * @throws IOException
    */
   public String receiveStatusData() throws IOException;
+  
+  /**
+   * Receives the next status packet from the drone into the supplied
+   * buffer without creating a String. Used by status monitoring.
+   * @param buffer Buffer to receive the packet bytes.
+   * @return Number of bytes received.
+   * @throws IOException
+   */
+  public int receiveStatusData(byte[] buffer) throws IOException;
 
   /**
    * Executes command on Tello drone. Does not Wait for status response.
    * @param telloCommand The command to be executed.
    */
   void executeCommandNoWait( TelloCommandInterface telloCommand ); 
+
+  /**
+   * Sends an already encoded command to the Tello drone. Does not wait for
+   * a response and does not wait for other commands in progress. Used for
+   * rc commands, encoded with CommandEncoder.
+   * @param command Buffer holding the ASCII command bytes.
+   * @param length Number of bytes to send.
+   */
+  void executeCommandNoWait( byte[] command, int length ); 
+  
+  /**
+   * Set a flight recorder to receive every status packet received and
+   * every command sent with its response and latency.
+   * @param recorder The recorder or null to stop recording.
+   */
+  void setFlightRecorder( FlightRecorder recorder );
+
+  /**
+   * Get the measurements of the commands executed and status received.
+   * @return The metrics.
+   */
+  TelloMetricsInterface getMetrics();
+
+  /**
+   * Have each status packet passed to a listener on the thread receiving it,
+   * so status monitoring needs no thread of its own. Packets may still be
+   * read with receiveStatusData() as well.
+   * @param listener The listener or null to stop.
+   * @return True if supported, false if status can only be read with
+   * receiveStatusData().
+   */
+  boolean setStatusListener( TelloStatusListener listener );
+
+  /**
+   * Keep the connection to the drone alive by sending it a battery query
+   * periodically, without a thread of its own. The query is skipped while 
+   * other commands are in flight.
+   * @param intervalMillis Time between queries in milliseconds.
+   * @param listener Called with each reply on the thread receiving it, may
+   * be null.
+   * @return True if supported, false if keepalive must be done by calling a
+   * read command periodically.
+   */
+  boolean startKeepAlive( int intervalMillis, Consumer<String> listener );
+
+  /**
+   * Stop the keepalive started with startKeepAlive().
+   */
+  void stopKeepAlive();
   
 }
\ No newline at end of file
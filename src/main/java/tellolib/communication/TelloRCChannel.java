@@ -0,0 +1,156 @@
+package tellolib.communication;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import tellolib.command.CommandEncoder;
+import tellolib.command.TelloCommandValues;
+
+/**
+ * Sends remote control (rc) commands to the drone at a fixed rate from a single
+ * scheduler thread. Callers only update the latest stick values, intermediate
+ * updates between two sends are coalesced (last writer wins). A send is skipped
+ * when the values have not changed since the last send and the keep alive
+ * interval has not expired. Commands are encoded into a reused byte buffer, so
+ * nothing is allocated per send.
+ */
+public class TelloRCChannel
+{
+  private final Logger logger = Logger.getLogger("Tello");
+
+  private final TelloCommunicationInterface communication;
+
+  /**
+   * Latest values, the four channels packed one per byte so they are always
+   * updated and read together.
+   */
+  private volatile int values;
+
+  // Only used by the scheduler thread.
+  private final CommandEncoder encoder = new CommandEncoder();
+  private int sentValues;
+  private long lastSend;
+  private boolean sent;
+
+  private long keepAliveNanos = 500 * 1000000L;
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * Create an rc channel.
+   * @param communication Communication used to send the rc commands.
+   */
+  public TelloRCChannel(TelloCommunicationInterface communication)
+  {
+    this.communication = communication;
+  }
+
+  /**
+   * Start sending rc commands.
+   * @param rate Sends per second, typically 20 to 50.
+   */
+  public synchronized void start(int rate)
+  {
+    if (scheduler != null) return;
+
+    logger.fine("starting rc channel at " + rate + " Hz");
+
+    sent = false;
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+    {
+      Thread thread = new Thread(runnable, "RCChannel");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    long period = 1000000000L / rate;
+
+    scheduler.scheduleAtFixedRate(this::send, 0, period, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Stop sending rc commands. Sends a final all zero command so the drone
+   * does not keep moving.
+   */
+  public synchronized void stop()
+  {
+    if (scheduler == null) return;
+
+    logger.fine("stopping rc channel");
+
+    scheduler.shutdownNow();
+
+    try
+    {
+      scheduler.awaitTermination(1, TimeUnit.SECONDS);
+
+      values = 0;
+      sent = false;
+      send();
+    }
+    catch (Exception e) { logger.warning("rc channel stop failed: " + e.getMessage()); }
+
+    scheduler = null;
+  }
+
+  /**
+   * Tells if the channel is sending.
+   * @return True if started.
+   */
+  public synchronized boolean isRunning()
+  {
+    return scheduler != null;
+  }
+
+  /**
+   * Set the interval after which unchanged values are sent again.
+   * @param ms Keep alive interval in milliseconds.
+   */
+  public void setKeepAlive(int ms)
+  {
+    keepAliveNanos = ms * 1000000L;
+  }
+
+  /**
+   * Set the rc values sent on the next send.
+   * @param lr Left/Right (-100 to 100).
+   * @param fb forward/backward (-100 to 100).
+   * @param ud up/down (-100 to 100).
+   * @param yaw yaw (-100 to 100).
+   */
+  public void set(int lr, int fb, int ud, int yaw)
+  {
+    values = (clamp(lr) & 0xff) << 24 | (clamp(fb) & 0xff) << 16 | (clamp(ud) & 0xff) << 8 | (clamp(yaw) & 0xff);
+  }
+
+  // Scheduler thread: send the latest values if changed or keep alive due.
+  private void send()
+  {
+    int   current = values;
+    long  now = System.nanoTime();
+
+    if (sent && current == sentValues && now - lastSend < keepAliveNanos) return;
+
+    // Each channel value is a signed byte of the packed int.
+
+    encoder.command(TelloCommandValues.RC).add((byte) (current >> 24)).add((byte) (current >> 16))
+        .add((byte) (current >> 8)).add((byte) current);
+
+    try
+    {
+      communication.executeCommandNoWait(encoder.getBuffer(), encoder.getLength());
+
+      sentValues = current;
+      lastSend = now;
+      sent = true;
+    }
+    catch (Exception e) { logger.warning("rc send failed: " + e.getMessage()); }
+  }
+
+  private static int clamp(int value)
+  {
+    return Math.max(-100, Math.min(100, value));
+  }
+}
@@ -0,0 +1,335 @@
+package tellolib.communication;
+
+import java.io.IOException;
+import java.net.PortUnreachableException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Event loop that services the command and status channels of any number of
+ * drones from one thread. Each channel is registered with a handler that the
+ * loop calls when the channel has a datagram to read, and periodic tasks such
+ * as keepalives run on the same thread between reads. Handlers and tasks must
+ * not block, since every drone on the reactor waits while one runs.
+ * <p>
+ * TelloChannelCommunication uses a reactor of its own unless given a shared
+ * one, so a swarm of drones can be serviced with a constant thread count.
+ */
+public class TelloReactor
+{
+  private final Logger logger = Logger.getLogger("Tello");
+
+  private final String name;
+
+  /**
+   * Guards opening the selector and registering channels, which must not
+   * overlap a select() in progress (see run()).
+   */
+  private final Object registerLock = new Object();
+  private Selector selector;
+  private Thread reactorThread;
+
+  private final CopyOnWriteArrayList<Timer> timers = new CopyOnWriteArrayList<>();
+
+  /**
+   * Called on the reactor thread when a channel has data to read.
+   */
+  public interface Handler
+  {
+    /**
+     * Read from the channel. Must not block.
+     * @throws IOException If the read fails.
+     */
+    void readable() throws IOException;
+  }
+
+  /**
+   * A periodic or one shot task, cancelled with cancel().
+   */
+  public final class Timer
+  {
+    private final Runnable task;
+    private final long period;
+    private volatile long next;
+    private final boolean once;
+
+    private Timer(Runnable task, long period, boolean once)
+    {
+      this.task = task;
+      this.period = period;
+      this.once = once;
+      next = System.currentTimeMillis() + period;
+    }
+
+    /**
+     * Stop running the task. It may still run once if it is due.
+     */
+    public void cancel()
+    {
+      timers.remove(this);
+    }
+  }
+
+  // Private holder class and getInstance() provide a reactor shared by every
+  // drone that is not given one of its own.
+
+  private static class SingletonHolder
+  {
+    public static final TelloReactor INSTANCE = new TelloReactor("TelloReactor");
+  }
+
+  /**
+   * Get the reactor shared by the drones of a swarm.
+   * @return Global TelloReactor instance.
+   */
+  public static TelloReactor getInstance()
+  {
+    return SingletonHolder.INSTANCE;
+  }
+
+  /**
+   * Create a reactor. Its thread is started when the first channel is
+   * registered.
+   * @param name Name of the reactor thread.
+   */
+  public TelloReactor(String name)
+  {
+    this.name = name;
+  }
+
+  /**
+   * Register a channel to be read by the reactor. The channel is made
+   * non-blocking.
+   * @param channel The channel.
+   * @param handler Handler called when the channel is readable.
+   * @throws IOException If the channel cannot be registered.
+   */
+  public void register(DatagramChannel channel, Handler handler) throws IOException
+  {
+    channel.configureBlocking(false);
+
+    synchronized (registerLock)
+    {
+      start();
+
+      selector.wakeup();
+
+      channel.register(selector, SelectionKey.OP_READ, handler);
+    }
+  }
+
+  /**
+   * Stop reading a channel. Closing the channel does the same.
+   * @param channel The channel.
+   */
+  public void unregister(DatagramChannel channel)
+  {
+    synchronized (registerLock)
+    {
+      if (selector == null) return;
+
+      SelectionKey key = channel.keyFor(selector);
+
+      if (key != null) key.cancel();
+
+      // Let the selector drop the key now so the port is free to rebind.
+
+      selector.wakeup();
+    }
+  }
+
+  /**
+   * Run a task periodically on the reactor thread. The task must not block.
+   * @param task The task.
+   * @param periodMillis Time between runs in milliseconds, the first run
+   * one period from now.
+   * @return Timer to cancel the task with.
+   */
+  public Timer schedule(Runnable task, long periodMillis)
+  {
+    return add(new Timer(task, periodMillis, false));
+  }
+
+  /**
+   * Run a task once on the reactor thread. The task must not block.
+   * @param task The task.
+   * @param delayMillis Time until the task runs in milliseconds.
+   * @return Timer to cancel the task with.
+   */
+  public Timer scheduleOnce(Runnable task, long delayMillis)
+  {
+    return add(new Timer(task, delayMillis, true));
+  }
+
+  private Timer add(Timer timer)
+  {
+    synchronized (registerLock)
+    {
+      timers.add(timer);
+
+      if (selector != null) selector.wakeup();
+    }
+
+    return timer;
+  }
+
+  /**
+   * Stop the reactor thread and close its selector. Channels still
+   * registered stop being read but are not closed.
+   */
+  public void close()
+  {
+    Thread thread;
+
+    synchronized (registerLock)
+    {
+      thread = reactorThread;
+
+      if (thread == null) return;
+
+      reactorThread = null;
+
+      thread.interrupt();
+      selector.wakeup();
+    }
+
+    try
+    {
+      thread.join(2000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Tells if the reactor thread is running.
+   * @return True if running.
+   */
+  public boolean isRunning()
+  {
+    Thread thread = reactorThread;
+
+    return thread != null && thread.isAlive();
+  }
+
+  // Open the selector and start the thread if not running. Caller must hold
+  // registerLock.
+  private void start() throws IOException
+  {
+    if (reactorThread != null) return;
+
+    selector = Selector.open();
+
+    reactorThread = new ReactorThread(selector);
+    reactorThread.start();
+  }
+
+  // Run the timers that are due and return the time to the next one, 0 for
+  // none.
+  private long runTimers()
+  {
+    long now = System.currentTimeMillis(), wait = 0;
+
+    for (Timer timer : timers)
+    {
+      if (timer.next <= now)
+      {
+        try
+        {
+          timer.task.run();
+        }
+        catch (RuntimeException e) { logger.warning(name + " task failed: " + e.getMessage()); }
+
+        if (timer.once)
+        {
+          timers.remove(timer);
+          continue;
+        }
+
+        // Fixed rate, but skip runs missed rather than running them back to back.
+
+        timer.next = Math.max(timer.next + timer.period, now + 1);
+      }
+
+      long delay = Math.max(1, timer.next - now);
+
+      if (wait == 0 || delay < wait) wait = delay;
+    }
+
+    return wait;
+  }
+
+  // Thread that waits on the selector and calls the handler of each readable
+  // channel.
+  private class ReactorThread extends Thread
+  {
+    private final Selector selector;
+
+    ReactorThread(Selector selector)
+    {
+      this.selector = selector;
+
+      this.setName(name);
+      this.setDaemon(true);
+    }
+
+    public void run()
+    {
+      logger.fine(name + " thread start");
+
+      try
+      {
+        long wait = 0;
+
+        while (!isInterrupted())
+        {
+          selector.select(wait);
+
+          // Wait out any registration that woke us up, it can't complete
+          // while we are in select().
+
+          synchronized (registerLock) {}
+
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+          while (keys.hasNext())
+          {
+            SelectionKey key = keys.next();
+            keys.remove();
+
+            if (!key.isValid() || !key.isReadable()) continue;
+
+            try
+            {
+              ((Handler) key.attachment()).readable();
+            }
+            catch (PortUnreachableException e) { logger.finer("drone port unreachable"); }
+            catch (IOException | RuntimeException e)
+            {
+              if (key.channel().isOpen()) logger.warning(name + " read failed: " + e.getMessage());
+            }
+          }
+
+          wait = runTimers();
+        }
+      }
+      catch (Exception e) { if (!isInterrupted()) logger.warning(name + " failed: " + e.getMessage()); }
+
+      try
+      {
+        selector.close();
+      } catch (IOException e) {}
+
+      synchronized (registerLock)
+      {
+        if (reactorThread == this) reactorThread = null;
+      }
+
+      logger.fine(name + " thread ended");
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package tellolib.communication;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import tellolib.command.TelloCommandValues;
+
+/**
+ * Checks that a reply has the form expected for the command it is matched
+ * to. Replies carry nothing identifying their command, so a late reply to a
+ * command that timed out would otherwise be taken as the reply to the next
+ * one.
+ */
+class TelloReplies
+{
+  /**
+   * Form of the replies to the read commands. Other read commands may reply
+   * anything but "ok", other commands reply "ok".
+   */
+  private static final Map<String, Pattern> QUERY_REPLIES = new HashMap<>();
+
+  static
+  {
+    Pattern integer = Pattern.compile("\\d+"), decimal = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+    QUERY_REPLIES.put(TelloCommandValues.CURRENT_BATTERY, integer);
+    QUERY_REPLIES.put(TelloCommandValues.SDK, integer);
+    QUERY_REPLIES.put(TelloCommandValues.CURRENT_SPEED, decimal);
+    QUERY_REPLIES.put(TelloCommandValues.CURRENT_BAROMETER, decimal);
+    QUERY_REPLIES.put(TelloCommandValues.CURRENT_HEIGHT, Pattern.compile("-?\\d+dm"));
+    QUERY_REPLIES.put(TelloCommandValues.CURRENT_TOF, Pattern.compile("\\d+mm"));
+    QUERY_REPLIES.put(TelloCommandValues.CURRENT_FLY_TIME, Pattern.compile("\\d+s"));
+    QUERY_REPLIES.put(TelloCommandValues.CURRENT_TEMPERATURE, Pattern.compile("\\d+~\\d+\\s*C"));
+    QUERY_REPLIES.put(TelloCommandValues.CURRENT_ATTITUDE, Pattern.compile("pitch:.*"));
+    QUERY_REPLIES.put(TelloCommandValues.CURRENT_ACCELERATION, Pattern.compile("agx:.*"));
+    QUERY_REPLIES.put(TelloCommandValues.SN, Pattern.compile("\\w+"));
+  }
+
+  private TelloReplies()
+  {
+  }
+
+  /**
+   * Tells if a reply can be the reply to a command.
+   * @param command The command sent, with its parameters.
+   * @param query True if the command reads a value.
+   * @param reply The reply received.
+   * @return True if the reply has the form of a reply to the command. Error
+   * replies fit any command.
+   */
+  static boolean matches(String command, boolean query, String reply)
+  {
+    String text = reply.trim(), lower = text.toLowerCase();
+
+    if (lower.startsWith("error") || lower.startsWith("unknown command") || lower.startsWith("unkown command")
+        || lower.startsWith("out of range") || lower.startsWith("forced stop")) return true;
+
+    if (!query) return lower.startsWith("ok");
+
+    if (lower.equals("ok")) return false;
+
+    Pattern form = QUERY_REPLIES.get(command);
+
+    return form == null || form.matcher(text).matches();
+  }
+}
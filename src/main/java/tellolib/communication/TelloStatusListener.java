@@ -0,0 +1,17 @@
+package tellolib.communication;
+
+/**
+ * Receives status packets as they arrive, on the thread that receives them
+ * (see TelloCommunicationInterface.setStatusListener()).
+ */
+public interface TelloStatusListener
+{
+  /**
+   * Called with each status packet. The data is only valid during the call,
+   * and the call must not block.
+   * @param data Buffer holding the packet bytes.
+   * @param offset Offset of the packet in the buffer.
+   * @param length Number of bytes in the packet.
+   */
+  void statusReceived(byte[] data, int offset, int length);
+}
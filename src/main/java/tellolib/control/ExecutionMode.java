@@ -0,0 +1,133 @@
+package tellolib.control;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How the threads that wait on drones are run: the async command executor,
+ * status monitor and keepalive of TelloControl and the per-drone workers of
+ * SwarmController. Selected with TelloControl.setExecutionMode().
+ * <p>
+ * PLATFORM runs them on ordinary threads, one OS thread each. VIRTUAL runs
+ * them on virtual threads, available from Java 21, which give up their OS
+ * thread while blocked, so dozens of drones waiting on replies share a few OS
+ * threads. Virtual threads are found by reflection, the library still builds
+ * for Java 8, and are always daemon threads.
+ */
+public enum ExecutionMode
+{
+	PLATFORM,
+	VIRTUAL;
+
+	private static volatile Boolean	virtualSupported;
+
+	/**
+	 * Tells if the running JDK has virtual threads.
+	 * @return True if VIRTUAL can be used.
+	 */
+	public static boolean isVirtualSupported()
+	{
+		if (virtualSupported == null)
+		{
+			try
+			{
+				virtualFactory("probe", false);
+
+				virtualSupported = true;
+			}
+			catch (ReflectiveOperationException | RuntimeException e) { virtualSupported = false; }
+		}
+
+		return virtualSupported;
+	}
+
+	/**
+	 * Create a thread, not started.
+	 * @param name Thread name.
+	 * @param daemon True for a daemon thread. Virtual threads are always daemons.
+	 * @param task Code the thread runs.
+	 * @return The thread.
+	 */
+	public Thread newThread(String name, boolean daemon, Runnable task)
+	{
+		if (this == VIRTUAL) return newThreadFactory(name, false).newThread(task);
+
+		Thread thread = new Thread(task, name);
+
+		thread.setDaemon(daemon);
+
+		return thread;
+	}
+
+	/**
+	 * Create a factory for daemon threads.
+	 * @param name Thread name.
+	 * @param numbered True to number the threads: name-1, name-2...
+	 * @return The factory.
+	 */
+	public ThreadFactory newThreadFactory(String name, boolean numbered)
+	{
+		if (this == VIRTUAL)
+		{
+			try
+			{
+				return virtualFactory(name, numbered);
+			}
+			catch (ReflectiveOperationException e)
+			{
+				throw new UnsupportedOperationException("virtual threads not available", e);
+			}
+		}
+
+		AtomicInteger count = new AtomicInteger();
+
+		return runnable ->
+		{
+			Thread thread = new Thread(runnable, numbered ? name + "-" + count.incrementAndGet() : name);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Create an executor that runs each task at once on a thread of its own:
+	 * a new virtual thread per task, or a cached pool of platform threads.
+	 * @param name Thread name, the threads are numbered.
+	 * @return The executor.
+	 */
+	public ExecutorService newExecutor(String name)
+	{
+		ThreadFactory factory = newThreadFactory(name, true);
+
+		if (this == VIRTUAL)
+		{
+			try
+			{
+				return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+						.invoke(null, factory);
+			}
+			catch (ReflectiveOperationException e)
+			{
+				throw new UnsupportedOperationException("virtual threads not available", e);
+			}
+		}
+
+		return Executors.newCachedThreadPool(factory);
+	}
+
+	// Thread.ofVirtual().name(...).factory() called by reflection.
+	private static ThreadFactory virtualFactory(String name, boolean numbered) throws ReflectiveOperationException
+	{
+		Class<?>	builderClass = Class.forName("java.lang.Thread$Builder");
+		Object		builder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+		if (numbered)
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+		else
+			builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+
+		return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+	}
+}
@@ -3,14 +3,33 @@ package tellolib.control;
 import tellolib.camera.MissionDetectionCamera;
 import tellolib.camera.TelloCamera;
 import tellolib.command.BasicTelloCommand;
+import tellolib.command.CommandEncoder;
 import tellolib.command.ComplexTelloCommand;
 import tellolib.command.TelloCommandInterface;
 import tellolib.command.TelloCommandValues;
 import tellolib.command.TelloFlip;
 import tellolib.communication.TelloCommunication;
+import tellolib.communication.TelloCommunicationInterface;
 import tellolib.communication.TelloConnection;
+import tellolib.communication.TelloRCChannel;
 import tellolib.drone.TelloDrone;
+import tellolib.drone.TelloStatusParser;
+import tellolib.flightlog.FlightRecorder;
+import tellolib.metrics.FrameTiming;
+import tellolib.metrics.TelloMetricsInterface;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -26,14 +45,38 @@ public class TelloControl implements TelloControlInterface
 	
 	private TelloDrone			drone;
 	
-	private TelloCommunication 	communication;
+	private TelloCommunicationInterface	communication;
 	
 	private TelloCamera			camera;
 	
 	private Thread				statusMonitorThread, keepAliveThread;
 	
-	// Private constructor, holder class and getInstance() implement this
-	// class as a singleton.
+	private volatile boolean	statusListening, keepAliveScheduled;
+	
+	private ExecutorService		commandExecutor;
+	
+	// Futures of the async commands not yet completed, so they can be
+	// cancelled when the executor is stopped.
+	
+	private final Set<CompletableFuture<?>>	asyncCommands = ConcurrentHashMap.newKeySet();
+	
+	private FlightRecorder		flightRecorder;
+	
+	private volatile TelloRCChannel	rcChannel;
+	
+	// Encoder for rc commands sent by flyRC() without an rc channel, guarded
+	// by itself.
+	
+	private final CommandEncoder	rcEncoder = new CommandEncoder();
+	
+	/*
+	 * Threads the monitors and async commands of every TelloControl run on. 
+	 * Defaults to the tello.executionMode system property or PLATFORM.
+	 */
+	private static volatile ExecutionMode	executionMode = initialExecutionMode();
+	
+	// Private constructor, holder class and getInstance() provide a global
+	// instance for the global TelloDrone, TelloCommunication and TelloCamera.
 	
 	private TelloControl() 
 	{
@@ -48,6 +91,21 @@ public class TelloControl implements TelloControlInterface
 		
 		camera = TelloCamera.getInstance();
 	}
+	
+	/**
+	 * Create a TelloControl for a drone other than the global one, for instance
+	 * one of several flown together (see DroneSession). Logging is left as set
+	 * up by the global instance.
+	 * @param drone State of the drone, updated from its replies and status.
+	 * @param communication Communication with the drone.
+	 * @param camera The drone's camera, or null if it has none in use.
+	 */
+	public TelloControl(TelloDrone drone, TelloCommunicationInterface communication, TelloCamera camera)
+	{
+		this.drone = drone;
+		this.communication = communication;
+		this.camera = camera;
+	}
     
 	private static class SingletonHolder 
 	{
@@ -62,6 +120,43 @@ public class TelloControl implements TelloControlInterface
 	{
 		return SingletonHolder.INSTANCE;
 	}
+	
+	/**
+	 * Select the threads used to wait on drones: the async command executor,
+	 * status monitor and keepalive threads and the per-drone workers of a 
+	 * SwarmController. Applies to threads started afterwards, so is best set 
+	 * at startup. VIRTUAL falls back to PLATFORM on JDKs without virtual 
+	 * threads.
+	 * @param mode The execution mode.
+	 */
+	public static void setExecutionMode(ExecutionMode mode)
+	{
+		if (mode == ExecutionMode.VIRTUAL && !ExecutionMode.isVirtualSupported())
+		{
+			Logger.getLogger("Tello").warning("virtual threads not available, using platform threads");
+			mode = ExecutionMode.PLATFORM;
+		}
+		
+		executionMode = mode;
+	}
+	
+	/**
+	 * Get the threads used to wait on drones.
+	 * @return The execution mode in effect.
+	 */
+	public static ExecutionMode getExecutionMode()
+	{
+		return executionMode;
+	}
+	
+	private static ExecutionMode initialExecutionMode()
+	{
+		String mode = System.getProperty("tello.executionMode", "PLATFORM").toUpperCase();
+		
+		if (mode.equals("VIRTUAL") && ExecutionMode.isVirtualSupported()) return ExecutionMode.VIRTUAL;
+		
+		return ExecutionMode.PLATFORM;
+	}
 
 	@Override
 	public void setLogLevel(Level logLevel)
@@ -70,6 +165,15 @@ public class TelloControl implements TelloControlInterface
 		handler.setLevel(logLevel);
 	}
 	
+	@Override
+	public void setCommunication(TelloCommunicationInterface communication)
+	{
+		if (drone.getConnection() == TelloConnection.CONNECTED)
+			throw new IllegalStateException("cannot change communication while connected");
+		
+		this.communication = communication;
+	}
+	
 	@Override
 	public void connect() 
 	{
@@ -82,12 +186,17 @@ public class TelloControl implements TelloControlInterface
 	{
 		stopStatusMonitor();
 		stopKeepAlive();
-		camera.stopVideoCapture();
+		stopCommandExecutor();
+		stopRCChannel();
+		
+		if (camera != null) camera.stopVideoCapture();
 		  
 		// This will land if we are still flying and throw away the error
 		// returned by land if we have already landed or never took off.
 		  
 		try { land(); } catch (Exception e) {}
+		
+		stopFlightRecorder();
 		  
 		communication.disconnect();
 		drone.setConnection(TelloConnection.DISCONNECTED);
@@ -178,16 +287,14 @@ public class TelloControl implements TelloControlInterface
 	public int getBattery() 
 	{
 		TelloCommandInterface command = new BasicTelloCommand(TelloCommandValues.CURRENT_BATTERY);
-		String battery = communication.executeReadCommand(command);
-		drone.setBattery(Integer.parseInt(battery.trim()));
+		updateBattery(communication.executeReadCommand(command));
 		return drone.getBattery();
 	}
 	  
 	public int getSpeed() 
 	{
 		TelloCommandInterface command = new BasicTelloCommand(TelloCommandValues.CURRENT_SPEED);
-		String speed = communication.executeReadCommand(command);
-		drone.setSpeed((int) Double.parseDouble(speed.trim()));
+		updateSpeed(communication.executeReadCommand(command));
 		return drone.getSpeed();
 	}
 
@@ -209,8 +316,7 @@ public class TelloControl implements TelloControlInterface
 	public int getTime()
 	{
 		TelloCommandInterface command = new BasicTelloCommand(TelloCommandValues.CURRENT_FLY_TIME);
-		String time = communication.executeReadCommand(command);
-		drone.setTime(Integer.parseInt(time.trim().replaceAll("[^\\d.-]", "")));
+		updateTime(communication.executeReadCommand(command));
 		return drone.getTime();
 	}
 	
@@ -218,8 +324,7 @@ public class TelloControl implements TelloControlInterface
 	public int getHeight()
 	{
 		TelloCommandInterface command = new BasicTelloCommand(TelloCommandValues.CURRENT_HEIGHT);
-		String height = communication.executeReadCommand(command);
-		drone.setHeight(Integer.parseInt(height.trim().replaceAll("[^\\d.-]", "")) * 10);
+		updateHeight(communication.executeReadCommand(command));
 		return drone.getHeight();
 	}
 	
@@ -227,8 +332,7 @@ public class TelloControl implements TelloControlInterface
 	public int getTemp()
 	{
 		TelloCommandInterface command = new BasicTelloCommand(TelloCommandValues.CURRENT_TEMPERATURE);
-		String temp = communication.executeReadCommand(command);
-		drone.setTemp(Integer.parseInt(temp.trim().split("~")[0].replaceAll("[^\\d.-]", "")));
+		updateTemp(communication.executeReadCommand(command));
 		return drone.getTemp();
 	}
 	
@@ -236,8 +340,7 @@ public class TelloControl implements TelloControlInterface
 	public double getBarometer()
 	{
 		TelloCommandInterface command = new BasicTelloCommand(TelloCommandValues.CURRENT_BAROMETER);
-		String barometer = communication.executeReadCommand(command);
-		drone.setBarometer(Double.parseDouble(barometer.trim()));
+		updateBarometer(communication.executeReadCommand(command));
 		return drone.getBarometer();
 	}
 	
@@ -245,20 +348,7 @@ public class TelloControl implements TelloControlInterface
 	public int[] getAttitude()
 	{
 		TelloCommandInterface command = new BasicTelloCommand(TelloCommandValues.CURRENT_ATTITUDE);
-		String attitude = communication.executeReadCommand(command);
-		
-		String spry[] = attitude.split(";");
-		int pry[] = new int[3];
-
-		for (int i = 0; i < 3; i++)
-		{
-			String axis[] = spry[i].split(":");
-			pry[i] = Integer.parseInt(axis[1]);
-			//logger.info(Integer.toString(pry[i]));
- 		}
-
-		drone.setAttitude(pry);
-		
+		updateAttitude(communication.executeReadCommand(command));
 		return drone.getAttitude();
 	}
 	
@@ -266,19 +356,7 @@ public class TelloControl implements TelloControlInterface
 	public double[] getAcceleration()
 	{
 		TelloCommandInterface command = new BasicTelloCommand(TelloCommandValues.CURRENT_ACCELERATION);
-		String acceleration = communication.executeReadCommand(command);
-		
-		String sxyz[] = acceleration.split(";");
-		double xyz[] = new double[3];
-
-		for (int i = 0; i < 3; i++)
-		{
-			String axis[] = sxyz[i].split(":");
-			xyz[i] = Double.parseDouble(axis[1]);
-			//logger.info(Double.toString(xyz[i]));
- 		}
-
-		drone.setAcceleration(xyz);
+		updateAcceleration(communication.executeReadCommand(command));
 		return drone.getAcceleration();
 	}
 	
@@ -286,8 +364,7 @@ public class TelloControl implements TelloControlInterface
 	public double getTof()
 	{
 		TelloCommandInterface command = new BasicTelloCommand(TelloCommandValues.CURRENT_TOF);
-		String tof = communication.executeReadCommand(command);
-		drone.setTof(Double.parseDouble(tof.trim().replaceAll("[^\\d.-]", "")) / 10);
+		updateTof(communication.executeReadCommand(command));
 		return drone.getTof();
 	}
 
@@ -295,8 +372,7 @@ public class TelloControl implements TelloControlInterface
 	public String getSN()
 	{
 		TelloCommandInterface command = new BasicTelloCommand(TelloCommandValues.SN);
-		String sn = communication.executeReadCommand(command);
-		drone.setSN(sn.trim());
+		updateSN(communication.executeReadCommand(command));
 		return drone.getSN();
 	}
 
@@ -311,17 +387,26 @@ public class TelloControl implements TelloControlInterface
 	@Override
 	public void flyRC( Integer lr, Integer fb, Integer ud, Integer yaw )
 	{
-		TelloCommandInterface command = new ComplexTelloCommand(TelloCommandValues.RC, 
-				lr.toString() + " " + fb.toString() + " " + ud.toString() + " " + yaw.toString());
-		communication.executeCommandNoWait(command);
+		TelloRCChannel channel = rcChannel;
+		
+		if (channel != null)
+		{
+			channel.set(lr, fb, ud, yaw);
+			return;
+		}
+		
+		synchronized (rcEncoder)
+		{
+			rcEncoder.command(TelloCommandValues.RC).add(lr).add(fb).add(ud).add(yaw);
+			communication.executeCommandNoWait(rcEncoder.getBuffer(), rcEncoder.getLength());
+		}
 	}
 
 	@Override
 	public String getSDK()
 	{
 		TelloCommandInterface command = new BasicTelloCommand(TelloCommandValues.SDK);
-		String sdk = communication.executeReadCommand(command);
-		drone.setSDK(sdk.trim());
+		updateSDK(communication.executeReadCommand(command));
 		return drone.getSDK();
 	}
 
@@ -356,17 +441,40 @@ public class TelloControl implements TelloControlInterface
 	@Override
 	public void startStatusMonitor()
 	{
-		logger.fine("starting status monitor thread");
+		if (statusMonitorThread != null || statusListening) return;
+		
+		// Where the communication can hand us status packets as they arrive
+		// they are parsed on its thread, otherwise a thread waits for them.
+		
+		TelloStatusParser parser = new TelloStatusParser();
+		
+		statusListening = communication.setStatusListener((data, offset, length) -> 
+		{
+			if (logger.isLoggable(Level.FINER)) 
+				logger.finer(new String(data, offset, length, StandardCharsets.UTF_8));
+			
+			if (parser.parse(data, offset, length)) parser.apply(drone);
+		});
+		
+		if (statusListening)
+		{
+			logger.fine("status monitor listening");
+			return;
+		}
 		
-		if (statusMonitorThread != null) return;
+		logger.fine("starting status monitor thread");
 
-		statusMonitorThread = new StatusMonitor();
+		statusMonitorThread = executionMode.newThread("StatusMonitor", false, new StatusMonitor());
 		statusMonitorThread.start();
 	}
 
 	@Override
 	public void stopStatusMonitor()
 	{
+		if (statusListening) communication.setStatusListener(null);
+		
+		statusListening = false;
+		
 		if (statusMonitorThread != null) statusMonitorThread.interrupt();
 
 		logger.fine("stopping status monitor thread");
@@ -374,77 +482,33 @@ public class TelloControl implements TelloControlInterface
 		statusMonitorThread = null;
 	}
 	
-	private class StatusMonitor extends Thread
+	private class StatusMonitor implements Runnable
 	{
 		StatusMonitor()
 		{
 			logger.fine("monitor thread constructor");
-			
-			this.setName("StatusMonitor");
 	    }
 		
 	    public void run()
 	    {
 			logger.fine("monitor thread start");
 			
+			// Packet buffer and parser are reused for every packet so status
+			// monitoring creates no garbage.
+			
+			byte[]				statusData = new byte[1024];
+			TelloStatusParser	parser = new TelloStatusParser();
+			
 	    	try
 	    	{
-	    		while (!isInterrupted())
+	    		while (!Thread.currentThread().isInterrupted())
 	    		{
-	    			String logData = communication.receiveStatusData();
-	    			
-	    			logger.finer(logData);
+	    			int length = communication.receiveStatusData(statusData);
 	    			
-	    			String[] keyValuePairs = logData.split(";"); 
-
-	    			int[] attpry = new int[3], mpxyz = new int[3], mppry = new int[3];
-    				double[] accelxyz = new double[3], veloxyz = new double[3];
+	    			if (logger.isLoggable(Level.FINER)) 
+	    				logger.finer(new String(statusData, 0, length, StandardCharsets.UTF_8));
 	    			
-	    			for(String pair : keyValuePairs)                        // iterate over the pairs.
-	    			{
-	    			    String[] entry = pair.split(":");                   // split the pairs to get key and value. 
-	    			    
-	    			    switch (entry[0])
-	    			    {
-	    			    	case "bat": drone.setBattery(Integer.parseInt(entry[1].trim())); break;
-	    			    	case "time": drone.setTime(Integer.parseInt(entry[1].trim())); break;
-	    			    	case "temph": drone.setTemp(Integer.parseInt(entry[1].trim())); break;
-	    			    	case "tof": drone.setTof(Integer.parseInt(entry[1].trim())); break;
-	    			    	case "h": drone.setHeight(Integer.parseInt(entry[1].trim())); break;
-	    			    	case "baro": drone.setBarometer(Double.parseDouble(entry[1].trim())); break;
-	    			    	case "pitch": attpry[0] = Integer.parseInt(entry[1].trim()); break;
-	    			    	case "roll": attpry[1] = Integer.parseInt(entry[1].trim()); break;
-	    			    	case "yaw": attpry[2] = Integer.parseInt(entry[1].trim()); break;
-	    			    	case "agx": accelxyz[0] = Double.parseDouble(entry[1].trim()); break;
-	    			    	case "agy": accelxyz[1] = Double.parseDouble(entry[1].trim()); break;
-	    			    	case "agz": accelxyz[2] = Double.parseDouble(entry[1].trim()); break;
-	    			    	case "vgx": veloxyz[0] = Double.parseDouble(entry[1].trim()); break;
-	    			    	case "vgy": veloxyz[1] = Double.parseDouble(entry[1].trim()); break;
-	    			    	case "vgz": veloxyz[2] = Double.parseDouble(entry[1].trim()); break;
-
-	    			    	case "mid": drone.setMissionPadId(Integer.parseInt(entry[1].trim())); break;
-	    			    	case "x": mpxyz[0] = Integer.parseInt(entry[1].trim()); break;
-	    			    	case "y": mpxyz[1] = Integer.parseInt(entry[1].trim()); break;
-	    			    	case "z": mpxyz[2] = Integer.parseInt(entry[1].trim()); break;
-	    			    	
-	    			    	case "mpry":
-	    			    		String[] entry2 = entry[1].split(",");
-	    			    		mppry[0] = Integer.parseInt(entry2[0].trim());
-	    			    		mppry[1] = Integer.parseInt(entry2[1].trim());
-	    			    		mppry[2] = Integer.parseInt(entry2[2].trim());
-	    			    		break;
-	    			    }
-	    			}
-    			    
-    			    drone.setAttitude(attpry);
-    			    
-    			    drone.setAcceleration(accelxyz);
-    			    
-    			    drone.setVelocity(veloxyz);
-    			    
-    			    drone.setMissionPadxyz(mpxyz);
-    			    
-    			    drone.setMissionPadpry(mppry);
+	    			if (parser.parse(statusData, 0, length)) parser.apply(drone);
 	    		}
 	    	}
 	    	catch (Exception e) { logger.warning("status monitor failed: " + e.getMessage()); }
@@ -457,17 +521,32 @@ public class TelloControl implements TelloControlInterface
 	@Override
 	public void startKeepAlive()
 	{
-		logger.fine("starting keepalive thread");
+		if (keepAliveThread != null || keepAliveScheduled) return;
+		
+		// Where the communication can send the battery query on its own
+		// thread it does, otherwise a thread sends it.
 		
-		if (keepAliveThread != null) return;
+		keepAliveScheduled = communication.startKeepAlive(10000, battery -> updateBattery(battery));	// 10 seconds.
+		
+		if (keepAliveScheduled)
+		{
+			logger.fine("keepalive scheduled");
+			return;
+		}
+		
+		logger.fine("starting keepalive thread");
 
-		keepAliveThread = new KeepAlive();
+		keepAliveThread = executionMode.newThread("KeepAlive", false, new KeepAlive());
 		keepAliveThread.start();
 	}
 
 	@Override
 	public void stopKeepAlive()
 	{
+		if (keepAliveScheduled) communication.stopKeepAlive();
+		
+		keepAliveScheduled = false;
+		
 		if (keepAliveThread != null) keepAliveThread.interrupt();
 
 		logger.fine("stopping keepalive thread");
@@ -475,13 +554,11 @@ public class TelloControl implements TelloControlInterface
 		keepAliveThread = null;
 	}
 	
-	private class KeepAlive extends Thread
+	private class KeepAlive implements Runnable
 	{
 		KeepAlive()
 		{
 			logger.fine("KeepAlive thread constructor");
-			
-			this.setName("KeepAlive");
 	    }
 		
 	    public void run()
@@ -490,9 +567,9 @@ public class TelloControl implements TelloControlInterface
 			
 	    	try
 	    	{
-	    		while (!isInterrupted())
+	    		while (!Thread.currentThread().isInterrupted())
 	    		{
-	    			sleep(10000);	// 10 seconds.
+	    			Thread.sleep(10000);	// 10 seconds.
 	    			
 	    			getBattery();
 	    		}
@@ -504,6 +581,273 @@ public class TelloControl implements TelloControlInterface
 	    }
 	}
 
+	@Override
+	public void pollReadings()
+	{
+		String[] queries = { TelloCommandValues.CURRENT_BATTERY, TelloCommandValues.CURRENT_SPEED,
+							 TelloCommandValues.CURRENT_FLY_TIME, TelloCommandValues.CURRENT_HEIGHT,
+							 TelloCommandValues.CURRENT_TEMPERATURE, TelloCommandValues.CURRENT_BAROMETER,
+							 TelloCommandValues.CURRENT_ATTITUDE, TelloCommandValues.CURRENT_ACCELERATION,
+							 TelloCommandValues.CURRENT_TOF, TelloCommandValues.SN, TelloCommandValues.SDK };
+		
+		List<TelloCommandInterface> commands = new ArrayList<>(queries.length);
+		
+		for (String query : queries) commands.add(new BasicTelloCommand(query));
+		
+		List<String> responses = communication.executeReadCommands(commands);
+		
+		updateBattery(responses.get(0));
+		updateSpeed(responses.get(1));
+		updateTime(responses.get(2));
+		updateHeight(responses.get(3));
+		updateTemp(responses.get(4));
+		updateBarometer(responses.get(5));
+		updateAttitude(responses.get(6));
+		updateAcceleration(responses.get(7));
+		updateTof(responses.get(8));
+		updateSN(responses.get(9));
+		updateSDK(responses.get(10));
+	}
+
+	@Override
+	public TelloMetricsInterface getMetrics()
+	{
+		return communication.getMetrics();
+	}
+
+	@Override
+	public synchronized void startRCChannel(int rate)
+	{
+		if (rcChannel != null) return;
+		
+		TelloRCChannel channel = new TelloRCChannel(communication);
+		
+		channel.start(rate);
+		
+		rcChannel = channel;
+	}
+
+	@Override
+	public synchronized void stopRCChannel()
+	{
+		if (rcChannel == null) return;
+		
+		TelloRCChannel channel = rcChannel;
+		
+		rcChannel = null;
+		
+		channel.stop();
+	}
+
+	@Override
+	public boolean startFlightRecorder(String folder)
+	{
+		if (flightRecorder != null) return true;
+		
+		String fileName = new File(folder, new SimpleDateFormat("yyyy-MM-dd.HHmmss").format(new Date()) + ".tlog").getPath();
+		
+		try
+		{
+			flightRecorder = new FlightRecorder(fileName);
+		}
+		catch (Exception e) 
+		{
+			logger.warning("flight recorder start failed: " + e.getMessage());
+			return false;
+		}
+		
+		communication.setFlightRecorder(flightRecorder);
+		
+		logger.fine("flight recording started to " + fileName);
+		
+		return true;
+	}
+
+	@Override
+	public void stopFlightRecorder()
+	{
+		if (flightRecorder == null) return;
+		
+		communication.setFlightRecorder(null);
+		flightRecorder.close();
+		flightRecorder = null;
+	}
+
+	@Override
+	public CompletableFuture<Void> takeOffAsync()
+	{
+		return runAsync(() -> takeOff());
+	}
+
+	@Override
+	public CompletableFuture<Void> landAsync()
+	{
+		return runAsync(() -> land());
+	}
+
+	@Override
+	public CompletableFuture<Void> doFlipAsync(TelloFlip telloFlip)
+	{
+		return runAsync(() -> doFlip(telloFlip));
+	}
+
+	@Override
+	public CompletableFuture<Void> forwardAsync(Integer distance)
+	{
+		return runAsync(() -> forward(distance));
+	}
+
+	@Override
+	public CompletableFuture<Void> backwardAsync(Integer distance)
+	{
+		return runAsync(() -> backward(distance));
+	}
+
+	@Override
+	public CompletableFuture<Void> rightAsync(Integer distance)
+	{
+		return runAsync(() -> right(distance));
+	}
+
+	@Override
+	public CompletableFuture<Void> leftAsync(Integer distance)
+	{
+		return runAsync(() -> left(distance));
+	}
+
+	@Override
+	public CompletableFuture<Void> upAsync(Integer distance)
+	{
+		return runAsync(() -> up(distance));
+	}
+
+	@Override
+	public CompletableFuture<Void> downAsync(Integer distance)
+	{
+		return runAsync(() -> down(distance));
+	}
+
+	@Override
+	public CompletableFuture<Void> rotateRightAsync(Integer angle)
+	{
+		return runAsync(() -> rotateRight(angle));
+	}
+
+	@Override
+	public CompletableFuture<Void> rotateLeftAsync(Integer angle)
+	{
+		return runAsync(() -> rotateLeft(angle));
+	}
+
+	@Override
+	public CompletableFuture<Void> goToAsync(Integer x, Integer y, Integer z, Integer speed)
+	{
+		return runAsync(() -> goTo(x, y, z, speed));
+	}
+
+	@Override
+	public CompletableFuture<Void> stopAsync()
+	{
+		return runAsync(() -> stop());
+	}
+
+	@Override
+	public CompletableFuture<Integer> getBatteryAsync()
+	{
+		return supplyAsync(() -> getBattery());
+	}
+
+	@Override
+	public CompletableFuture<Integer> getHeightAsync()
+	{
+		return supplyAsync(() -> getHeight());
+	}
+
+	@Override
+	public CompletableFuture<Integer> getTimeAsync()
+	{
+		return supplyAsync(() -> getTime());
+	}
+
+	@Override
+	public CompletableFuture<Double> getTofAsync()
+	{
+		return supplyAsync(() -> getTof());
+	}
+	
+	// The caller's frame timing goes with the command to the executor thread
+	// so its latency is measured against the frame it reacts to.
+	
+	private CompletableFuture<Void> runAsync(Runnable command)
+	{
+		FrameTiming timing = FrameTiming.get();
+		
+		return track(CompletableFuture.runAsync(() -> 
+		{
+			FrameTiming.set(timing);
+			
+			try
+			{
+				command.run();
+			}
+			finally { FrameTiming.set(null); }
+		}, getCommandExecutor()));
+	}
+	
+	private <T> CompletableFuture<T> supplyAsync(Supplier<T> command)
+	{
+		FrameTiming timing = FrameTiming.get();
+		
+		return track(CompletableFuture.supplyAsync(() -> 
+		{
+			FrameTiming.set(timing);
+			
+			try
+			{
+				return command.get();
+			}
+			finally { FrameTiming.set(null); }
+		}, getCommandExecutor()));
+	}
+	
+	private <T> CompletableFuture<T> track(CompletableFuture<T> future)
+	{
+		asyncCommands.add(future);
+		
+		future.whenComplete((result, e) -> asyncCommands.remove(future));
+		
+		return future;
+	}
+	
+	// The drone only executes one command at a time so async commands are
+	// queued to a single thread and run in the order submitted.
+	private synchronized ExecutorService getCommandExecutor()
+	{
+		if (commandExecutor == null)
+		{
+			logger.fine("starting command executor thread");
+			
+			commandExecutor = Executors.newSingleThreadExecutor(
+					executionMode.newThreadFactory("CommandExecutor", false));
+		}
+		
+		return commandExecutor;
+	}
+	
+	private synchronized void stopCommandExecutor()
+	{
+		if (commandExecutor != null) commandExecutor.shutdownNow();
+
+		// shutdownNow() drops the queued commands without completing their
+		// futures, cancel them so callers waiting on them return.
+		
+		for (CompletableFuture<?> future : asyncCommands) future.cancel(false);
+
+		logger.fine("stopping command executor thread");
+		
+		commandExecutor = null;
+	}
+
 //	@Override
 //	public TelloDrone getDrone()
 //	{
@@ -703,4 +1047,82 @@ public class TelloControl implements TelloControlInterface
 //	{
 //		telloCamera.setContours(contours, width, color);
 //	}
+
+	// Parse read command responses into TelloDrone, shared by the single
+	// getters and pollReadings().
+	
+	private void updateBattery(String battery)
+	{
+		drone.setBattery(Integer.parseInt(battery.trim()));
+	}
+
+	private void updateSpeed(String speed)
+	{
+		drone.setSpeed((int) Double.parseDouble(speed.trim()));
+	}
+
+	private void updateTime(String time)
+	{
+		drone.setTime(Integer.parseInt(time.trim().replaceAll("[^\\d.-]", "")));
+	}
+
+	private void updateHeight(String height)
+	{
+		drone.setHeight(Integer.parseInt(height.trim().replaceAll("[^\\d.-]", "")) * 10);
+	}
+
+	private void updateTemp(String temp)
+	{
+		drone.setTemp(Integer.parseInt(temp.trim().split("~")[0].replaceAll("[^\\d.-]", "")));
+	}
+
+	private void updateBarometer(String barometer)
+	{
+		drone.setBarometer(Double.parseDouble(barometer.trim()));
+	}
+
+	private void updateAttitude(String attitude)
+	{
+		String spry[] = attitude.split(";");
+		int pry[] = new int[3];
+
+		for (int i = 0; i < 3; i++)
+		{
+			String axis[] = spry[i].split(":");
+			pry[i] = Integer.parseInt(axis[1]);
+			//logger.info(Integer.toString(pry[i]));
+ 		}
+
+		drone.setAttitude(pry);
+	}
+
+	private void updateAcceleration(String acceleration)
+	{
+		String sxyz[] = acceleration.split(";");
+		double xyz[] = new double[3];
+
+		for (int i = 0; i < 3; i++)
+		{
+			String axis[] = sxyz[i].split(":");
+			xyz[i] = Double.parseDouble(axis[1]);
+			//logger.info(Double.toString(xyz[i]));
+ 		}
+
+		drone.setAcceleration(xyz);
+	}
+
+	private void updateTof(String tof)
+	{
+		drone.setTof(Double.parseDouble(tof.trim().replaceAll("[^\\d.-]", "")) / 10);
+	}
+
+	private void updateSN(String sn)
+	{
+		drone.setSN(sn.trim());
+	}
+
+	private void updateSDK(String sdk)
+	{
+		drone.setSDK(sdk.trim());
+	}
 }
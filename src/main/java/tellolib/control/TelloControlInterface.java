@@ -1,6 +1,7 @@
 package tellolib.control;
 
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 
 import org.opencv.core.Mat;
@@ -10,8 +11,10 @@ import org.opencv.core.Scalar;
 
 import tellolib.camera.MissionDetectionCamera;
 import tellolib.command.TelloFlip;
+import tellolib.communication.TelloCommunicationInterface;
 import tellolib.communication.TelloConnection;
 import tellolib.drone.TelloDroneInterface;
+import tellolib.metrics.TelloMetricsInterface;
 
 /**
  * Higher level interface to Tello Drone library.
@@ -24,6 +27,15 @@ public interface TelloControlInterface
    */
   void setLogLevel(Level logLevel);
   
+  /**
+   * Select the low level communication implementation used to talk to the
+   * drone. Defaults to the blocking TelloCommunication. Pass 
+   * TelloChannelCommunication.getInstance() to use the non-blocking NIO
+   * transport. Must be called before connect().
+   * @param communication The communication implementation to use.
+   */
+  void setCommunication(TelloCommunicationInterface communication);
+  
   /**
    * Establishes connection to the Tello Drone.
    */
@@ -135,6 +147,36 @@ public interface TelloControlInterface
    */
   void flyRC(Integer lr, Integer fb, Integer ud, Integer yaw);
 
+  /**
+   * Get all the readings available with read commands (battery, speed, time,
+   * height, temperature, barometer, attitude, acceleration, tof, serial number
+   * and SDK version) in one burst and update TelloDrone with them. With
+   * TelloChannelCommunication the queries are pipelined so this takes about
+   * one round trip instead of one per reading.
+   */
+  void pollReadings();
+
+  /**
+   * Get the measurements of the communication with the drone: command
+   * latency, failed commands and status packet timing.
+   * @return The metrics of the current communication.
+   */
+  TelloMetricsInterface getMetrics();
+
+  /**
+   * Start the rc channel. While it runs flyRC only updates the stick values
+   * and the channel sends them to the drone at a fixed rate, skipping sends
+   * when nothing changed. Stopped when disconnect() is called.
+   * @param rate Sends per second, typically 20 to 50.
+   */
+  void startRCChannel(int rate);
+
+  /**
+   * Stop the rc channel, sending all zero stick values. flyRC then sends
+   * each call directly again.
+   */
+  void stopRCChannel();
+
   /**
    * Get current battery level.
    * @return Battery level %.
@@ -231,7 +273,9 @@ public interface TelloControlInterface
   
   /**
    * Start monitoring the status updates sent by the Tello.
-   * Requires SDK 1.3 or later.
+   * Requires SDK 1.3 or later. With TelloChannelCommunication the
+   * updates are parsed on its reactor thread, otherwise on a
+   * thread of their own.
    */
   void startStatusMonitor();
   
@@ -246,6 +290,8 @@ public interface TelloControlInterface
    * Start keep alive thread that pings the Tello every 10 seconds
    * with a get battery level command to keep the Tello from shutting
    * down automatically if it receives no commands for 15 seconds.
+   * With TelloChannelCommunication the ping is sent from its reactor
+   * thread instead.
    */
   void startKeepAlive();
   
@@ -255,6 +301,147 @@ public interface TelloControlInterface
    */
   void stopKeepAlive();
   
+  /**
+   * Start recording status packets and commands to a binary flight log
+   * in the named folder. The log can be played back with FlightReplayer.
+   * @param folder Location to save the flight log.
+   * @return True if recording started, false if failed.
+   */
+  boolean startFlightRecorder(String folder);
+  
+  /**
+   * Stop flight recording and close the log. Recording will be stopped
+   * when disconnect() is called.
+   */
+  void stopFlightRecorder();
+  
+  /*
+   * Asynchronous variants of the blocking commands. Each returns at once with a
+   * future that completes when the drone replies to the command, or completes
+   * exceptionally with the exception the blocking call would have thrown.
+   * Commands are run one at a time, in the order submitted, on a dedicated
+   * command thread since the drone only executes one command at a time.
+   * Note that with the default TelloCommunication other commands, flyRC 
+   * included, still wait while a command is in flight. Use the rc channel
+   * or TelloChannelCommunication to keep sending RC commands while an async
+   * command executes.
+   */
+  
+  /**
+   * Take off without waiting for completion.
+   * @return Future completed when the take off is done.
+   */
+  CompletableFuture<Void> takeOffAsync();
+  
+  /**
+   * Land without waiting for completion.
+   * @return Future completed when the landing is done.
+   */
+  CompletableFuture<Void> landAsync();
+
+  /**
+   * Flip without waiting for completion.
+   * @param telloFlip Type of the flip.
+   * @return Future completed when the flip is done.
+   */
+  CompletableFuture<Void> doFlipAsync(TelloFlip telloFlip);
+  
+  /**
+   * Move forward without waiting for completion.
+   * @param distance (20-500 cm).
+   * @return Future completed when the move is done.
+   */
+  CompletableFuture<Void> forwardAsync(Integer distance);
+
+  /**
+   * Move backward without waiting for completion.
+   * @param distance (20-500 cm).
+   * @return Future completed when the move is done.
+   */
+  CompletableFuture<Void> backwardAsync(Integer distance);
+
+  /**
+   * Move right without waiting for completion.
+   * @param distance (20-500 cm).
+   * @return Future completed when the move is done.
+   */
+  CompletableFuture<Void> rightAsync(Integer distance);
+
+  /**
+   * Move left without waiting for completion.
+   * @param distance (20-500 cm).
+   * @return Future completed when the move is done.
+   */
+  CompletableFuture<Void> leftAsync(Integer distance);
+
+  /**
+   * Move up without waiting for completion.
+   * @param distance (20-500 cm).
+   * @return Future completed when the move is done.
+   */
+  CompletableFuture<Void> upAsync(Integer distance);
+
+  /**
+   * Move down without waiting for completion.
+   * @param distance (20-500 cm).
+   * @return Future completed when the move is done.
+   */
+  CompletableFuture<Void> downAsync(Integer distance);
+
+  /**
+   * Rotate right without waiting for completion.
+   * @param angle (0-3600 deg).
+   * @return Future completed when the rotation is done.
+   */
+  CompletableFuture<Void> rotateRightAsync(Integer angle);
+
+  /**
+   * Rotate left without waiting for completion.
+   * @param angle (0-3600 deg).
+   * @return Future completed when the rotation is done.
+   */
+  CompletableFuture<Void> rotateLeftAsync(Integer angle);
+  
+  /**
+   * Fly to these offsets from current position without waiting for completion.
+   * @param x X axis offset (20-500 cm).
+   * @param y Y axis offset (20-500 cm).
+   * @param z Z axis offset (20-500 cm).
+   * @param speed Speed of movement (10-100 cm/s).
+   * @return Future completed when the move is done.
+   */
+  CompletableFuture<Void> goToAsync(Integer x, Integer y, Integer z, Integer speed);
+
+  /**
+   * Stop drone motion without waiting for completion.
+   * @return Future completed when the drone is hovering.
+   */
+  CompletableFuture<Void> stopAsync();
+  
+  /**
+   * Get current battery level without waiting for the reply.
+   * @return Future completed with the battery level %.
+   */
+  CompletableFuture<Integer> getBatteryAsync();
+  
+  /**
+   * Get drone height without waiting for the reply.
+   * @return Future completed with the height (0-3000 cm).
+   */
+  CompletableFuture<Integer> getHeightAsync();
+  
+  /**
+   * Get flight time without waiting for the reply.
+   * @return Future completed with the flight time in seconds.
+   */
+  CompletableFuture<Integer> getTimeAsync();
+  
+  /**
+   * Get distance from TOF without waiting for the reply.
+   * @return Future completed with the distance (30-1000 cm).
+   */
+  CompletableFuture<Double> getTofAsync();
+  
   /**
    * Return the TelloDrone instance maintained by TelloControl.
    * @return The drone instance.
@@ -0,0 +1,61 @@
+package tellolib.drone;
+
+/**
+ * Enum describing the numeric status values kept in the telemetry history.
+ */
+public enum TelemetryField 
+{
+  BATTERY,
+  HEIGHT,
+  TIME,
+  TEMP,
+  BAROMETER,
+  TOF,
+  PITCH,
+  ROLL,
+  YAW,
+  ACCELERATION_X,
+  ACCELERATION_Y,
+  ACCELERATION_Z,
+  VELOCITY_X,
+  VELOCITY_Y,
+  VELOCITY_Z;
+  
+  /**
+   * Tells if the field is an angle in degrees that wraps at +/-180.
+   * @return True for pitch, roll and yaw.
+   */
+  public boolean isAngle()
+  {
+    return this == PITCH || this == ROLL || this == YAW;
+  }
+  
+  /**
+   * Get the value of this field from a snapshot.
+   * @param telemetry The snapshot.
+   * @return Field value.
+   */
+  public double valueOf(TelemetrySnapshot telemetry)
+  {
+    switch (this)
+    {
+      case BATTERY: return telemetry.battery;
+      case HEIGHT: return telemetry.height;
+      case TIME: return telemetry.time;
+      case TEMP: return telemetry.temp;
+      case BAROMETER: return telemetry.barometer;
+      case TOF: return telemetry.tof;
+      case PITCH: return telemetry.pitch;
+      case ROLL: return telemetry.roll;
+      case YAW: return telemetry.yaw;
+      case ACCELERATION_X: return telemetry.accelerationX;
+      case ACCELERATION_Y: return telemetry.accelerationY;
+      case ACCELERATION_Z: return telemetry.accelerationZ;
+      case VELOCITY_X: return telemetry.velocityX;
+      case VELOCITY_Y: return telemetry.velocityY;
+      case VELOCITY_Z: return telemetry.velocityZ;
+    }
+    
+    return 0;
+  }
+}
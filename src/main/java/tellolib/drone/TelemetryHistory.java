@@ -0,0 +1,298 @@
+package tellolib.drone;
+
+/**
+ * Fixed capacity history of the status values received from the drone. Each
+ * status update adds one sample, the oldest sample is dropped when the history
+ * is full. Values are held in primitive arrays, one per field, and queries only
+ * visit the samples inside the requested time window, so nothing is boxed or
+ * allocated by adding or querying samples.
+ * <p>
+ * Samples are added by the status monitor thread and may be queried from any
+ * thread. A query that is overtaken by the writer while reading retries.
+ */
+public class TelemetryHistory
+{
+  private static final TelemetryField[] FIELDS = TelemetryField.values();
+  private static final int FIELD_COUNT = FIELDS.length;
+
+  private static final int MEAN = 0, MIN = 1, MAX = 2, RATE = 3;
+
+  private final int     capacity;
+  private final long[]  timestamps;
+
+  // Field major: the samples of field f are values[f * capacity + slot].
+  private final double[] values;
+
+  // Number of samples ever added. Sample n is held in slot n % capacity.
+  private volatile long count;
+
+  /**
+   * Create a history.
+   * @param capacity Maximum number of samples kept.
+   */
+  public TelemetryHistory(int capacity)
+  {
+    if (capacity < 2) throw new IllegalArgumentException("capacity must be at least 2");
+
+    this.capacity = capacity;
+
+    timestamps = new long[capacity];
+    values = new double[capacity * FIELD_COUNT];
+  }
+
+  /**
+   * Add a sample. Must only be called from one thread.
+   * @param telemetry Snapshot holding the sample values and timestamp.
+   */
+  public void add(TelemetrySnapshot telemetry)
+  {
+    long  n = count;
+    int   slot = (int) (n % capacity);
+
+    timestamps[slot] = telemetry.timestamp;
+
+    for (TelemetryField field : FIELDS)
+      values[field.ordinal() * capacity + slot] = field.valueOf(telemetry);
+
+    count = n + 1;
+  }
+
+  /**
+   * Get the maximum number of samples kept.
+   * @return Capacity.
+   */
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  /**
+   * Get the number of samples currently held.
+   * @return Sample count, at most capacity.
+   */
+  public int size()
+  {
+    return (int) Math.min(count, capacity);
+  }
+
+  /**
+   * Get the most recent value of a field.
+   * @param field Field to return.
+   * @return The value or NaN if no samples.
+   */
+  public double latest(TelemetryField field)
+  {
+    while (true)
+    {
+      long n = count;
+
+      if (n == 0) return Double.NaN;
+
+      double value = values[field.ordinal() * capacity + (int) ((n - 1) % capacity)];
+
+      if (count - (n - 1) < capacity) return value;
+    }
+  }
+
+  /**
+   * Copy the samples of a field received at or after a point in time, oldest
+   * first. If there are more samples than room in the arrays the most recent
+   * ones are copied.
+   * @param field Field to copy.
+   * @param since Start of the period, System.nanoTime() units.
+   * @param sampleTimes Receives the sample timestamps.
+   * @param sampleValues Receives the sample values.
+   * @return Number of samples copied.
+   */
+  public int samplesSince(TelemetryField field, long since, long[] sampleTimes, double[] sampleValues)
+  {
+    int room = Math.min(sampleTimes.length, sampleValues.length);
+    int base = field.ordinal() * capacity;
+
+    while (true)
+    {
+      long  n = count;
+      long  first = firstSince(n, since);
+      int   samples = (int) Math.min(n - first, room);
+
+      first = n - samples;
+
+      for (int i = 0; i < samples; i++)
+      {
+        int slot = (int) ((first + i) % capacity);
+
+        sampleTimes[i] = timestamps[slot];
+        sampleValues[i] = values[base + slot];
+      }
+
+      if (samples == 0 || count - first < capacity) return samples;
+    }
+  }
+
+  /**
+   * Count the samples received at or after a point in time.
+   * @param since Start of the period, System.nanoTime() units.
+   * @return Number of samples.
+   */
+  public int countSince(long since)
+  {
+    long n = count;
+
+    return (int) (n - firstSince(n, since));
+  }
+
+  /**
+   * Get the mean of a field over the last part of the history. Angles are
+   * averaged across the +/-180 wrap.
+   * @param field Field to average.
+   * @param windowMillis Length of the window ending now, in milliseconds.
+   * @return Mean value or NaN if no samples in the window.
+   */
+  public double mean(TelemetryField field, long windowMillis)
+  {
+    return aggregate(field, windowMillis, MEAN);
+  }
+
+  /**
+   * Get the minimum of a field over the last part of the history.
+   * @param field Field to examine.
+   * @param windowMillis Length of the window ending now, in milliseconds.
+   * @return Minimum value or NaN if no samples in the window.
+   */
+  public double min(TelemetryField field, long windowMillis)
+  {
+    return aggregate(field, windowMillis, MIN);
+  }
+
+  /**
+   * Get the maximum of a field over the last part of the history.
+   * @param field Field to examine.
+   * @param windowMillis Length of the window ending now, in milliseconds.
+   * @return Maximum value or NaN if no samples in the window.
+   */
+  public double max(TelemetryField field, long windowMillis)
+  {
+    return aggregate(field, windowMillis, MAX);
+  }
+
+  /**
+   * Get the rate of change of a field per second over the last part of the
+   * history, as the least squares slope of the samples in the window. Angles
+   * are unwrapped across the +/-180 wrap.
+   * @param field Field to examine.
+   * @param windowMillis Length of the window ending now, in milliseconds.
+   * @return Change per second or NaN if less than 2 samples in the window.
+   */
+  public double rate(TelemetryField field, long windowMillis)
+  {
+    return aggregate(field, windowMillis, RATE);
+  }
+
+  /**
+   * Get the rate of rotation over the last part of the history.
+   * @param windowMillis Length of the window ending now, in milliseconds.
+   * @return Degrees per second, positive to the right, or NaN if less than 2
+   * samples in the window.
+   */
+  public double yawRate(long windowMillis)
+  {
+    return rate(TelemetryField.YAW, windowMillis);
+  }
+
+  private double aggregate(TelemetryField field, long windowMillis, int operation)
+  {
+    long    since = System.nanoTime() - windowMillis * 1000000L;
+    int     base = field.ordinal() * capacity;
+    boolean angle = field.isAngle();
+
+    while (true)
+    {
+      long  n = count;
+      long  first = firstSince(n, since);
+      int   samples = (int) (n - first);
+
+      if (samples == 0 || (operation == RATE && samples < 2)) return Double.NaN;
+
+      long    timeBase = timestamps[(int) (first % capacity)];
+      double  previous = values[base + (int) (first % capacity)];
+      double  sum = 0, sumX = 0, sumXY = 0, sumXX = 0;
+      double  min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+      double  unwrap = 0;
+
+      for (long i = first; i < n; i++)
+      {
+        int     slot = (int) (i % capacity);
+        double  value = values[base + slot];
+
+        if (operation == MIN || operation == MAX)
+        {
+          if (value < min) min = value;
+          if (value > max) max = value;
+          continue;
+        }
+
+        // Unwrap angles so a step from 179 to -179 counts as 2 degrees.
+
+        if (angle)
+        {
+          double step = value - previous;
+
+          if (step > 180) unwrap -= 360;
+          else if (step < -180) unwrap += 360;
+
+          previous = value;
+          value += unwrap;
+        }
+
+        double x = (timestamps[slot] - timeBase) / 1e9;
+
+        sum += value;
+        sumX += x;
+        sumXY += x * value;
+        sumXX += x * x;
+      }
+
+      // Oldest sample read must not have been overwritten while reading.
+
+      if (count - first >= capacity) continue;
+
+      switch (operation)
+      {
+        case MIN: return min;
+        case MAX: return max;
+
+        case MEAN:
+          double mean = sum / samples;
+
+          if (angle)
+          {
+            mean %= 360;
+
+            if (mean >= 180) mean -= 360;
+            else if (mean < -180) mean += 360;
+          }
+
+          return mean;
+
+        default:
+          double divisor = samples * sumXX - sumX * sumX;
+
+          if (divisor == 0) return Double.NaN;
+
+          return (samples * sumXY - sumX * sum) / divisor;
+      }
+    }
+  }
+
+  // Find the index of the oldest sample held with a timestamp at or after
+  // since. Timestamps only increase so search back from the newest.
+  private long firstSince(long n, long since)
+  {
+    long oldest = Math.max(0, n - capacity + 1);
+    long first = n;
+
+    while (first > oldest && timestamps[(int) ((first - 1) % capacity)] - since >= 0) first--;
+
+    return first;
+  }
+}
@@ -0,0 +1,209 @@
+package tellolib.drone;
+
+/**
+ * Consistent view of the drone status values at one point in time. A new
+ * snapshot is published by TelloDrone for each status packet received (and
+ * each value recorded by a read command) and is never changed after that, so
+ * it can be read from any thread without locking and without seeing values
+ * from two different packets.
+ */
+public final class TelemetrySnapshot
+{
+  // Fields are only written by TelloDrone while building a snapshot, before it
+  // is published.
+
+  long    sequence, timestamp;
+  int     battery, height, time, temp, missionPadId;
+  double  barometer, tof;
+  int     pitch, roll, yaw;
+  double  accelerationX, accelerationY, accelerationZ;
+  double  velocityX, velocityY, velocityZ;
+  int     missionPadX, missionPadY, missionPadZ;
+  int     missionPadPitch, missionPadRoll, missionPadYaw;
+
+  TelemetrySnapshot()
+  {
+  }
+
+  // Copy constructor used to build the next snapshot from the current one.
+  TelemetrySnapshot(TelemetrySnapshot other)
+  {
+    sequence = other.sequence;
+    timestamp = other.timestamp;
+    battery = other.battery;
+    height = other.height;
+    time = other.time;
+    temp = other.temp;
+    missionPadId = other.missionPadId;
+    barometer = other.barometer;
+    tof = other.tof;
+    pitch = other.pitch;
+    roll = other.roll;
+    yaw = other.yaw;
+    accelerationX = other.accelerationX;
+    accelerationY = other.accelerationY;
+    accelerationZ = other.accelerationZ;
+    velocityX = other.velocityX;
+    velocityY = other.velocityY;
+    velocityZ = other.velocityZ;
+    missionPadX = other.missionPadX;
+    missionPadY = other.missionPadY;
+    missionPadZ = other.missionPadZ;
+    missionPadPitch = other.missionPadPitch;
+    missionPadRoll = other.missionPadRoll;
+    missionPadYaw = other.missionPadYaw;
+  }
+
+  /**
+   * Sequence number of the status packet this snapshot holds. Incremented for
+   * each status packet recorded, so comparing with a previously seen value
+   * tells if a new one arrived. Values set from read command replies keep it.
+   * @return Sequence number, 0 if no status recorded yet.
+   */
+  public long getSequence()
+  {
+    return sequence;
+  }
+
+  /**
+   * Time the values in this snapshot were received.
+   * @return Timestamp in System.nanoTime() units.
+   */
+  public long getTimestamp()
+  {
+    return timestamp;
+  }
+
+  /**
+   * @return Battery level 0-100%.
+   */
+  public int getBattery()
+  {
+    return battery;
+  }
+
+  /**
+   * @return Height in cm.
+   */
+  public int getHeight()
+  {
+    return height;
+  }
+
+  /**
+   * @return Flight time in seconds.
+   */
+  public int getTime()
+  {
+    return time;
+  }
+
+  /**
+   * @return Temperature in degrees C.
+   */
+  public int getTemp()
+  {
+    return temp;
+  }
+
+  /**
+   * @return Barometric pressure.
+   */
+  public double getBarometer()
+  {
+    return barometer;
+  }
+
+  /**
+   * @return TOF distance.
+   */
+  public double getTof()
+  {
+    return tof;
+  }
+
+  /**
+   * @return Pitch in degrees.
+   */
+  public int getPitch()
+  {
+    return pitch;
+  }
+
+  /**
+   * @return Roll in degrees.
+   */
+  public int getRoll()
+  {
+    return roll;
+  }
+
+  /**
+   * @return Raw yaw in degrees.
+   */
+  public int getYaw()
+  {
+    return yaw;
+  }
+
+  /**
+   * @return New array of pitch, roll, yaw in degrees.
+   */
+  public int[] getAttitude()
+  {
+    return new int[] {pitch, roll, yaw};
+  }
+
+  /**
+   * @return New array of acceleration x, y, z.
+   */
+  public double[] getAcceleration()
+  {
+    return new double[] {accelerationX, accelerationY, accelerationZ};
+  }
+
+  /**
+   * @return New array of velocity x, y, z in cm/s.
+   */
+  public double[] getVelocity()
+  {
+    return new double[] {velocityX, velocityY, velocityZ};
+  }
+
+  /**
+   * @return Mission pad id 1-8 or negative if no pad detected.
+   */
+  public int getMissionPadId()
+  {
+    return missionPadId;
+  }
+
+  /**
+   * @return New array of mission pad x, y, z.
+   */
+  public int[] getMissionPadxyz()
+  {
+    return new int[] {missionPadX, missionPadY, missionPadZ};
+  }
+
+  /**
+   * @return New array of mission pad pitch, roll, yaw.
+   */
+  public int[] getMissionPadpry()
+  {
+    return new int[] {missionPadPitch, missionPadRoll, missionPadYaw};
+  }
+
+  @Override
+  public String toString()
+  {
+    return "TelemetrySnapshot{"
+        + "sequence=" + sequence
+        + ", battery=" + battery
+        + ", height=" + height
+        + ", pitch=" + pitch
+        + ", roll=" + roll
+        + ", yaw=" + yaw
+        + '}';
+  }
+}
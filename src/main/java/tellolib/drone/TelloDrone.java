@@ -1,5 +1,8 @@
 package tellolib.drone;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
 import org.opencv.core.Core;
 
 import tellolib.communication.TelloConnection;
@@ -20,28 +23,56 @@ public class TelloDrone implements TelloDroneInterface
    */
   public static final Integer UDP_PORT = 8889, UDP_STATUS_PORT = 8890, UDP_VIDEO_PORT = 11111;
   
-  private int				battery, height, speed, time, temp, attitude[];
-  private int				missionPadId, missionPadxyz[], missionPadpry[];
-  private int				heading, headingZeroOffset = 9999, yawZeroOffset = 9999;
-  private double			barometer, tof, acceleration[], velocity[];
+  /*
+   * Address and ports actually used to connect. Default to the values above
+   * or the tello.address, tello.port, tello.localPort, tello.statusPort and
+   * tello.videoPort system properties. Changed with setNetwork(), for instance
+   * to connect to a TelloSimulator. Must be set before connecting.
+   */
+  private static volatile String	ipAddress = System.getProperty("tello.address", IP_ADDRESS);
+  private static volatile int		udpPort = Integer.getInteger("tello.port", UDP_PORT);
+  private static volatile int		localUdpPort = Integer.getInteger("tello.localPort", UDP_PORT);
+  private static volatile int		udpStatusPort = Integer.getInteger("tello.statusPort", UDP_STATUS_PORT);
+  private static volatile int		udpVideoPort = Integer.getInteger("tello.videoPort", UDP_VIDEO_PORT);
+  
+  private int				speed;
+  private volatile int		headingZeroOffset = 9999, yawZeroOffset = 9999;
   private String			sn, sdk;
   private TelloConnection 	telloConnection;
   private TelloMode 		telloMode;
   private boolean			missionModeEnabled;
+  
+  /*
+   * Latest status values. Replaced as a whole for each update so readers
+   * always see values from a single update.
+   */
+  private final AtomicReference<TelemetrySnapshot> telemetry = 
+		  new AtomicReference<TelemetrySnapshot>(new TelemetrySnapshot());
+  
+  /*
+   * Recent status updates, about 100 seconds at the normal status rate.
+   */
+  private final TelemetryHistory telemetryHistory = new TelemetryHistory(1024);
 
-  // Private constructor, holder class and getInstance() implement this
-  // class as a singleton.
-	
-  private TelloDrone() 
+  // Holder class and getInstance() provide a global instance for the drone
+  // at the network address above. Each drone of a swarm has its own instance
+  // (see DroneSession).
+
+  /**
+   * Create state for a drone other than the global one, for instance one of
+   * several flown together. Does not load the OpenCV library, which the 
+   * global instance does.
+   */
+  public TelloDrone() 
   {
-	System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
-	
     telloConnection = TelloConnection.DISCONNECTED;
     telloMode = TelloMode.NORMAL;
   }
   
   private static class SingletonHolder 
   {
+    static { System.loadLibrary(Core.NATIVE_LIBRARY_NAME); }
+	  
     public static final TelloDrone INSTANCE = new TelloDrone();
   }
 	
@@ -54,16 +85,79 @@ public class TelloDrone implements TelloDroneInterface
     return SingletonHolder.INSTANCE;
   }
 
+  /**
+   * Set the address and ports used to connect to the drone. Must be called
+   * before connecting.
+   * @param address Drone IP address or host name.
+   * @param port Drone UDP port that accepts commands.
+   * @param localPort Local UDP port commands are sent from and replies received on.
+   * @param statusPort Local UDP port status packets are received on.
+   * @param videoPort Local UDP port the video stream is received on.
+   */
+  public static void setNetwork(String address, int port, int localPort, int statusPort, int videoPort)
+  {
+	ipAddress = address;
+	udpPort = port;
+	localUdpPort = localPort;
+	udpStatusPort = statusPort;
+	udpVideoPort = videoPort;
+  }
+  
+  /**
+   * Get the drone IP address in use.
+   * @return IP address or host name.
+   */
+  public static String getIpAddress()
+  {
+	return ipAddress;
+  }
+  
+  /**
+   * Get the drone command port in use.
+   * @return UDP port.
+   */
+  public static int getUdpPort()
+  {
+	return udpPort;
+  }
+  
+  /**
+   * Get the local port commands are sent from.
+   * @return UDP port.
+   */
+  public static int getLocalUdpPort()
+  {
+	return localUdpPort;
+  }
+  
+  /**
+   * Get the local port status packets are received on.
+   * @return UDP port.
+   */
+  public static int getUdpStatusPort()
+  {
+	return udpStatusPort;
+  }
+  
+  /**
+   * Get the local port the video stream is received on.
+   * @return UDP port.
+   */
+  public static int getUdpVideoPort()
+  {
+	return udpVideoPort;
+  }
+
   @Override
   public Integer getBattery() 
   {
-    return battery;
+    return telemetry.get().battery;
   }
 
   @Override
   public void setBattery(Integer battery) 
   {
-    this.battery = battery;
+    updateTelemetry(t -> t.battery = battery);
   }
 
   @Override
@@ -81,13 +175,13 @@ public class TelloDrone implements TelloDroneInterface
   @Override
   public Integer getTime() 
   {
-    return time;
+    return telemetry.get().time;
   }
 
   @Override
   public void setTime(Integer time) 
   {
-    this.time = time;
+    updateTelemetry(t -> t.time = time);
   }
 
   @Override
@@ -117,37 +211,37 @@ public class TelloDrone implements TelloDroneInterface
   @Override
   public void setTemp( int temp )
   {
-	this.temp = temp;
+	updateTelemetry(t -> t.temp = temp);
   }
 
   @Override
   public int getTemp()
   {
-	return temp;
+	return telemetry.get().temp;
   }
 
   @Override
   public void setBarometer( double barometer )
   {
-	this.barometer = barometer;
+	updateTelemetry(t -> t.barometer = barometer);
   }
 
   @Override
   public double getBarometer()
   {
-	return barometer;
+	return telemetry.get().barometer;
   }
 
   @Override
   public void setTof( double tof )
   {
-	this.tof = tof;
+	updateTelemetry(t -> t.tof = tof);
   }
 
   @Override
   public double getTof()
   {
-	return tof;
+	return telemetry.get().tof;
   }
 
   @Override
@@ -165,39 +259,49 @@ public class TelloDrone implements TelloDroneInterface
   @Override
   public void setHeight( int height )
   {
-	this.height = height;
+	updateTelemetry(t -> t.height = height);
   }
 
   @Override
   public int getHeight()
   {
-	return height;
+	return telemetry.get().height;
   }
 
   @Override
   public void setAttitude( int[] pry )
   {
-	attitude = pry;
+	updateTelemetry(t -> 
+	{
+		t.pitch = pry[0];
+		t.roll = pry[1];
+		t.yaw = pry[2];
+	});
 	
-	updateHeading();
+	initHeading();
   }
 
   @Override
   public int[] getAttitude()
   {
-	return attitude;
+	return telemetry.get().getAttitude();
   }
 
   @Override
   public void setAcceleration( double[] xyz )
   {
-	acceleration = xyz;
+	updateTelemetry(t -> 
+	{
+		t.accelerationX = xyz[0];
+		t.accelerationY = xyz[1];
+		t.accelerationZ = xyz[2];
+	});
   }
 
   @Override
   public double[] getAcceleration()
   {
-	return acceleration;
+	return telemetry.get().getAcceleration();
   }
 
   @Override
@@ -215,13 +319,18 @@ public class TelloDrone implements TelloDroneInterface
   @Override
   public void setVelocity( double[] xyz )
   {
-    this.velocity = xyz;
+	updateTelemetry(t -> 
+	{
+		t.velocityX = xyz[0];
+		t.velocityY = xyz[1];
+		t.velocityZ = xyz[2];
+	});
   }
 
   @Override
   public double[] getVelocity()
   {
-	return velocity;
+	return telemetry.get().getVelocity();
   }
 
   @Override
@@ -239,67 +348,152 @@ public class TelloDrone implements TelloDroneInterface
   @Override
   public void setMissionPadId( int id )
   {
-	missionPadId = id;
+	updateTelemetry(t -> t.missionPadId = id);
   }
 
   @Override
   public int getMissionPadId()
   {
-	return missionPadId;
+	return telemetry.get().missionPadId;
   }
 
   @Override
   public void setMissionPadxyz( int[] xyz )
   {
-    missionPadxyz = xyz;
+	updateTelemetry(t -> 
+	{
+		t.missionPadX = xyz[0];
+		t.missionPadY = xyz[1];
+		t.missionPadZ = xyz[2];
+	});
   }
 
   @Override
   public int[] getMissionPadxyz()
   {
-	return missionPadxyz;
+	return telemetry.get().getMissionPadxyz();
   }
 
   @Override
   public void setMissionPadpry( int[] pry )
   {
-    missionPadpry = pry;	
+	updateTelemetry(t -> 
+	{
+		t.missionPadPitch = pry[0];
+		t.missionPadRoll = pry[1];
+		t.missionPadYaw = pry[2];
+	});
   }
 
   @Override
   public int[] getMissionPadpry()
   {
-	return missionPadpry;
+	return telemetry.get().getMissionPadpry();
+  }
+
+  @Override
+  public TelemetrySnapshot getTelemetry()
+  {
+    return telemetry.get();
+  }
+
+  @Override
+  public TelemetryHistory getTelemetryHistory()
+  {
+    return telemetryHistory;
+  }
+
+  /**
+   * Publish the values decoded from a status packet as a new telemetry
+   * snapshot.
+   * @param status Parser holding the decoded status values.
+   * @param timestamp Time the packet was received, System.nanoTime() units.
+   */
+  void updateStatus(TelloStatusParser status, long timestamp)
+  {
+    TelemetrySnapshot current, next;
+    
+    do
+    {
+      current = telemetry.get();
+      next = new TelemetrySnapshot(current);
+      
+      next.battery = status.battery;
+      next.time = status.time;
+      next.temp = status.temp;
+      next.tof = status.tof;
+      next.height = status.height;
+      next.barometer = status.barometer;
+      next.missionPadId = status.missionPadId;
+      next.pitch = status.attitude[0];
+      next.roll = status.attitude[1];
+      next.yaw = status.attitude[2];
+      next.accelerationX = status.acceleration[0];
+      next.accelerationY = status.acceleration[1];
+      next.accelerationZ = status.acceleration[2];
+      next.velocityX = status.velocity[0];
+      next.velocityY = status.velocity[1];
+      next.velocityZ = status.velocity[2];
+      next.missionPadX = status.missionPadxyz[0];
+      next.missionPadY = status.missionPadxyz[1];
+      next.missionPadZ = status.missionPadxyz[2];
+      next.missionPadPitch = status.missionPadpry[0];
+      next.missionPadRoll = status.missionPadpry[1];
+      next.missionPadYaw = status.missionPadpry[2];
+      next.sequence = current.sequence + 1;
+      next.timestamp = timestamp;
+    } while (!telemetry.compareAndSet(current, next));
+    
+    telemetryHistory.add(next);
+    
+    initHeading();
+  }
+  
+  // Publish a copy of the current snapshot with one change applied. Used by
+  // the setters, which may be called from any thread, so retry if another
+  // update was published in the meantime. The sequence number is kept, it
+  // counts status packets.
+  private void updateTelemetry(Consumer<TelemetrySnapshot> change)
+  {
+    TelemetrySnapshot current, next;
+    
+    do
+    {
+      current = telemetry.get();
+      next = new TelemetrySnapshot(current);
+      change.accept(next);
+      next.timestamp = System.nanoTime();
+    } while (!telemetry.compareAndSet(current, next));
   }
 
   @Override
   public int getRawYaw()
   {
-	return getAttitude()[2];
+	return telemetry.get().yaw;
   }
   
-  private void updateHeading()
+  // Use the first attitude recorded as heading and yaw zero.
+  private void initHeading()
   {
-	  int yaw = getRawYaw();
-	  
 	  if (headingZeroOffset == 9999) 
 	  {
 		  resetHeadingZero();
 		  resetYawZero();
 	  }
-
-	  yaw -= headingZeroOffset;
-	  
-	  if (yaw < 0)
-		  heading = 360 + yaw;
-	  else
-		  heading = yaw;
   }
   
   @Override
   public int getHeading()
   {
-	  return heading;
+	  // No attitude recorded yet to take zero from.
+	  if (headingZeroOffset == 9999) return 0;
+	  
+	  int yaw = getRawYaw() - headingZeroOffset;
+	  
+	  if (yaw < 0)
+		  return 360 + yaw;
+	  else
+		  return yaw;
   }
   
   @Override
@@ -311,6 +505,8 @@ public class TelloDrone implements TelloDroneInterface
   @Override
   public int getYaw()
   {
+	  if (yawZeroOffset == 9999) return 0;
+	  
 	  return getRawYaw() - yawZeroOffset;
   }
 
@@ -319,4 +515,4 @@ public class TelloDrone implements TelloDroneInterface
   {
 	  yawZeroOffset = getRawYaw();
   }
-}
\ No newline at end of file
+}
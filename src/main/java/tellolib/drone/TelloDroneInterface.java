@@ -136,7 +136,7 @@ public interface TelloDroneInterface
 	/**
 	 * Get the last recorded attitude vectors.
 	 * Only valid when status monitoring enabled.
-	 * @return Attitude vectors pitch, roll, yaw in degrees.
+	 * @return New array of attitude vectors pitch, roll, yaw in degrees.
 	 */
   	int[] getAttitude();
 
@@ -149,7 +149,7 @@ public interface TelloDroneInterface
 	/**
 	 * Get the last recorded acceleration vectors.
 	 * Only valid when status monitoring enabled.
-	 * @return Acceleration vectors x,y,z in cm/s/s.
+	 * @return New array of acceleration vectors x,y,z in cm/s/s.
 	 */
   	double[] getAcceleration();
 
@@ -163,7 +163,7 @@ public interface TelloDroneInterface
 	/**
 	 * Get the last recorded velocity vectors.
 	 * Only valid when status monitoring enabled.
-	 * @return Velocity vectors x,y,z in cm/s.
+	 * @return New array of velocity vectors x,y,z in cm/s.
 	 */
   	double[] getVelocity();
 
@@ -235,6 +235,23 @@ public interface TelloDroneInterface
   	 */
   	int[] getMissionPadpry();
   	
+  	/**
+  	 * Get all of the last recorded status values as one consistent snapshot.
+  	 * The snapshot is immutable and replaced, not changed, by each status
+  	 * update, so it can be read from any thread. Compare its sequence number 
+  	 * with a previous snapshot to see if a new update has arrived.
+  	 * @return The latest telemetry snapshot.
+  	 */
+  	TelemetrySnapshot getTelemetry();
+  	
+  	/**
+  	 * Get the history of recent status updates for queries over a time
+  	 * window, such as mean height or yaw rate.
+	 * Only valid when status monitoring enabled.
+  	 * @return The telemetry history.
+  	 */
+  	TelemetryHistory getTelemetryHistory();
+  	
   	/**
   	 * Return last recorded raw yaw value. raw yaw starts at zero when
   	 * drone turned on with whatever direction drone is pointing
@@ -0,0 +1,241 @@
+package tellolib.drone;
+
+/**
+ * Decodes the key:value;key:value status packets the Tello sends on the
+ * status port. The packet bytes are scanned directly: keys are matched by
+ * byte comparison and numbers decoded without creating Strings, and the
+ * results are held in preallocated fields, so parsing a packet creates no
+ * garbage. Applying the results to the drone publishes a single
+ * TelemetrySnapshot. One parser instance should be used by one thread at a time.
+ */
+public class TelloStatusParser
+{
+  // Keys recognized in the status packet. The index of each key in KEYS is
+  // the matching constant below.
+
+  private static final int MID = 0, X = 1, Y = 2, Z = 3, MPRY = 4, PITCH = 5, ROLL = 6, YAW = 7,
+                           VGX = 8, VGY = 9, VGZ = 10, TEMPL = 11, TEMPH = 12, TOF = 13, H = 14,
+                           BAT = 15, BARO = 16, TIME = 17, AGX = 18, AGY = 19, AGZ = 20;
+
+  private static final byte[][] KEYS =
+  {
+    ascii("mid"), ascii("x"), ascii("y"), ascii("z"), ascii("mpry"), ascii("pitch"), ascii("roll"),
+    ascii("yaw"), ascii("vgx"), ascii("vgy"), ascii("vgz"), ascii("templ"), ascii("temph"), ascii("tof"),
+    ascii("h"), ascii("bat"), ascii("baro"), ascii("time"), ascii("agx"), ascii("agy"), ascii("agz")
+  };
+
+  private static final double[] FRACTION_SCALE =
+  {
+    1, 1e-1, 1e-2, 1e-3, 1e-4, 1e-5, 1e-6, 1e-7, 1e-8, 1e-9
+  };
+
+  // Values decoded from the last packet. Scalars not present in a packet keep
+  // their previous value, vectors are reset to zero for each packet.
+
+  int     battery, height, time, temp, tof, missionPadId;
+  double  barometer;
+  final int     attitude[] = new int[3], missionPadxyz[] = new int[3], missionPadpry[] = new int[3];
+  final double  acceleration[] = new double[3], velocity[] = new double[3];
+
+  // Parse position, the end of the current value is returned through this
+  // field by the number decoders.
+  private int position;
+
+  /**
+   * Parse a status packet.
+   * @param data Buffer holding the packet.
+   * @param offset Start of the packet in the buffer.
+   * @param length Length of the packet.
+   * @return True if any status value was decoded, false if not.
+   */
+  public boolean parse(byte[] data, int offset, int length)
+  {
+    int     end = offset + length;
+    boolean found = false;
+
+    for (int i = 0; i < 3; i++)
+    {
+      attitude[i] = missionPadxyz[i] = missionPadpry[i] = 0;
+      acceleration[i] = velocity[i] = 0;
+    }
+
+    position = offset;
+
+    while (position < end)
+    {
+      // Locate key, skipping white space (trailing \r\n).
+
+      while (position < end && data[position] <= ' ') position++;
+
+      int keyStart = position;
+
+      while (position < end && data[position] != ':' && data[position] != ';') position++;
+
+      if (position >= end || data[position] == ';')
+      {
+        position++;
+        continue;
+      }
+
+      int key = findKey(data, keyStart, position - keyStart);
+
+      position++;   // skip ':'.
+
+      if (decodeValue(key, data, end)) found = true;
+
+      // Skip whatever is left of the value up to the next pair.
+
+      while (position < end && data[position] != ';') position++;
+
+      position++;
+    }
+
+    return found;
+  }
+
+  /**
+   * Publish the values decoded by the last call to parse() to the drone,
+   * time stamped now.
+   * @param drone Drone to update.
+   */
+  public void apply(TelloDrone drone)
+  {
+    apply(drone, System.nanoTime());
+  }
+
+  /**
+   * Publish the values decoded by the last call to parse() to the drone.
+   * @param drone Drone to update.
+   * @param timestamp Time the packet was received, System.nanoTime() units.
+   */
+  public void apply(TelloDrone drone, long timestamp)
+  {
+    drone.updateStatus(this, timestamp);
+  }
+
+  private boolean decodeValue(int key, byte[] data, int end)
+  {
+    switch (key)
+    {
+      case BAT: battery = parseInt(data, end); return true;
+      case TIME: time = parseInt(data, end); return true;
+      case TEMPH: temp = parseInt(data, end); return true;
+      case TOF: tof = parseInt(data, end); return true;
+      case H: height = parseInt(data, end); return true;
+      case BARO: barometer = parseDouble(data, end); return true;
+      case PITCH: attitude[0] = parseInt(data, end); return true;
+      case ROLL: attitude[1] = parseInt(data, end); return true;
+      case YAW: attitude[2] = parseInt(data, end); return true;
+      case AGX: acceleration[0] = parseDouble(data, end); return true;
+      case AGY: acceleration[1] = parseDouble(data, end); return true;
+      case AGZ: acceleration[2] = parseDouble(data, end); return true;
+      case VGX: velocity[0] = parseDouble(data, end); return true;
+      case VGY: velocity[1] = parseDouble(data, end); return true;
+      case VGZ: velocity[2] = parseDouble(data, end); return true;
+      case MID: missionPadId = parseInt(data, end); return true;
+      case X: missionPadxyz[0] = parseInt(data, end); return true;
+      case Y: missionPadxyz[1] = parseInt(data, end); return true;
+      case Z: missionPadxyz[2] = parseInt(data, end); return true;
+
+      case MPRY:
+        for (int i = 0; i < 3; i++)
+        {
+          missionPadpry[i] = parseInt(data, end);
+
+          if (position < end && data[position] == ',') position++;
+        }
+        return true;
+
+      default: return false;
+    }
+  }
+
+  private static int findKey(byte[] data, int start, int length)
+  {
+    for (int k = 0; k < KEYS.length; k++)
+    {
+      byte[] key = KEYS[k];
+
+      if (key.length != length) continue;
+
+      int i = 0;
+
+      while (i < length && key[i] == data[start + i]) i++;
+
+      if (i == length) return k;
+    }
+
+    return -1;
+  }
+
+  // Decode a signed integer starting at position, leaving position at the first
+  // byte after the number. Any fraction is skipped.
+  private int parseInt(byte[] data, int end)
+  {
+    while (position < end && data[position] == ' ') position++;
+
+    boolean negative = false;
+    int     value = 0;
+
+    if (position < end && (data[position] == '-' || data[position] == '+'))
+      negative = data[position++] == '-';
+
+    while (position < end && data[position] >= '0' && data[position] <= '9')
+      value = value * 10 + (data[position++] - '0');
+
+    if (position < end && data[position] == '.')
+    {
+      position++;
+
+      while (position < end && data[position] >= '0' && data[position] <= '9') position++;
+    }
+
+    return negative ? -value : value;
+  }
+
+  // Decode a signed decimal number starting at position, leaving position at
+  // the first byte after the number.
+  private double parseDouble(byte[] data, int end)
+  {
+    while (position < end && data[position] == ' ') position++;
+
+    boolean negative = false;
+    long    whole = 0, fraction = 0;
+    int     digits = 0;
+
+    if (position < end && (data[position] == '-' || data[position] == '+'))
+      negative = data[position++] == '-';
+
+    while (position < end && data[position] >= '0' && data[position] <= '9')
+      whole = whole * 10 + (data[position++] - '0');
+
+    if (position < end && data[position] == '.')
+    {
+      position++;
+
+      while (position < end && data[position] >= '0' && data[position] <= '9')
+      {
+        if (digits < FRACTION_SCALE.length - 1)
+        {
+          fraction = fraction * 10 + (data[position] - '0');
+          digits++;
+        }
+
+        position++;
+      }
+    }
+
+    double value = whole + fraction * FRACTION_SCALE[digits];
+
+    return negative ? -value : value;
+  }
+
+  private static byte[] ascii(String key)
+  {
+    byte[] bytes = new byte[key.length()];
+
+    for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) key.charAt(i);
+
+    return bytes;
+  }
+}
@@ -0,0 +1,284 @@
+package tellolib.flightlog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+/**
+ * Records the status packets received from the drone and the commands sent to it,
+ * with their responses and latency, to a compact binary flight log for later
+ * analysis or replay with FlightReplayer.
+ * <p>
+ * The log file is written through memory mapped segments preallocated in the
+ * file, so recording a packet is a memory copy. A background thread flushes
+ * the current segment to disk periodically.
+ * <p>
+ * File layout: a 32 byte header (magic, version, segment size, start time)
+ * followed by records. Each record starts with a type byte and the time in
+ * nanoseconds since the recording started:
+ * <pre>
+ * STATUS:  type, time(8), length(2), packet bytes
+ * COMMAND: type, time(8), outcome(1), latency us(4), length(2), command bytes,
+ *          length(2), response bytes
+ * </pre>
+ * A NEXT_SEGMENT record means the rest of the segment is unused and the log
+ * continues at the start of the next segment. A zero type byte marks the end
+ * of the log.
+ */
+public class FlightRecorder implements Closeable
+{
+	static final int	MAGIC = 0x544C4F47, VERSION = 1, HEADER_SIZE = 32;
+	static final byte	END = 0, STATUS = 1, COMMAND = 2, NEXT_SEGMENT = 3;
+
+	/**
+	 * Command outcome: a response was received.
+	 */
+	public static final int	RESPONSE = 0;
+
+	/**
+	 * Command outcome: command sent without waiting for a response.
+	 */
+	public static final int	NO_WAIT = 1;
+
+	/**
+	 * Command outcome: no response, the command timed out or failed to send.
+	 */
+	public static final int	FAILED = 2;
+
+	private static final int	MAX_TEXT = 1024, DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+	private final Logger		logger = Logger.getLogger("Tello");
+
+	private final RandomAccessFile	file;
+	private final FileChannel		channel;
+	private final int				segmentSize, syncInterval;
+	private final long				startNanos;
+	private volatile MappedByteBuffer	segment;
+	private long					segmentStart;
+	private long					statusCount, commandCount;
+	private Thread					syncThread;
+	private boolean					closed;
+
+	/**
+	 * Create a flight log file and start recording to it. Uses 1 MB segments
+	 * flushed to disk once a second.
+	 * @param fileName Log file to create. An existing file is overwritten.
+	 * @throws IOException
+	 */
+	public FlightRecorder(String fileName) throws IOException
+	{
+		this(fileName, DEFAULT_SEGMENT_SIZE, 1000);
+	}
+
+	/**
+	 * Create a flight log file and start recording to it.
+	 * @param fileName Log file to create. An existing file is overwritten.
+	 * @param segmentSize Size of the file segments mapped at a time, in bytes.
+	 * @param syncInterval Interval between flushes to disk in milliseconds.
+	 * @throws IOException
+	 */
+	public FlightRecorder(String fileName, int segmentSize, int syncInterval) throws IOException
+	{
+		if (segmentSize < HEADER_SIZE + 4 * MAX_TEXT) throw new IllegalArgumentException("segment size too small");
+
+		this.segmentSize = segmentSize;
+		this.syncInterval = syncInterval;
+
+		file = new RandomAccessFile(fileName, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+
+		startNanos = System.nanoTime();
+
+		segment.putInt(MAGIC);
+		segment.putShort((short) VERSION);
+		segment.putShort((short) 0);
+		segment.putInt(segmentSize);
+		segment.putInt(0);
+		segment.putLong(System.currentTimeMillis());
+		segment.putLong(0);
+
+		syncThread = new SyncThread();
+		syncThread.start();
+
+		logger.fine("flight recording started to " + fileName);
+	}
+
+	/**
+	 * Record a status packet received from the drone.
+	 * @param data Buffer holding the packet.
+	 * @param offset Start of the packet in the buffer.
+	 * @param length Length of the packet.
+	 */
+	public synchronized void recordStatus(byte[] data, int offset, int length)
+	{
+		if (closed) return;
+
+		length = Math.min(length, MAX_TEXT);
+
+		if (!ensureRoom(11 + length)) return;
+
+		segment.put(STATUS);
+		segment.putLong(System.nanoTime() - startNanos);
+		segment.putShort((short) length);
+		segment.put(data, offset, length);
+
+		statusCount++;
+	}
+
+	/**
+	 * Record a command sent to the drone.
+	 * @param command The command text.
+	 * @param response The response text, or null if none.
+	 * @param outcome RESPONSE, NO_WAIT or FAILED.
+	 * @param latencyNanos Time from sending the command to receiving the response.
+	 */
+	public synchronized void recordCommand(String command, String response, int outcome, long latencyNanos)
+	{
+		if (closed) return;
+
+		int	commandLength = Math.min(command.length(), MAX_TEXT);
+		int	responseLength = response == null ? 0 : Math.min(response.length(), MAX_TEXT);
+
+		if (!ensureRoom(18 + commandLength + responseLength)) return;
+
+		segment.put(COMMAND);
+		segment.putLong(System.nanoTime() - startNanos);
+		segment.put((byte) outcome);
+		segment.putInt((int) Math.min(latencyNanos / 1000, Integer.MAX_VALUE));
+		putText(command, commandLength);
+		putText(response, responseLength);
+
+		commandCount++;
+	}
+
+	/**
+	 * Record an already encoded command sent to the drone without a response.
+	 * @param command Buffer holding the ASCII command bytes.
+	 * @param length Length of the command.
+	 * @param outcome NO_WAIT or FAILED.
+	 */
+	public synchronized void recordCommand(byte[] command, int length, int outcome)
+	{
+		if (closed) return;
+
+		length = Math.min(length, MAX_TEXT);
+
+		if (!ensureRoom(18 + length)) return;
+
+		segment.put(COMMAND);
+		segment.putLong(System.nanoTime() - startNanos);
+		segment.put((byte) outcome);
+		segment.putInt(0);
+		segment.putShort((short) length);
+		segment.put(command, 0, length);
+		segment.putShort((short) 0);
+
+		commandCount++;
+	}
+
+	/**
+	 * Get the number of status packets recorded.
+	 * @return Status packet count.
+	 */
+	public synchronized long getStatusCount()
+	{
+		return statusCount;
+	}
+
+	/**
+	 * Get the number of commands recorded.
+	 * @return Command count.
+	 */
+	public synchronized long getCommandCount()
+	{
+		return commandCount;
+	}
+
+	/**
+	 * Stop recording, flush the log to disk and close the file.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		if (closed) return;
+
+		closed = true;
+
+		if (syncThread != null) syncThread.interrupt();
+
+		try
+		{
+			segment.force();
+			channel.close();
+			file.close();
+		}
+		catch (IOException e) { logger.warning("flight recorder close failed: " + e.getMessage()); }
+
+		logger.fine("flight recording stopped: status=" + statusCount + " commands=" + commandCount);
+	}
+
+	// Text is ASCII so the chars are written as bytes directly.
+	private void putText(String text, int length)
+	{
+		segment.putShort((short) length);
+
+		for (int i = 0; i < length; i++) segment.put((byte) text.charAt(i));
+	}
+
+	// Make sure the current segment can hold a record of the given size plus
+	// the NEXT_SEGMENT marker, moving on to the next segment if not.
+	private boolean ensureRoom(int size)
+	{
+		if (segment.remaining() > size) return true;
+
+		try
+		{
+			segment.put(NEXT_SEGMENT);
+			segment.force();
+
+			segmentStart += segmentSize;
+			segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, segmentSize);
+
+			return true;
+		}
+		catch (IOException e)
+		{
+			logger.warning("flight recorder failed: " + e.getMessage());
+
+			closed = true;
+
+			return false;
+		}
+	}
+
+	// Thread that periodically flushes the current segment to disk.
+	private class SyncThread extends Thread
+	{
+		SyncThread()
+		{
+			this.setName("FlightRecorderSync");
+			this.setDaemon(true);
+		}
+
+		public void run()
+		{
+			try
+			{
+				while (!isInterrupted())
+				{
+					sleep(syncInterval);
+
+					segment.force();
+				}
+			}
+			catch (InterruptedException e) {}
+			catch (Exception e) { logger.warning("flight recorder sync failed: " + e.getMessage()); }
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package tellolib.flightlog;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+import tellolib.drone.TelloDrone;
+import tellolib.drone.TelloStatusParser;
+
+/**
+ * Plays back a flight log written by FlightRecorder. Status packets are fed
+ * through the same parsing path as live status monitoring, TelloStatusParser
+ * into TelloDrone, either with the recorded timing or as fast as possible.
+ * Replay at full speed doubles as a throughput test of the parser and drone
+ * update path.
+ */
+public class FlightReplayer
+{
+	private final Logger		logger = Logger.getLogger("Tello");
+
+	private final String		fileName;
+	private long				startTime, statusCount, commandCount, elapsedNanos;
+
+	/**
+	 * Create a replayer for a flight log.
+	 * @param fileName Log file to play back.
+	 */
+	public FlightReplayer(String fileName)
+	{
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Play the log back into a drone instance. Commands in the log are logged
+	 * at FINE level.
+	 * @param drone Drone to update with the recorded status.
+	 * @param realTime True to reproduce the recorded timing, false to replay
+	 * as fast as possible.
+	 * @return Number of status packets replayed.
+	 * @throws IOException
+	 */
+	public long replay(TelloDrone drone, boolean realTime) throws IOException
+	{
+		TelloStatusParser	parser = new TelloStatusParser();
+		byte[]				data = new byte[1024];
+
+		statusCount = commandCount = 0;
+
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+			 FileChannel channel = file.getChannel())
+		{
+			long				fileSize = channel.size(), segmentStart = 0;
+			MappedByteBuffer	segment = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+															Math.min(fileSize, FlightRecorder.HEADER_SIZE));
+
+			if (fileSize < FlightRecorder.HEADER_SIZE || segment.getInt() != FlightRecorder.MAGIC)
+				throw new IOException("not a flight log: " + fileName);
+
+			if (segment.getShort() != FlightRecorder.VERSION) throw new IOException("unsupported flight log version");
+
+			segment.getShort();
+
+			int segmentSize = segment.getInt();
+
+			segment.getInt();
+
+			startTime = segment.getLong();
+
+			segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, segmentSize));
+			segment.position(FlightRecorder.HEADER_SIZE);
+
+			long replayStart = System.nanoTime();
+
+			while (segment.hasRemaining())
+			{
+				byte type = segment.get();
+
+				if (type == FlightRecorder.END) break;
+
+				if (type == FlightRecorder.NEXT_SEGMENT)
+				{
+					segmentStart += segmentSize;
+
+					if (segmentStart >= fileSize) break;
+
+					segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart,
+											Math.min(fileSize - segmentStart, segmentSize));
+					continue;
+				}
+
+				long time = segment.getLong();
+
+				if (realTime) waitUntil(replayStart + time);
+
+				if (type == FlightRecorder.STATUS)
+				{
+					int length = segment.getShort();
+
+					segment.get(data, 0, length);
+
+					if (parser.parse(data, 0, length)) parser.apply(drone);
+
+					statusCount++;
+				}
+				else if (type == FlightRecorder.COMMAND)
+				{
+					int		outcome = segment.get();
+					int		latency = segment.getInt();
+					String	command = getText(segment);
+					String	response = getText(segment);
+
+					logger.fine("command: " + command + " outcome=" + outcome + " response=" + response.trim() +
+								" latency=" + latency + "us");
+
+					commandCount++;
+				}
+				else
+					throw new IOException("corrupt flight log record type " + type);
+			}
+
+			elapsedNanos = System.nanoTime() - replayStart;
+		}
+
+		logger.info(String.format("replayed %d status packets, %d commands in %d ms (%.0f status/s)",
+				statusCount, commandCount, elapsedNanos / 1000000,
+				statusCount * 1e9 / Math.max(elapsedNanos, 1)));
+
+		return statusCount;
+	}
+
+	/**
+	 * Get wall clock time the replayed log was recorded.
+	 * @return Recording start time in milliseconds since the epoch.
+	 */
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	/**
+	 * Get the number of status packets in the last replay.
+	 * @return Status packet count.
+	 */
+	public long getStatusCount()
+	{
+		return statusCount;
+	}
+
+	/**
+	 * Get the number of commands in the last replay.
+	 * @return Command count.
+	 */
+	public long getCommandCount()
+	{
+		return commandCount;
+	}
+
+	/**
+	 * Get the time taken by the last replay.
+	 * @return Elapsed time in nanoseconds.
+	 */
+	public long getElapsedNanos()
+	{
+		return elapsedNanos;
+	}
+
+	private static String getText(MappedByteBuffer segment)
+	{
+		int		length = segment.getShort();
+		char[]	chars = new char[length];
+
+		for (int i = 0; i < length; i++) chars[i] = (char) (segment.get() & 0xff);
+
+		return new String(chars);
+	}
+
+	private static void waitUntil(long nanoTime)
+	{
+		long delay = nanoTime - System.nanoTime();
+
+		if (delay <= 0) return;
+
+		try
+		{
+			Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+		}
+		catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+	}
+}
@@ -0,0 +1,78 @@
+package tellolib.metrics;
+
+/**
+ * When a video frame was captured and when detection on it finished, carried
+ * from the detection results to the commands sent in reaction to them so the
+ * latency of the tracking loop can be measured end to end (see 
+ * TelloMetricsInterface.getCaptureToDetect() and the histograms after it).
+ * Tracking code sets the timing of the frame it is acting on for its thread
+ * with set(), TelloControl passes it on to the threads running asynchronous
+ * commands and the communication metrics record it as the commands complete.
+ */
+public class FrameTiming
+{
+  private static final ThreadLocal<FrameTiming> current = new ThreadLocal<>();
+
+  private final long sequence, captureTime, detectTime;
+
+  /**
+   * Create a frame timing.
+   * @param sequence Frame sequence number.
+   * @param captureTime Frame capture time, System.nanoTime() units.
+   * @param detectTime Detection finish time, System.nanoTime() units.
+   */
+  public FrameTiming(long sequence, long captureTime, long detectTime)
+  {
+    this.sequence = sequence;
+    this.captureTime = captureTime;
+    this.detectTime = detectTime;
+  }
+
+  /**
+   * Set the timing of the frame the calling thread's commands react to.
+   * @param timing The timing, null to clear it.
+   */
+  public static void set(FrameTiming timing)
+  {
+    if (timing == null)
+      current.remove();
+    else
+      current.set(timing);
+  }
+
+  /**
+   * Get the timing of the frame the calling thread's commands react to.
+   * @return The timing or null if none.
+   */
+  public static FrameTiming get()
+  {
+    return current.get();
+  }
+
+  /**
+   * Get the frame sequence number.
+   * @return Sequence number.
+   */
+  public long getSequence()
+  {
+    return sequence;
+  }
+
+  /**
+   * Get the frame capture time.
+   * @return Capture time, System.nanoTime() units.
+   */
+  public long getCaptureTime()
+  {
+    return captureTime;
+  }
+
+  /**
+   * Get the detection finish time.
+   * @return Detection time, System.nanoTime() units.
+   */
+  public long getDetectTime()
+  {
+    return detectTime;
+  }
+}
@@ -0,0 +1,129 @@
+package tellolib.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative values (typically latencies in microseconds) with
+ * log-linear buckets: values below 16 have a bucket each, above that each
+ * power of two range is split into 16 equal buckets, so any value is held
+ * to within about 6%. Recording is lock free and does not allocate, so it can
+ * be called from any number of threads on the hot path.
+ */
+public class LatencyHistogram
+{
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 40;
+  private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong(), sum = new AtomicLong(), max = new AtomicLong();
+
+  /**
+   * Record a value.
+   * @param value Value to record, negative values are recorded as 0.
+   */
+  public void record(long value)
+  {
+    if (value < 0) value = 0;
+
+    counts.incrementAndGet(bucket(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+
+    long current;
+
+    while (value > (current = max.get()) && !max.compareAndSet(current, value));
+  }
+
+  /**
+   * Get the number of values recorded.
+   * @return Value count.
+   */
+  public long getCount()
+  {
+    return count.get();
+  }
+
+  /**
+   * Get the mean of the values recorded.
+   * @return Mean value or 0 if none recorded.
+   */
+  public double getMean()
+  {
+    long n = count.get();
+
+    return n == 0 ? 0 : (double) sum.get() / n;
+  }
+
+  /**
+   * Get the largest value recorded.
+   * @return Maximum value or 0 if none recorded.
+   */
+  public long getMax()
+  {
+    return max.get();
+  }
+
+  /**
+   * Get the value below which a percentage of the recorded values fall.
+   * @param percentile Percentage, 0 to 100.
+   * @return Value at the percentile, the middle of the bucket holding it,
+   * or 0 if none recorded.
+   */
+  public long getPercentile(double percentile)
+  {
+    long total = 0;
+
+    for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+
+    if (total == 0) return 0;
+
+    long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+    long seen = 0;
+
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      seen += counts.get(i);
+
+      if (seen >= rank) return Math.min((lowerBound(i) + lowerBound(i + 1) - 1) / 2, getMax());
+    }
+
+    return getMax();
+  }
+
+  /**
+   * Clear all recorded values. Values recorded while resetting may be lost.
+   */
+  public void reset()
+  {
+    for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+
+    count.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+
+  // Values below SUB_BUCKETS map directly, above that the bucket is the
+  // exponent range plus the next SUB_BUCKET_BITS bits below the top bit.
+  private static int bucket(long value)
+  {
+    if (value < SUB_BUCKETS) return (int) value;
+
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+    if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+  }
+
+  private static long lowerBound(int bucket)
+  {
+    if (bucket < SUB_BUCKETS) return bucket;
+
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+
+    return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+  }
+}
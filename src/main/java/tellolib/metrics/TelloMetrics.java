@@ -0,0 +1,286 @@
+package tellolib.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Collects the communication measurements described by TelloMetricsInterface.
+ * Each communication instance owns one and records into it as commands
+ * complete and status packets arrive. Recording is lock free.
+ */
+public class TelloMetrics implements TelloMetricsInterface
+{
+  private final Logger logger = Logger.getLogger("Tello");
+
+  private final ConcurrentHashMap<String, LatencyHistogram> commandLatency = new ConcurrentHashMap<>();
+
+  private final AtomicLong timeouts = new AtomicLong(), errorResponses = new AtomicLong(),
+                           unknownCommandResponses = new AtomicLong(), outOfRangeResponses = new AtomicLong();
+
+  private final LatencyHistogram statusInterval = new LatencyHistogram(), statusJitter = new LatencyHistogram();
+
+  private final LatencyHistogram captureToDetect = new LatencyHistogram(), detectToCommand = new LatencyHistogram(),
+                                 commandToAck = new LatencyHistogram(), captureToAck = new LatencyHistogram();
+
+  // Only used by the thread receiving status packets.
+  private long lastStatus, lastInterval = -1;
+
+  private Thread loggingThread;
+
+  /**
+   * Record a command that got a reply. Called on the thread that executed
+   * the command, whose FrameTiming, if any, is the frame the command reacted
+   * to.
+   * @param command The command text.
+   * @param response The reply.
+   * @param latencyNanos Time from sending the command to receiving the reply.
+   */
+  public void commandCompleted(String command, String response, long latencyNanos)
+  {
+    histogram(command).record(latencyNanos / 1000);
+
+    FrameTiming timing = FrameTiming.get();
+
+    if (timing != null)
+    {
+      long ack = System.nanoTime(), sent = ack - latencyNanos;
+
+      detectToCommand.record((sent - timing.getDetectTime()) / 1000);
+      commandToAck.record(latencyNanos / 1000);
+      captureToAck.record((ack - timing.getCaptureTime()) / 1000);
+    }
+
+    if (response.regionMatches(true, 0, "error", 0, 5))
+      errorResponses.incrementAndGet();
+    else if (response.regionMatches(true, 0, "unknown command", 0, 15) ||
+             response.regionMatches(true, 0, "unkown command", 0, 14))
+      unknownCommandResponses.incrementAndGet();
+    else if (response.regionMatches(true, 0, "out of range", 0, 12))
+      outOfRangeResponses.incrementAndGet();
+  }
+
+  /**
+   * Record a command that got no reply in time.
+   * @param command The command text.
+   */
+  public void commandTimedOut(String command)
+  {
+    timeouts.incrementAndGet();
+  }
+
+  /**
+   * Record the arrival of a status packet. Must be called from one thread.
+   * @param nanoTime Arrival time, System.nanoTime() units.
+   */
+  public void statusReceived(long nanoTime)
+  {
+    if (lastStatus != 0)
+    {
+      long interval = (nanoTime - lastStatus) / 1000;
+
+      statusInterval.record(interval);
+
+      if (lastInterval >= 0) statusJitter.record(Math.abs(interval - lastInterval));
+
+      lastInterval = interval;
+    }
+
+    lastStatus = nanoTime;
+  }
+
+  @Override
+  public Map<String, LatencyHistogram> getCommandLatency()
+  {
+    return Collections.unmodifiableMap(commandLatency);
+  }
+
+  @Override
+  public long getTimeouts()
+  {
+    return timeouts.get();
+  }
+
+  @Override
+  public long getErrorResponses()
+  {
+    return errorResponses.get();
+  }
+
+  @Override
+  public long getUnknownCommandResponses()
+  {
+    return unknownCommandResponses.get();
+  }
+
+  @Override
+  public long getOutOfRangeResponses()
+  {
+    return outOfRangeResponses.get();
+  }
+
+  @Override
+  public LatencyHistogram getStatusInterval()
+  {
+    return statusInterval;
+  }
+
+  @Override
+  public LatencyHistogram getStatusJitter()
+  {
+    return statusJitter;
+  }
+
+  @Override
+  public void frameDetected(FrameTiming timing)
+  {
+    captureToDetect.record((timing.getDetectTime() - timing.getCaptureTime()) / 1000);
+  }
+
+  @Override
+  public LatencyHistogram getCaptureToDetect()
+  {
+    return captureToDetect;
+  }
+
+  @Override
+  public LatencyHistogram getDetectToCommand()
+  {
+    return detectToCommand;
+  }
+
+  @Override
+  public LatencyHistogram getCommandToAck()
+  {
+    return commandToAck;
+  }
+
+  @Override
+  public LatencyHistogram getCaptureToAck()
+  {
+    return captureToAck;
+  }
+
+  @Override
+  public void reset()
+  {
+    commandLatency.clear();
+    timeouts.set(0);
+    errorResponses.set(0);
+    unknownCommandResponses.set(0);
+    outOfRangeResponses.set(0);
+    statusInterval.reset();
+    statusJitter.reset();
+    captureToDetect.reset();
+    detectToCommand.reset();
+    commandToAck.reset();
+    captureToAck.reset();
+  }
+
+  @Override
+  public String report()
+  {
+    StringBuilder report = new StringBuilder();
+
+    report.append(String.format("%-16s %8s %9s %9s %9s %9s %9s%n", "command (ms)", "count", "mean", "p50", "p90", "p99", "max"));
+
+    for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(commandLatency).entrySet())
+      appendHistogram(report, entry.getKey(), entry.getValue());
+
+    appendHistogram(report, "status interval", statusInterval);
+    appendHistogram(report, "status jitter", statusJitter);
+
+    if (captureToDetect.getCount() > 0 || captureToAck.getCount() > 0)
+    {
+      appendHistogram(report, "capture-detect", captureToDetect);
+      appendHistogram(report, "detect-command", detectToCommand);
+      appendHistogram(report, "command-ack", commandToAck);
+      appendHistogram(report, "capture-ack", captureToAck);
+    }
+
+    report.append(String.format("timeouts=%d error=%d unknown command=%d out of range=%d%n",
+                                timeouts.get(), errorResponses.get(), unknownCommandResponses.get(),
+                                outOfRangeResponses.get()));
+
+    return report.toString();
+  }
+
+  @Override
+  public void dump(String fileName) throws IOException
+  {
+    try (PrintWriter writer = new PrintWriter(fileName, "UTF-8"))
+    {
+      writer.print(report());
+    }
+  }
+
+  @Override
+  public synchronized void startLogging(int intervalSeconds)
+  {
+    if (loggingThread != null) return;
+
+    loggingThread = new LoggingThread(intervalSeconds);
+    loggingThread.start();
+  }
+
+  @Override
+  public synchronized void stopLogging()
+  {
+    if (loggingThread == null) return;
+
+    loggingThread.interrupt();
+    loggingThread = null;
+  }
+
+  // Histogram for the command word: the text up to the first space.
+  private LatencyHistogram histogram(String command)
+  {
+    int     end = command.indexOf(' ');
+    String  type = end < 0 ? command : command.substring(0, end);
+
+    LatencyHistogram histogram = commandLatency.get(type);
+
+    return histogram != null ? histogram : commandLatency.computeIfAbsent(type, key -> new LatencyHistogram());
+  }
+
+  private static void appendHistogram(StringBuilder report, String name, LatencyHistogram histogram)
+  {
+    report.append(String.format("%-16s %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, histogram.getCount(),
+                                histogram.getMean() / 1000, histogram.getPercentile(50) / 1000.0,
+                                histogram.getPercentile(90) / 1000.0, histogram.getPercentile(99) / 1000.0,
+                                histogram.getMax() / 1000.0));
+  }
+
+  // Thread that logs the report periodically.
+  private class LoggingThread extends Thread
+  {
+    private final int intervalSeconds;
+
+    LoggingThread(int intervalSeconds)
+    {
+      this.intervalSeconds = intervalSeconds;
+
+      this.setName("MetricsLogger");
+      this.setDaemon(true);
+    }
+
+    public void run()
+    {
+      try
+      {
+        while (!isInterrupted())
+        {
+          sleep(intervalSeconds * 1000L);
+
+          logger.info("communication metrics:\n" + report());
+        }
+      }
+      catch (InterruptedException e) {}
+    }
+  }
+}
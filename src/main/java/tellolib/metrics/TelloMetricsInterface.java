@@ -0,0 +1,123 @@
+package tellolib.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Measurements of the communication with the drone: command latency by
+ * command type, failed and rejected commands, the regularity of the status
+ * packets and the latency of video tracking from frame capture to the drone
+ * acknowledging the command reacting to it.
+ */
+public interface TelloMetricsInterface
+{
+  /**
+   * Get the send to reply latency of the commands, in microseconds, by command
+   * type (the command word, such as "forward" or "battery?").
+   * @return Map of command type to histogram. A live view, new command types
+   * are added as they are first executed.
+   */
+  Map<String, LatencyHistogram> getCommandLatency();
+
+  /**
+   * Get the number of commands that got no reply in time.
+   * @return Timeout count.
+   */
+  long getTimeouts();
+
+  /**
+   * Get the number of commands answered with "error".
+   * @return Error response count.
+   */
+  long getErrorResponses();
+
+  /**
+   * Get the number of commands answered with "unknown command".
+   * @return Unknown command response count.
+   */
+  long getUnknownCommandResponses();
+
+  /**
+   * Get the number of commands answered with "out of range".
+   * @return Out of range response count.
+   */
+  long getOutOfRangeResponses();
+
+  /**
+   * Get the time between successive status packets, in microseconds.
+   * @return Status interval histogram.
+   */
+  LatencyHistogram getStatusInterval();
+
+  /**
+   * Get the status packet inter-arrival jitter, the difference between
+   * successive status intervals, in microseconds.
+   * @return Status jitter histogram.
+   */
+  LatencyHistogram getStatusJitter();
+
+  /**
+   * Record the detection on a video frame, for getCaptureToDetect().
+   * Commands carrying a FrameTiming record the other tracking latencies
+   * themselves.
+   * @param timing Frame capture and detection times.
+   */
+  void frameDetected(FrameTiming timing);
+
+  /**
+   * Get the time from frame capture to the end of detection on the frame,
+   * in microseconds.
+   * @return Capture to detect histogram.
+   */
+  LatencyHistogram getCaptureToDetect();
+
+  /**
+   * Get the time from the end of detection on a frame to sending a command
+   * in reaction to it, in microseconds.
+   * @return Detect to command histogram.
+   */
+  LatencyHistogram getDetectToCommand();
+
+  /**
+   * Get the time from sending a command reacting to a frame to the drone's
+   * reply, in microseconds.
+   * @return Command to acknowledgement histogram.
+   */
+  LatencyHistogram getCommandToAck();
+
+  /**
+   * Get the time from frame capture to the drone's reply to a command
+   * reacting to the frame, in microseconds.
+   * @return End to end histogram.
+   */
+  LatencyHistogram getCaptureToAck();
+
+  /**
+   * Clear all measurements.
+   */
+  void reset();
+
+  /**
+   * Format the measurements as a text report.
+   * @return The report.
+   */
+  String report();
+
+  /**
+   * Write the text report to a file.
+   * @param fileName File to write. An existing file is overwritten.
+   * @throws IOException
+   */
+  void dump(String fileName) throws IOException;
+
+  /**
+   * Start logging the report at INFO level periodically.
+   * @param intervalSeconds Seconds between reports.
+   */
+  void startLogging(int intervalSeconds);
+
+  /**
+   * Stop periodic logging of the report.
+   */
+  void stopLogging();
+}
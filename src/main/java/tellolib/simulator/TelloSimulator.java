@@ -0,0 +1,587 @@
+package tellolib.simulator;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import tellolib.command.TelloCommandValues;
+
+/**
+ * Local stand-in for a Tello drone implementing the SDK UDP protocol, so the
+ * library can be exercised and measured without a real drone. Point the library
+ * at it with TelloDrone.setNetwork("127.0.0.1", commandPort, localPort,
+ * statusPort, videoPort), using a local port different from the command port.
+ * <p>
+ * The simulator answers the commands in TelloCommandValues after a configurable
+ * latency, jitter and loss rate, keeps a simple flight state (height, yaw,
+ * battery, rc velocities) and sends status packets in the same key:value format
+ * as the drone at a configurable rate to the address that sent "command". When
+ * a raw H.264 (Annex B) file is set, it is streamed in a loop to the video port
+ * after "streamon", split into datagrams the way the drone sends them.
+ */
+public class TelloSimulator
+{
+	private final Logger		logger = Logger.getLogger("Tello");
+
+	private final int			commandPort;
+	private int					statusPort = 8890, videoPort = 11111, latency = 5, jitter = 0;
+	private double				lossRate = 0, statusRate = 10, videoFrameRate = 30;
+	private String				videoFile;
+	private final Random		random = new Random();
+
+	private DatagramSocket		socket, sendSocket;
+	private ScheduledExecutorService	replyScheduler;
+	private final Queue<Reply>	pendingReplies = new ConcurrentLinkedQueue<>();
+	private Thread				commandThread, statusThread, videoThread;
+	private volatile InetAddress	clientAddress;
+
+	// Simulated flight state, guarded by this.
+	private boolean				flying, streaming, missionMode;
+	private int					height, yaw, speed = 100, battery = 100, rcLR, rcFB, rcUD, rcYaw;
+	private long				takeOffTime;
+
+	/**
+	 * Create a simulator.
+	 * @param commandPort UDP port to listen on for commands.
+	 */
+	public TelloSimulator(int commandPort)
+	{
+		this.commandPort = commandPort;
+	}
+
+	/**
+	 * Set the delay before each reply is sent.
+	 * @param latency Base delay in milliseconds.
+	 * @param jitter Random additional delay up to this many milliseconds.
+	 */
+	public void setLatency(int latency, int jitter)
+	{
+		this.latency = latency;
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Set the fraction of replies and status packets that are dropped.
+	 * @param lossRate 0.0 (none) to 1.0 (all).
+	 */
+	public void setLossRate(double lossRate)
+	{
+		this.lossRate = lossRate;
+	}
+
+	/**
+	 * Set the port and rate of status packets.
+	 * @param statusPort Port on the client status packets are sent to.
+	 * @param statusRate Status packets per second, 0 for none.
+	 */
+	public void setStatus(int statusPort, double statusRate)
+	{
+		this.statusPort = statusPort;
+		this.statusRate = statusRate;
+	}
+
+	/**
+	 * Set the video stream source.
+	 * @param videoPort Port on the client the video stream is sent to.
+	 * @param videoFile Raw H.264 Annex B file to stream, null for no video.
+	 * @param frameRate Frames per second to pace the stream at.
+	 */
+	public void setVideo(int videoPort, String videoFile, double frameRate)
+	{
+		this.videoPort = videoPort;
+		this.videoFile = videoFile;
+		this.videoFrameRate = frameRate;
+	}
+
+	/**
+	 * Start listening for commands.
+	 * @throws IOException
+	 */
+	public void start() throws IOException
+	{
+		if (socket != null) return;
+
+		socket = new DatagramSocket(commandPort);
+		sendSocket = new DatagramSocket();
+
+		replyScheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "SimulatorReply");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		commandThread = new CommandThread();
+		commandThread.start();
+
+		if (statusRate > 0)
+		{
+			statusThread = new StatusThread();
+			statusThread.start();
+		}
+
+		logger.info("simulator listening on port " + commandPort);
+	}
+
+	/**
+	 * Stop the simulator and close its sockets.
+	 */
+	public void stop()
+	{
+		if (socket == null) return;
+
+		if (commandThread != null) commandThread.interrupt();
+		if (statusThread != null) statusThread.interrupt();
+		if (videoThread != null) videoThread.interrupt();
+
+		replyScheduler.shutdownNow();
+		pendingReplies.clear();
+
+		socket.close();
+		sendSocket.close();
+		socket = null;
+
+		logger.info("simulator stopped");
+	}
+
+	/**
+	 * Get the port the simulator receives commands on.
+	 * @return UDP port.
+	 */
+	public int getCommandPort()
+	{
+		return commandPort;
+	}
+
+	// Execute a command against the simulated state and return the reply, or
+	// null if the command is not answered (rc).
+	synchronized String execute(String line)
+	{
+		String[]	words = line.trim().split(" ");
+		String		command = words[0];
+
+		switch (command)
+		{
+			case TelloCommandValues.COMMAND_MODE:
+			case TelloCommandValues.STOP:
+			case TelloCommandValues.MOFF:
+			case TelloCommandValues.MDIRECTION:
+				if (command.equals(TelloCommandValues.MOFF)) missionMode = false;
+				return "ok";
+
+			case TelloCommandValues.MON:
+				missionMode = true;
+				return "ok";
+
+			case TelloCommandValues.TAKE_OFF:
+				if (battery < 10) return "error";
+				flying = true;
+				height = 80;
+				takeOffTime = System.currentTimeMillis();
+				return "ok";
+
+			case TelloCommandValues.LAND:
+				if (!flying) return "error";
+				flying = false;
+				height = 0;
+				rcLR = rcFB = rcUD = rcYaw = 0;
+				return "ok";
+
+			case TelloCommandValues.EMERGENCY:
+				flying = false;
+				height = 0;
+				return "ok";
+
+			case TelloCommandValues.ENABLE_VIDEO_STREAM:
+				streaming = true;
+				startVideo();
+				return "ok";
+
+			case TelloCommandValues.DISABLE_VIDEO_STREAM:
+				streaming = false;
+				return "ok";
+
+			case TelloCommandValues.UP:
+			case TelloCommandValues.DOWN:
+			case TelloCommandValues.LEFT:
+			case TelloCommandValues.RIGHT:
+			case TelloCommandValues.FORWARD:
+			case TelloCommandValues.BACK:
+			{
+				Integer distance = parameter(words, 1);
+				if (distance == null || distance < 20 || distance > 500) return "out of range";
+				if (!flying) return "error";
+				if (command.equals(TelloCommandValues.UP)) height += distance;
+				if (command.equals(TelloCommandValues.DOWN)) height = Math.max(10, height - distance);
+				return "ok";
+			}
+
+			case TelloCommandValues.CW:
+			case TelloCommandValues.CCW:
+			{
+				Integer angle = parameter(words, 1);
+				if (angle == null || angle < 1 || angle > 3600) return "out of range";
+				if (!flying) return "error";
+				rotate(command.equals(TelloCommandValues.CW) ? angle : -angle);
+				return "ok";
+			}
+
+			case TelloCommandValues.FLIP:
+				if (words.length < 2 || !"lrfb".contains(words[1]) || words[1].length() != 1) return "out of range";
+				if (!flying) return "error";
+				return "ok";
+
+			case TelloCommandValues.GO:
+			case TelloCommandValues.CURVE:
+			case TelloCommandValues.JUMP:
+				for (int i = 1; i < 5; i++) if (parameter(words, i) == null) return "out of range";
+				if (!flying) return "error";
+				height = Math.max(10, height + parameter(words, 3));
+				return "ok";
+
+			case TelloCommandValues.SPEED:
+			{
+				Integer value = parameter(words, 1);
+				if (value == null || value < 10 || value > 100) return "out of range";
+				speed = value;
+				return "ok";
+			}
+
+			case TelloCommandValues.RC:
+				for (int i = 1; i < 5; i++) if (parameter(words, i) == null) return null;
+				rcLR = parameter(words, 1);
+				rcFB = parameter(words, 2);
+				rcUD = parameter(words, 3);
+				rcYaw = parameter(words, 4);
+				return null;
+
+			case TelloCommandValues.CURRENT_SPEED: return speed + ".0";
+			case TelloCommandValues.CURRENT_BATTERY: return Integer.toString(battery);
+			case TelloCommandValues.CURRENT_FLY_TIME: return flightTime() + "s";
+			case TelloCommandValues.CURRENT_HEIGHT: return (height / 10) + "dm";
+			case TelloCommandValues.CURRENT_TEMPERATURE: return "83~85C";
+			case TelloCommandValues.CURRENT_ATTITUDE: return "pitch:0;roll:0;yaw:" + yaw + ";";
+			case TelloCommandValues.CURRENT_BAROMETER: return String.format(Locale.US, "%.2f", barometer());
+			case TelloCommandValues.CURRENT_ACCELERATION: return "agx:-1.00;agy:-4.00;agz:-1000.00;";
+			case TelloCommandValues.CURRENT_TOF: return (flying ? height * 10 : 100) + "mm";
+			case TelloCommandValues.SDK: return "20";
+			case TelloCommandValues.SN: return "0TQSIMULATOR001";
+
+			default: return "unknown command: " + command;
+		}
+	}
+
+	// Compose a status packet from the simulated state.
+	synchronized String status()
+	{
+		return String.format(Locale.US,
+				"mid:%d;x:0;y:0;z:0;mpry:0,0,0;pitch:0;roll:0;yaw:%d;vgx:%d;vgy:%d;vgz:%d;templ:83;temph:85;" +
+				"tof:%d;h:%d;bat:%d;baro:%.2f;time:%d;agx:-1.00;agy:-4.00;agz:-1000.00;\r\n",
+				missionMode ? 1 : -1, yaw, rcFB, rcLR, -rcUD, flying ? height : 10, height, battery, barometer(),
+				flightTime());
+	}
+
+	// Advance the simulated state by a time step in seconds, applying rc input.
+	synchronized void advance(double seconds)
+	{
+		if (!flying) return;
+
+		height = Math.max(10, height + (int) Math.round(rcUD * seconds));
+		rotate((int) Math.round(rcYaw * seconds));
+
+		if (random.nextInt(600) == 0 && battery > 0) battery--;
+	}
+
+	private void rotate(int degrees)
+	{
+		yaw = ((yaw + degrees) % 360 + 540) % 360 - 180;
+	}
+
+	private int flightTime()
+	{
+		return flying ? (int) ((System.currentTimeMillis() - takeOffTime) / 1000) : 0;
+	}
+
+	private double barometer()
+	{
+		return -70.0 + height / 100.0;
+	}
+
+	private static Integer parameter(String[] words, int index)
+	{
+		if (index >= words.length) return null;
+
+		try
+		{
+			return Integer.parseInt(words[index]);
+		}
+		catch (NumberFormatException e) { return null; }
+	}
+
+	// Reply thread: send the waiting replies due at or before the given time.
+	private void sendReplies(long due)
+	{
+		Reply reply;
+
+		while ((reply = pendingReplies.peek()) != null && reply.due - due <= 0)
+		{
+			pendingReplies.poll();
+
+			try
+			{
+				socket.send(new DatagramPacket(reply.data, reply.data.length, reply.address));
+			}
+			catch (Exception e) { logger.finer("simulator reply failed: " + e.getMessage()); }
+		}
+	}
+
+	private boolean lost()
+	{
+		return lossRate > 0 && random.nextDouble() < lossRate;
+	}
+
+	private void send(byte[] data, int length, InetAddress address, int port)
+	{
+		try
+		{
+			sendSocket.send(new DatagramPacket(data, length, address, port));
+		}
+		catch (IOException e) { logger.finer("simulator send failed: " + e.getMessage()); }
+	}
+
+	private synchronized void startVideo()
+	{
+		if (videoFile == null || videoThread != null) return;
+
+		videoThread = new VideoThread();
+		videoThread.start();
+	}
+
+	// Thread that receives commands and schedules their replies.
+	private class CommandThread extends Thread
+	{
+		CommandThread()
+		{
+			this.setName("SimulatorCommand");
+			this.setDaemon(true);
+		}
+
+		public void run()
+		{
+			byte[]	buffer = new byte[1024];
+			long	lastDue = 0;
+
+			try
+			{
+				while (!isInterrupted())
+				{
+					DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+					socket.receive(packet);
+
+					String			command = new String(buffer, 0, packet.getLength(), StandardCharsets.UTF_8);
+					SocketAddress	sender = packet.getSocketAddress();
+
+					clientAddress = packet.getAddress();
+
+					String reply = execute(command);
+
+					if (reply == null || lost()) continue;
+
+					byte[]	data = reply.getBytes(StandardCharsets.UTF_8);
+					int		delay = latency + (jitter > 0 ? random.nextInt(jitter + 1) : 0);
+
+					// Like the drone, answer in the order the commands arrived even
+					// when jitter would let a later reply overtake. Replies wait in
+					// arrival order and each scheduled send also sends any earlier
+					// reply still waiting.
+
+					long	due = Math.max(System.nanoTime() + delay * 1000000L, lastDue);
+
+					lastDue = due;
+
+					pendingReplies.add(new Reply(data, sender, due));
+
+					replyScheduler.schedule(() -> sendReplies(due), due - System.nanoTime(), TimeUnit.NANOSECONDS);
+				}
+			}
+			catch (Exception e) { if (!isInterrupted()) logger.warning("simulator failed: " + e.getMessage()); }
+		}
+	}
+
+	// Thread that sends status packets at the status rate once a client has
+	// sent a command.
+	private class StatusThread extends Thread
+	{
+		StatusThread()
+		{
+			this.setName("SimulatorStatus");
+			this.setDaemon(true);
+		}
+
+		public void run()
+		{
+			long interval = (long) (1000 / statusRate);
+
+			try
+			{
+				while (!isInterrupted())
+				{
+					sleep(interval);
+
+					advance(interval / 1000.0);
+
+					InetAddress address = clientAddress;
+
+					if (address == null || lost()) continue;
+
+					byte[] data = status().getBytes(StandardCharsets.UTF_8);
+
+					send(data, data.length, address, statusPort);
+				}
+			}
+			catch (InterruptedException e) {}
+		}
+	}
+
+	// A reply waiting for its send time.
+	private static class Reply
+	{
+		final byte[]		data;
+		final SocketAddress	address;
+		final long			due;
+
+		Reply(byte[] data, SocketAddress address, long due)
+		{
+			this.data = data;
+			this.address = address;
+			this.due = due;
+		}
+	}
+
+	// Thread that streams the video file in a loop while streaming is on.
+	// NAL units are sent as found in the file, in datagrams of at most 1460
+	// bytes, pacing one frame per picture NAL unit.
+	private class VideoThread extends Thread
+	{
+		VideoThread()
+		{
+			this.setName("SimulatorVideo");
+			this.setDaemon(true);
+		}
+
+		public void run()
+		{
+			try
+			{
+				byte[]			stream = Files.readAllBytes(Paths.get(videoFile));
+				List<int[]>		units = splitNalUnits(stream);
+				long			frameNanos = (long) (1e9 / videoFrameRate), next = System.nanoTime();
+
+				if (units.isEmpty()) throw new IOException("no H.264 NAL units in " + videoFile);
+
+				while (!isInterrupted())
+				{
+					for (int[] unit : units)
+					{
+						if (isInterrupted()) break;
+
+						while (!streaming) sleep(100);
+
+						InetAddress address = clientAddress;
+
+						for (int offset = unit[0]; offset < unit[1]; offset += 1460)
+							sendVideo(address, stream, offset, Math.min(1460, unit[1] - offset));
+
+						// Coded slice NAL units (types 1 and 5) are one frame each.
+
+						int type = stream[unit[2]] & 0x1f;
+
+						if (type == 1 || type == 5)
+						{
+							next += frameNanos;
+
+							long delay = next - System.nanoTime();
+
+							if (delay > 0) sleep(delay / 1000000, (int) (delay % 1000000));
+						}
+					}
+				}
+			}
+			catch (InterruptedException e) {}
+			catch (Exception e) { logger.warning("simulator video failed: " + e.getMessage()); }
+
+			videoThread = null;
+		}
+
+		private void sendVideo(InetAddress address, byte[] stream, int offset, int length)
+		{
+			try
+			{
+				sendSocket.send(new DatagramPacket(stream, offset, length, address, videoPort));
+			}
+			catch (IOException e) { logger.finer("simulator video send failed: " + e.getMessage()); }
+		}
+	}
+
+	// Find the NAL units in an Annex B stream. Each entry is start offset
+	// (including start code), end offset and offset of the NAL header byte.
+	static List<int[]> splitNalUnits(byte[] stream)
+	{
+		List<int[]>	units = new ArrayList<int[]>();
+		int			start = -1, header = -1;
+
+		for (int i = 0; i + 3 <= stream.length; i++)
+		{
+			if (stream[i] == 0 && stream[i + 1] == 0 && stream[i + 2] == 1)
+			{
+				int codeStart = (i > 0 && stream[i - 1] == 0) ? i - 1 : i;
+
+				if (start >= 0) units.add(new int[] {start, codeStart, header});
+
+				start = codeStart;
+				header = i + 3;
+				i += 2;
+			}
+		}
+
+		if (start >= 0 && header < stream.length) units.add(new int[] {start, stream.length, header});
+
+		return units;
+	}
+
+	/**
+	 * Run a simulator until killed.
+	 * Arguments: [commandPort [statusPort [statusRate [videoFile]]]].
+	 * @param args Command line arguments.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		TelloSimulator simulator = new TelloSimulator(args.length > 0 ? Integer.parseInt(args[0]) : 8889);
+
+		simulator.setStatus(args.length > 1 ? Integer.parseInt(args[1]) : 8890,
+							args.length > 2 ? Double.parseDouble(args[2]) : 10);
+
+		if (args.length > 3) simulator.setVideo(11111, args[3], 30);
+
+		simulator.start();
+
+		Thread.currentThread().join();
+	}
+}
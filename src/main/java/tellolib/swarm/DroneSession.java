@@ -0,0 +1,171 @@
+package tellolib.swarm;
+
+import tellolib.camera.TelloCamera;
+import tellolib.communication.TelloChannelCommunication;
+import tellolib.communication.TelloReactor;
+import tellolib.control.TelloControl;
+import tellolib.control.TelloControlInterface;
+import tellolib.drone.TelloDrone;
+
+/**
+ * One drone of several flown together: its address and local ports, and its
+ * own communication, drone state, control and camera, apart from the global
+ * instances used to fly a single drone. Sessions are grouped in a
+ * SwarmController to send commands to all of them at once.
+ * <p>
+ * The command and status channels of all sessions are serviced by one shared
+ * TelloReactor thread, which also parses their status and sends their
+ * keepalives, so the threads needed do not grow with the number of drones.
+ * <p>
+ * Each session needs its own local command, status and video ports. Drones on
+ * a router (station mode) send status and video to the default ports unless
+ * told otherwise with the SDK port command; simulators are simply started with
+ * the ports of their session.
+ */
+public class DroneSession
+{
+	private final String						name, address;
+	private final int							udpPort, localPort, statusPort, videoPort;
+
+	private final TelloDrone					drone;
+	private final TelloChannelCommunication		communication;
+	private final TelloCamera					camera;
+	private final TelloControl					control;
+
+	/**
+	 * Create a session serviced by the shared reactor.
+	 * @param name Name of the drone, used in logging and results.
+	 * @param address Drone IP address or host name.
+	 * @param udpPort Drone UDP port that accepts commands.
+	 * @param localPort Local UDP port commands are sent from and replies received on.
+	 * @param statusPort Local UDP port status packets are received on.
+	 * @param videoPort Local UDP port the video stream is received on.
+	 */
+	public DroneSession(String name, String address, int udpPort, int localPort, int statusPort, int videoPort)
+	{
+		this(name, address, udpPort, localPort, statusPort, videoPort, TelloReactor.getInstance());
+	}
+
+	/**
+	 * Create a session.
+	 * @param name Name of the drone, used in logging and results.
+	 * @param address Drone IP address or host name.
+	 * @param udpPort Drone UDP port that accepts commands.
+	 * @param localPort Local UDP port commands are sent from and replies received on.
+	 * @param statusPort Local UDP port status packets are received on.
+	 * @param videoPort Local UDP port the video stream is received on.
+	 * @param reactor Reactor servicing the session's channels, null for one of its own.
+	 */
+	public DroneSession(String name, String address, int udpPort, int localPort, int statusPort, int videoPort,
+						TelloReactor reactor)
+	{
+		this.name = name;
+		this.address = address;
+		this.udpPort = udpPort;
+		this.localPort = localPort;
+		this.statusPort = statusPort;
+		this.videoPort = videoPort;
+
+		drone = new TelloDrone();
+		communication = new TelloChannelCommunication(address, udpPort, localPort, statusPort, reactor);
+		camera = new TelloCamera(videoPort);
+		control = new TelloControl(drone, communication, camera);
+	}
+
+	/**
+	 * Get the name of the drone.
+	 * @return Name.
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Get the drone's address.
+	 * @return IP address or host name.
+	 */
+	public String getAddress()
+	{
+		return address;
+	}
+
+	/**
+	 * Get the drone's command port.
+	 * @return UDP port.
+	 */
+	public int getUdpPort()
+	{
+		return udpPort;
+	}
+
+	/**
+	 * Get the local port commands are sent from.
+	 * @return UDP port.
+	 */
+	public int getLocalPort()
+	{
+		return localPort;
+	}
+
+	/**
+	 * Get the local port status packets are received on.
+	 * @return UDP port.
+	 */
+	public int getStatusPort()
+	{
+		return statusPort;
+	}
+
+	/**
+	 * Get the local port the video stream is received on.
+	 * @return UDP port.
+	 */
+	public int getVideoPort()
+	{
+		return videoPort;
+	}
+
+	/**
+	 * Get the control used to command the drone.
+	 * @return The drone's TelloControl.
+	 */
+	public TelloControlInterface getControl()
+	{
+		return control;
+	}
+
+	/**
+	 * Get the drone's state, updated from its replies and status.
+	 * @return The drone's TelloDrone.
+	 */
+	public TelloDrone getDrone()
+	{
+		return drone;
+	}
+
+	/**
+	 * Get the communication with the drone, to set timeouts for instance.
+	 * @return The drone's communication.
+	 */
+	public TelloChannelCommunication getCommunication()
+	{
+		return communication;
+	}
+
+	/**
+	 * Get the drone's camera. The OpenCV library must be loaded before video
+	 * capture is started, as TelloDrone.getInstance() does.
+	 * @return The drone's TelloCamera.
+	 */
+	public TelloCamera getCamera()
+	{
+		return camera;
+	}
+
+	@Override
+	public String toString()
+	{
+		return name + " (" + address + ":" + udpPort + ")";
+	}
+}
@@ -0,0 +1,266 @@
+package tellolib.swarm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import tellolib.control.TelloControl;
+
+/**
+ * Flies several drones together. A command is sent to every drone at the same
+ * time, each on its own thread, and the controller waits for all of them and
+ * gathers what each returned or why it failed in a SwarmResult, so a slow or
+ * failing drone neither holds up nor stops the others.
+ * <p>
+ * Each drone's command runs on a thread of its own, so with many drones
+ * ExecutionMode.VIRTUAL saves holding an OS thread per drone waiting on a
+ * reply. Commands to one drone still run one at a time as they do with a single
+ * drone; commands given to run() and query() may be any sequence of calls on
+ * the drone's session.
+ */
+public class SwarmController
+{
+	private final Logger					logger = Logger.getLogger("Tello");
+
+	private final List<DroneSession>		sessions = new CopyOnWriteArrayList<>();
+	private final ExecutorService			executor;
+	private volatile long					timeout = 30000;
+
+	/**
+	 * Create a controller with no drones. Its workers are platform or virtual
+	 * threads as set by TelloControl.setExecutionMode().
+	 */
+	public SwarmController()
+	{
+		executor = TelloControl.getExecutionMode().newExecutor("Swarm");
+	}
+
+	/**
+	 * Create a controller for a list of drones.
+	 * @param sessions The drones.
+	 */
+	public SwarmController(List<DroneSession> sessions)
+	{
+		this();
+
+		this.sessions.addAll(sessions);
+	}
+
+	/**
+	 * Add a drone.
+	 * @param session The drone.
+	 */
+	public void add(DroneSession session)
+	{
+		sessions.add(session);
+	}
+
+	/**
+	 * Remove a drone.
+	 * @param session The drone.
+	 */
+	public void remove(DroneSession session)
+	{
+		sessions.remove(session);
+	}
+
+	/**
+	 * Get the drones.
+	 * @return Unmodifiable list of the sessions in the order added.
+	 */
+	public List<DroneSession> getSessions()
+	{
+		return Collections.unmodifiableList(sessions);
+	}
+
+	/**
+	 * Set the time to wait for all drones to finish a command. Drones that take
+	 * longer are reported as failed with a TimeoutException and their command
+	 * is interrupted.
+	 * @param ms Timeout in milliseconds.
+	 */
+	public void setTimeout(long ms)
+	{
+		timeout = ms;
+	}
+
+	/**
+	 * Get the time to wait for all drones to finish a command.
+	 * @return Timeout in milliseconds.
+	 */
+	public long getTimeout()
+	{
+		return timeout;
+	}
+
+	/**
+	 * Run a command on every drone at once and wait for all to finish.
+	 * @param command Command to run with each drone's session.
+	 * @return Which drones completed and which failed.
+	 */
+	public SwarmResult<Void> run(Consumer<DroneSession> command)
+	{
+		return query(session ->
+		{
+			command.accept(session);
+			return null;
+		});
+	}
+
+	/**
+	 * Run a command returning a value on every drone at once and wait for all
+	 * to finish.
+	 * @param command Command to run with each drone's session.
+	 * @param <T> Type of the value returned.
+	 * @return The value from each drone that completed and the failures.
+	 */
+	public <T> SwarmResult<T> query(Function<DroneSession, T> command)
+	{
+		List<DroneSession>				targets = new ArrayList<>(sessions);
+		List<Future<T>>					futures = new ArrayList<>(targets.size());
+		SwarmResult<T>					result = new SwarmResult<>();
+		long							start = System.currentTimeMillis(), deadline = start + timeout;
+
+		// Submitted rather than run with CompletableFuture, whose cancel does not
+		// interrupt the command.
+
+		for (DroneSession session : targets) futures.add(executor.submit(() -> command.apply(session)));
+
+		for (int i = 0; i < targets.size(); i++)
+		{
+			DroneSession			session = targets.get(i);
+			Future<T>				future = futures.get(i);
+
+			try
+			{
+				result.complete(session, future.get(Math.max(0, deadline - System.currentTimeMillis()),
+													 TimeUnit.MILLISECONDS));
+			}
+			catch (ExecutionException e)
+			{
+				result.fail(session, e.getCause());
+			}
+			catch (TimeoutException e)
+			{
+				future.cancel(true);
+				result.fail(session, new TimeoutException(session.getName() + " timed out"));
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+
+				for (Future<T> f : futures) f.cancel(true);
+
+				result.fail(session, e);
+			}
+		}
+
+		result.setElapsed(System.currentTimeMillis() - start);
+
+		if (!result.isSuccess()) logger.warning("swarm command: " + result);
+
+		return result;
+	}
+
+	/**
+	 * Connect to every drone and put it in command mode.
+	 * @return Which drones connected.
+	 */
+	public SwarmResult<Void> connect()
+	{
+		return run(session ->
+		{
+			session.getControl().connect();
+			session.getControl().enterCommandMode();
+		});
+	}
+
+	/**
+	 * Disconnect from every drone, landing any still flying.
+	 * @return Which drones disconnected.
+	 */
+	public SwarmResult<Void> disconnect()
+	{
+		return run(session -> session.getControl().disconnect());
+	}
+
+	/**
+	 * Start the status monitor of every drone.
+	 * @return Which drones started.
+	 */
+	public SwarmResult<Void> startStatusMonitor()
+	{
+		return run(session -> session.getControl().startStatusMonitor());
+	}
+
+	/**
+	 * Take off with every drone.
+	 * @return Which drones took off.
+	 */
+	public SwarmResult<Void> takeOff()
+	{
+		return run(session -> session.getControl().takeOff());
+	}
+
+	/**
+	 * Land every drone.
+	 * @return Which drones landed.
+	 */
+	public SwarmResult<Void> land()
+	{
+		return run(session -> session.getControl().land());
+	}
+
+	/**
+	 * Stop every drone where it is.
+	 * @return Which drones stopped.
+	 */
+	public SwarmResult<Void> stop()
+	{
+		return run(session -> session.getControl().stop());
+	}
+
+	/**
+	 * Stop the motors of every drone at once.
+	 * @return Which drones stopped.
+	 */
+	public SwarmResult<Void> emergency()
+	{
+		return run(session -> session.getControl().emergency());
+	}
+
+	/**
+	 * Get the battery level of every drone.
+	 * @return Battery percent of each drone.
+	 */
+	public SwarmResult<Integer> getBattery()
+	{
+		return query(session -> session.getControl().getBattery());
+	}
+
+	/**
+	 * Query all of the readings of every drone into its TelloDrone.
+	 * @return Which drones were read.
+	 */
+	public SwarmResult<Void> pollReadings()
+	{
+		return run(session -> session.getControl().pollReadings());
+	}
+
+	/**
+	 * Stop the controller's threads. Does not disconnect the drones.
+	 */
+	public void shutdown()
+	{
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,108 @@
+package tellolib.swarm;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The outcome of a command sent to every drone of a swarm: the value returned
+ * by each drone that completed the command and the exception of each that
+ * failed or did not finish in time, in the order of the sessions.
+ * @param <T> Type of the value returned per drone, Void for commands without one.
+ */
+public class SwarmResult<T>
+{
+	private final Map<DroneSession, T>			results = new LinkedHashMap<>();
+	private final Map<DroneSession, Throwable>	failures = new LinkedHashMap<>();
+	private long								elapsed;
+
+	SwarmResult()
+	{
+	}
+
+	void complete(DroneSession session, T result)
+	{
+		results.put(session, result);
+	}
+
+	void fail(DroneSession session, Throwable failure)
+	{
+		failures.put(session, failure);
+	}
+
+	void setElapsed(long elapsed)
+	{
+		this.elapsed = elapsed;
+	}
+
+	/**
+	 * Tells if every drone completed the command.
+	 * @return True if there were no failures.
+	 */
+	public boolean isSuccess()
+	{
+		return failures.isEmpty();
+	}
+
+	/**
+	 * Get the value a drone returned.
+	 * @param session The drone.
+	 * @return The value or null if the drone failed or returns none.
+	 */
+	public T get(DroneSession session)
+	{
+		return results.get(session);
+	}
+
+	/**
+	 * Get the reason a drone failed.
+	 * @param session The drone.
+	 * @return The exception, a TimeoutException if the drone did not finish in
+	 * time, or null if it completed the command.
+	 */
+	public Throwable getFailure(DroneSession session)
+	{
+		return failures.get(session);
+	}
+
+	/**
+	 * Get the values returned by the drones that completed the command.
+	 * @return Unmodifiable map of session to value.
+	 */
+	public Map<DroneSession, T> getResults()
+	{
+		return Collections.unmodifiableMap(results);
+	}
+
+	/**
+	 * Get the drones that failed.
+	 * @return Unmodifiable map of session to exception.
+	 */
+	public Map<DroneSession, Throwable> getFailures()
+	{
+		return Collections.unmodifiableMap(failures);
+	}
+
+	/**
+	 * Get the time from sending the command to the last drone finishing.
+	 * @return Elapsed time in milliseconds.
+	 */
+	public long getElapsedTime()
+	{
+		return elapsed;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder text = new StringBuilder();
+
+		text.append(results.size()).append(" ok, ").append(failures.size()).append(" failed in ")
+			.append(elapsed).append("ms");
+
+		for (Map.Entry<DroneSession, Throwable> failure : failures.entrySet())
+			text.append("; ").append(failure.getKey().getName()).append(": ").append(failure.getValue());
+
+		return text.toString();
+	}
+}